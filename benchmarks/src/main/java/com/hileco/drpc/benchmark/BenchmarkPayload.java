@@ -0,0 +1,40 @@
+package com.hileco.drpc.benchmark;
+
+/**
+ * A serializable object of a configurable size, as used in the benchmarks' method arguments and results.
+ *
+ * @author Philipp Gayret
+ */
+public class BenchmarkPayload {
+
+    private String name;
+    private long[] values;
+
+    public BenchmarkPayload() {
+    }
+
+    public BenchmarkPayload(String name, int size) {
+        this.name = name;
+        this.values = new long[size];
+        for (int i = 0; i < size; i++) {
+            this.values[i] = i * 31L;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long[] getValues() {
+        return values;
+    }
+
+    public void setValues(long[] values) {
+        this.values = values;
+    }
+
+}
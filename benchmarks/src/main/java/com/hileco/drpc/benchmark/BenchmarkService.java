@@ -0,0 +1,14 @@
+package com.hileco.drpc.benchmark;
+
+/**
+ * The interface published and invoked by the benchmarks.
+ *
+ * @author Philipp Gayret
+ */
+public interface BenchmarkService {
+
+    public Integer add(Integer a, Integer b);
+
+    public BenchmarkPayload echo(BenchmarkPayload payload);
+
+}
@@ -0,0 +1,35 @@
+package com.hileco.drpc.benchmark;
+
+import com.hileco.drpc.reflection.Invocation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures capturing the single call made by a {@code drpc} invoker with {@link Invocation#one}.
+ *
+ * @author Philipp Gayret
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvocationBenchmark {
+
+    private Integer a;
+    private Integer b;
+
+    @Setup
+    public void setup() {
+        a = 1;
+        b = 2;
+    }
+
+    @Benchmark
+    public Invocation one() {
+        return Invocation.one(BenchmarkService.class, service -> service.add(a, b));
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.hileco.drpc.benchmark;
+
+import com.hileco.drpc.load.LoadGeneratorBuilder;
+import com.hileco.drpc.load.LoadReport;
+import com.hileco.drpc.mqtt.EmbeddedMqttBroker;
+import com.hileco.drpc.mqtt.MqttDrpcClient;
+import com.hileco.drpc.mqtt.MqttDrpcClientBuilder;
+import com.hileco.drpc.mqtt.MqttDrpcMemoryBroker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link com.hileco.drpc.load.LoadGenerator} against a {@link BenchmarkService} published on an in-memory
+ * broker, on an embedded broker with {@code broker=embedded}, or on the broker at the given URL, and prints the
+ * resulting report.
+ * <p>
+ * Accepts {@code key=value} arguments, for example:
+ * <pre>
+ * java -cp target/benchmarks.jar com.hileco.drpc.benchmark.LoadTestRunner concurrency=8 rate=20000 duration=30 payload=256 mix=add:9,echo:1
+ * </pre>
+ *
+ * @author Philipp Gayret
+ */
+public class LoadTestRunner {
+
+    private static final String IDENTIFIER = "load-test";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Expected key=value argument, got: " + arg);
+            }
+            options.put(keyValue[0], keyValue[1]);
+        }
+        String broker = options.get("broker");
+        MqttDrpcClientBuilder clientBuilder = new MqttDrpcClientBuilder();
+        MqttDrpcClient client;
+        if (broker == null) {
+            client = clientBuilder.build(new MqttDrpcMemoryBroker());
+        } else if (broker.equals("embedded")) {
+            client = clientBuilder.build(new EmbeddedMqttBroker().getUrl());
+        } else {
+            client = clientBuilder.build(broker);
+        }
+        client.connect();
+        client.publish(BenchmarkService.class, IDENTIFIER, new BenchmarkService() {
+            @Override
+            public Integer add(Integer a, Integer b) {
+                return a + b;
+            }
+
+            @Override
+            public BenchmarkPayload echo(BenchmarkPayload payload) {
+                return payload;
+            }
+        });
+        BenchmarkService remoteService = client.connector(BenchmarkService.class).connect(IDENTIFIER);
+        LoadGeneratorBuilder loadGeneratorBuilder = new LoadGeneratorBuilder()
+                .withConcurrency(Integer.parseInt(options.getOrDefault("concurrency", String.valueOf(LoadGeneratorBuilder.DEFAULT_CONCURRENCY))))
+                .withTargetRate(Double.parseDouble(options.getOrDefault("rate", "0")))
+                .withPayloadSize(Integer.parseInt(options.getOrDefault("payload", String.valueOf(LoadGeneratorBuilder.DEFAULT_PAYLOAD_SIZE))))
+                .withDuration(Long.parseLong(options.getOrDefault("duration", String.valueOf(LoadGeneratorBuilder.DEFAULT_SECONDS_DURATION))), TimeUnit.SECONDS)
+                .withWarmup(Long.parseLong(options.getOrDefault("warmup", String.valueOf(LoadGeneratorBuilder.DEFAULT_SECONDS_WARMUP))), TimeUnit.SECONDS);
+        for (String entry : options.getOrDefault("mix", "add:1").split(",")) {
+            String[] nameWeight = entry.split(":");
+            String name = nameWeight[0];
+            int weight = nameWeight.length > 1 ? Integer.parseInt(nameWeight[1]) : 1;
+            switch (name) {
+                case "add":
+                    loadGeneratorBuilder.withCall(name, weight, payload -> remoteService.add(1, 2));
+                    break;
+                case "echo":
+                    loadGeneratorBuilder.withCall(name, weight, payload -> remoteService.echo(new BenchmarkPayload(payload, 0)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown call in mix: " + name);
+            }
+        }
+        LoadReport report = loadGeneratorBuilder.build().run();
+        System.out.println("Results in microseconds:");
+        System.out.println(report);
+        client.disconnect();
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.hileco.drpc.benchmark;
+
+import com.hileco.drpc.generic.SilentCloseable;
+import com.hileco.drpc.mqtt.EmbeddedMqttBroker;
+import com.hileco.drpc.mqtt.MqttDrpcClient;
+import com.hileco.drpc.mqtt.MqttDrpcClientBuilder;
+import com.hileco.drpc.mqtt.MqttDrpcMemoryBroker;
+import com.hileco.drpc.mqtt.MqttDrpcTransportException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures full targeted calls, from proxy invocation to returned result, between two clients of a local broker.
+ * <p>
+ * Includes serialization, topic construction, task scheduling, service dispatch and callback correlation. Over the
+ * {@code memory} broker there is no network or broker overhead, over the {@code embedded} broker calls take the Eclipse
+ * Paho code path including quality of service handshakes over loopback.
+ *
+ * @author Philipp Gayret
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private static final String IDENTIFIER = "benchmark";
+
+    @Param({"64"})
+    public int payloadSize;
+
+    @Param({"memory", "embedded"})
+    public String broker;
+
+    private EmbeddedMqttBroker embeddedMqttBroker;
+    private ScheduledExecutorService executorService;
+    private MqttDrpcClient serviceClient;
+    private MqttDrpcClient callingClient;
+    private SilentCloseable publishedService;
+    private BenchmarkService remoteService;
+    private BenchmarkPayload payload;
+
+    @Setup
+    public void setup() throws MqttDrpcTransportException, IOException {
+        executorService = Executors.newScheduledThreadPool(MqttDrpcClientBuilder.DEFAULT_MAX_THREADS);
+        if (broker.equals("embedded")) {
+            embeddedMqttBroker = new EmbeddedMqttBroker();
+            serviceClient = new MqttDrpcClientBuilder().withExecutorService(executorService).build(embeddedMqttBroker.getUrl());
+            callingClient = new MqttDrpcClientBuilder().withExecutorService(executorService).build(embeddedMqttBroker.getUrl());
+        } else {
+            MqttDrpcMemoryBroker memoryBroker = new MqttDrpcMemoryBroker();
+            serviceClient = new MqttDrpcClientBuilder().withExecutorService(executorService).build(memoryBroker);
+            callingClient = new MqttDrpcClientBuilder().withExecutorService(executorService).build(memoryBroker);
+        }
+        serviceClient.connect();
+        callingClient.connect();
+        publishedService = serviceClient.publish(BenchmarkService.class, IDENTIFIER, new BenchmarkService() {
+            @Override
+            public Integer add(Integer a, Integer b) {
+                return a + b;
+            }
+
+            @Override
+            public BenchmarkPayload echo(BenchmarkPayload payload) {
+                return payload;
+            }
+        });
+        remoteService = callingClient.connector(BenchmarkService.class).connect(IDENTIFIER);
+        payload = new BenchmarkPayload("payload", payloadSize);
+    }
+
+    @TearDown
+    public void tearDown() throws MqttDrpcTransportException {
+        publishedService.close();
+        serviceClient.disconnect();
+        callingClient.disconnect();
+        executorService.shutdown();
+        if (embeddedMqttBroker != null) {
+            embeddedMqttBroker.close();
+        }
+    }
+
+    @Benchmark
+    public Integer add() {
+        return remoteService.add(1, 2);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer addContended() {
+        return remoteService.add(1, 2);
+    }
+
+    @Benchmark
+    public BenchmarkPayload echo() {
+        return remoteService.echo(payload);
+    }
+
+}
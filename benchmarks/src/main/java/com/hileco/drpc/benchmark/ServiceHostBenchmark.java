@@ -0,0 +1,85 @@
+package com.hileco.drpc.benchmark;
+
+import com.hileco.drpc.generic.ServiceHost;
+import com.hileco.drpc.generic.SilentCloseable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures {@link ServiceHost#accept} and {@link ServiceHost#register} on a host holding many topics, both
+ * uncontended and with threads accepting while other threads register and unregister.
+ *
+ * @author Philipp Gayret
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceHostBenchmark {
+
+    @Param({"100", "10000"})
+    public int topicCount;
+
+    private ServiceHost serviceHost;
+    private String[] topics;
+    private AtomicLong sequence;
+    private byte[] content;
+
+    @State(Scope.Thread)
+    public static class ThreadCursor {
+
+        private int index;
+
+    }
+
+    @Setup
+    public void setup() {
+        serviceHost = new ServiceHost();
+        topics = new String[topicCount];
+        sequence = new AtomicLong();
+        content = new byte[]{'[', ']'};
+        for (int i = 0; i < topicCount; i++) {
+            topics[i] = "s/com.hileco.drpc.benchmark.BenchmarkService/add/" + i;
+            serviceHost.register(topics[i], (topic, stream) -> stream.read());
+        }
+    }
+
+    private String nextTopic(ThreadCursor cursor) {
+        cursor.index = (cursor.index + 1) % topicCount;
+        return topics[cursor.index];
+    }
+
+    @Benchmark
+    public void accept(ThreadCursor cursor) throws IOException {
+        serviceHost.accept(nextTopic(cursor), new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    public void registerAndClose(Blackhole blackhole) {
+        SilentCloseable closeable = serviceHost.register("c/" + sequence.incrementAndGet(), (topic, stream) -> blackhole.consume(topic));
+        closeable.close();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public void contendedAccept(ThreadCursor cursor) throws IOException {
+        serviceHost.accept(nextTopic(cursor), new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedRegisterAndClose(Blackhole blackhole) {
+        SilentCloseable closeable = serviceHost.register("c/" + sequence.incrementAndGet(), (topic, stream) -> blackhole.consume(topic));
+        closeable.close();
+    }
+
+}
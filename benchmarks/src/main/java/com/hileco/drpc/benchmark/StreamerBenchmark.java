@@ -0,0 +1,96 @@
+package com.hileco.drpc.benchmark;
+
+import com.hileco.drpc.generic.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of argument lists by {@link JSONStreamer}, and of request and response packets by
+ * {@link RpcPacketStreamer}.
+ *
+ * @author Philipp Gayret
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamerBenchmark {
+
+    @Param({"1", "64", "1024"})
+    public int payloadSize;
+
+    private JSONStreamer streamer;
+    private RpcPacketStreamer rpcPacketStreamer;
+    private ByteArrayOutputStream outputStream;
+    private List<?> arguments;
+    private List<Class<?>> argumentTypes;
+    private RpcRequestPacket requestPacket;
+    private RpcResponsePacket responsePacket;
+    private List<Class<?>> responseTypes;
+    private byte[] encodedArguments;
+    private byte[] encodedRequest;
+    private byte[] encodedResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        streamer = new JSONStreamer();
+        rpcPacketStreamer = new RpcPacketStreamer(streamer);
+        outputStream = new ByteArrayOutputStream();
+        BenchmarkPayload payload = new BenchmarkPayload("payload", payloadSize);
+        arguments = Arrays.asList(payload, 42);
+        argumentTypes = Arrays.asList(BenchmarkPayload.class, Integer.class);
+        requestPacket = new RpcRequestPacket(UUID.randomUUID().toString(), UUID.randomUUID().toString(), arguments.toArray());
+        responsePacket = new RpcResponsePacket(UUID.randomUUID().toString(), new Object[]{payload});
+        responseTypes = Collections.singletonList(BenchmarkPayload.class);
+        encodedArguments = encodeArguments();
+        encodedRequest = encodeRequest();
+        encodedResponse = encodeResponse();
+    }
+
+    @Benchmark
+    public byte[] encodeArguments() throws IOException {
+        outputStream.reset();
+        streamer.serializeTo(outputStream, arguments);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public Object[] decodeArguments() throws IOException {
+        return streamer.deserializeFrom(new ByteArrayInputStream(encodedArguments), argumentTypes);
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() throws IOException {
+        outputStream.reset();
+        rpcPacketStreamer.writeRequest(outputStream, requestPacket);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public RpcRequestPacket decodeRequest() throws IOException {
+        return rpcPacketStreamer.readRequest(new ByteArrayInputStream(encodedRequest), argumentTypes);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse() throws IOException {
+        outputStream.reset();
+        rpcPacketStreamer.writeResponse(outputStream, responsePacket);
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public RpcResponsePacket decodeResponse() throws IOException {
+        return rpcPacketStreamer.readResponse(new ByteArrayInputStream(encodedResponse), responseTypes);
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.hileco.drpc.benchmark;
+
+import com.hileco.drpc.mqtt.MqttDrpcTopicBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures construction of service and callback topics by {@link MqttDrpcTopicBuilder}.
+ *
+ * @author Philipp Gayret
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicBuilderBenchmark {
+
+    private MqttDrpcTopicBuilder topicBuilder;
+    private Method method;
+    private String identifier;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        topicBuilder = new MqttDrpcTopicBuilder();
+        method = BenchmarkService.class.getMethod("add", Integer.class, Integer.class);
+        identifier = UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String operation() {
+        return topicBuilder.operation(BenchmarkService.class, method);
+    }
+
+    @Benchmark
+    public String operationWithIdentifier() {
+        return topicBuilder.operation(BenchmarkService.class, method, identifier);
+    }
+
+    @Benchmark
+    public String callback() {
+        return topicBuilder.callback(identifier);
+    }
+
+}
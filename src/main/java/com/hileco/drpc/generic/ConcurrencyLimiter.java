@@ -0,0 +1,35 @@
+package com.hileco.drpc.generic;
+
+/**
+ * Limits the amount of concurrent operations, every successful {@link #tryAcquire()} must be followed by exactly one
+ * {@link #release(long)}.
+ *
+ * @author Philipp Gayret
+ */
+public interface ConcurrencyLimiter {
+
+    /**
+     * Admits an operation when below the limit.
+     *
+     * @return true when admitted, false when the limit is reached
+     */
+    public boolean tryAcquire();
+
+    /**
+     * Ends an admitted operation.
+     *
+     * @param latency nanoseconds it took from being admitted to completing the operation
+     */
+    public void release(long latency);
+
+    /**
+     * @return current limit of concurrent operations
+     */
+    public int getLimit();
+
+    /**
+     * @return amount of operations currently admitted
+     */
+    public int getInFlight();
+
+}
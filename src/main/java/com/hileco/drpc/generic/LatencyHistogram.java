@@ -0,0 +1,173 @@
+package com.hileco.drpc.generic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed memory, concurrent histogram of non-negative values such as latencies, after the layout of HdrHistogram.
+ * <p>
+ * Values are counted in buckets of exponentially growing size, each split in linear sub-buckets, keeping the given
+ * amount of significant decimal digits across the whole trackable range. Values beyond the highest trackable value are
+ * counted as the highest trackable value.
+ *
+ * @author Philipp Gayret
+ */
+public class LatencyHistogram {
+
+    private final long highestTrackableValue;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong totalValue;
+    private final AtomicLong maxValue;
+    private final AtomicLong minValue;
+
+    /**
+     * @param highestTrackableValue     highest value to distinguish, must be at least 2
+     * @param significantDecimalDigits  precision to maintain, between 1 and 5
+     */
+    public LatencyHistogram(long highestTrackableValue, int significantDecimalDigits) {
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("Highest trackable value must be at least 2");
+        }
+        if (significantDecimalDigits < 1 || significantDecimalDigits > 5) {
+            throw new IllegalArgumentException("Significant decimal digits must be between 1 and 5");
+        }
+        long largestValueWithSingleUnitResolution = 2 * (long) Math.pow(10, significantDecimalDigits);
+        int subBucketCountMagnitude = (int) Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+        this.highestTrackableValue = highestTrackableValue;
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        this.subBucketHalfCount = 1 << subBucketHalfCountMagnitude;
+        this.subBucketMask = (1L << subBucketCountMagnitude) - 1;
+        long smallestUntrackableValue = 1L << subBucketCountMagnitude;
+        int bucketCount = 1;
+        while (smallestUntrackableValue <= highestTrackableValue) {
+            if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+                bucketCount++;
+                break;
+            }
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+        this.counts = new AtomicLongArray((bucketCount + 1) * subBucketHalfCount);
+        this.totalCount = new AtomicLong();
+        this.totalValue = new AtomicLong();
+        this.maxValue = new AtomicLong();
+        this.minValue = new AtomicLong(Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a histogram for nanosecond latencies up to an hour, with three significant digits.
+     */
+    public LatencyHistogram() {
+        this(3_600_000_000_000L, 3);
+    }
+
+    private int countsIndex(long value) {
+        int bucketIndex = (64 - Long.numberOfLeadingZeros(value | subBucketMask)) - (subBucketHalfCountMagnitude + 1);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude) + (subBucketIndex - subBucketHalfCount);
+    }
+
+    private long highestEquivalentValue(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        long lowestEquivalentValue = ((long) subBucketIndex) << bucketIndex;
+        return lowestEquivalentValue + (1L << bucketIndex) - 1;
+    }
+
+    /**
+     * Records a single occurrence of the given value.
+     *
+     * @param value non-negative value to record
+     */
+    public void record(long value) {
+        long trackedValue = Math.min(Math.max(value, 0), highestTrackableValue);
+        counts.incrementAndGet(countsIndex(trackedValue));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(trackedValue);
+        maxValue.accumulateAndGet(trackedValue, Math::max);
+        minValue.accumulateAndGet(trackedValue, Math::min);
+    }
+
+    /**
+     * Adds all recorded values of the given histogram to this histogram.
+     *
+     * @param other histogram to add, must have been created with the same parameters
+     */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length() != counts.length() || other.subBucketHalfCount != subBucketHalfCount) {
+            throw new IllegalArgumentException("Histograms must be created with the same parameters to be added");
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        totalValue.addAndGet(other.totalValue.get());
+        maxValue.accumulateAndGet(other.maxValue.get(), Math::max);
+        minValue.accumulateAndGet(other.minValue.get(), Math::min);
+    }
+
+    /**
+     * Returns the value below which the given percentage of recorded values fall, within the histogram's precision.
+     *
+     * @param percentile percentage between 0 and 100
+     * @return value at the percentile, or 0 when nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        double requestedPercentile = Math.min(Math.max(percentile, 0), 100);
+        long countAtPercentile = Math.max(1, (long) Math.ceil((requestedPercentile / 100) * total));
+        long cumulativeCount = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            cumulativeCount += counts.get(i);
+            if (cumulativeCount >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public long getMin() {
+        return totalCount.get() == 0 ? 0 : minValue.get();
+    }
+
+    public double getMean() {
+        long total = totalCount.get();
+        return total == 0 ? 0 : (double) totalValue.get() / total;
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+        minValue.set(Long.MAX_VALUE);
+    }
+
+}
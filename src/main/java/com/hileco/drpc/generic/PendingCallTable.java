@@ -0,0 +1,350 @@
+package com.hileco.drpc.generic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded table of calls awaiting responses, keyed by primitive correlation identifiers.
+ * <p>
+ * Calls are kept in an open addressing hash table, and expire through a hashed timer wheel: a ring of buckets each
+ * holding the calls due when the wheel's hand passes it, so registering, removing and expiring a call are constant
+ * time regardless of the amount of calls pending. The hash table starts small and grows with the amount of calls
+ * pending, up to the capacity. The wheel is turned by a single daemon thread, which parks while no calls are pending
+ * and ends once it has been idle for a minute.
+ *
+ * @author Philipp Gayret
+ */
+public class PendingCallTable {
+
+    public static final int DEFAULT_CAPACITY = 65536;
+    public static final long DEFAULT_MILLISECONDS_TICK_DURATION = 100;
+    public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int INITIAL_TABLE_SIZE = 64;
+    private static final long KEEP_ALIVE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * A call in the table, linked into the bucket of the wheel in which it expires.
+     */
+    private static final class PendingCall {
+
+        private final long key;
+        private final MessageReceiver receiver;
+        private final Runnable expiry;
+        private final long deadline;
+        private PendingCall previous;
+        private PendingCall next;
+        private boolean removed;
+
+        private PendingCall(long key, MessageReceiver receiver, Runnable expiry, long deadline) {
+            this.key = key;
+            this.receiver = receiver;
+            this.expiry = expiry;
+            this.deadline = deadline;
+        }
+
+    }
+
+    private final int capacity;
+    private final long tickNanos;
+    private final int maximumTableSize;
+    private long[] keys;
+    private PendingCall[] calls;
+    private int mask;
+    private final PendingCall[] wheel;
+    private final int wheelMask;
+    private final long startNanos;
+    private long tick;
+    private int size;
+    private Thread worker;
+    private final AtomicLong sequence;
+
+    public PendingCallTable() {
+        this(DEFAULT_CAPACITY, DEFAULT_MILLISECONDS_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    /**
+     * @param capacity      maximum amount of pending calls
+     * @param tickDuration  duration of one tick of the wheel, the precision of expiry
+     * @param unit          unit of the tick duration
+     * @param ticksPerWheel amount of buckets in the wheel, rounded up to a power of two
+     */
+    public PendingCallTable(int capacity, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (capacity < 1 || capacity > (1 << 29)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^29");
+        }
+        if (tickDuration < 1 || ticksPerWheel < 1) {
+            throw new IllegalArgumentException("Tick duration and ticks per wheel must be at least 1");
+        }
+        this.capacity = capacity;
+        this.tickNanos = unit.toNanos(tickDuration);
+        // a load factor of at most one half keeps linear probe sequences short
+        this.maximumTableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        allocate(Math.min(INITIAL_TABLE_SIZE, maximumTableSize));
+        int wheelSize = Integer.highestOneBit(ticksPerWheel * 2 - 1);
+        this.wheel = new PendingCall[wheelSize];
+        this.wheelMask = wheelSize - 1;
+        this.startNanos = System.nanoTime();
+        this.tick = 0;
+        this.size = 0;
+        // keys start at a random offset, so responses to an earlier client of the same identifier never match
+        this.sequence = new AtomicLong(ThreadLocalRandom.current().nextLong(1L << 48));
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return a new key, unique amongst the keys of this table, and so amongst those of all clients sharing it
+     */
+    public long nextKey() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Registers a pending call, which is removed when it expires or when the returned closeable is closed.
+     *
+     * @param key      correlation identifier of the call, any value but {@link Long#MIN_VALUE}
+     * @param timeout  time after which the call expires
+     * @param unit     unit of the timeout
+     * @param receiver handler to accept responses of the call
+     * @param expiry   invoked when the call expires, outside of the table's lock
+     * @return the closeable useable to remove the call
+     * @throws IllegalStateException    when the table is at capacity
+     * @throws IllegalArgumentException when a call with the same key is already pending
+     */
+    public SilentCloseable register(long key, long timeout, TimeUnit unit, MessageReceiver receiver, Runnable expiry) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key may not be Long.MIN_VALUE");
+        }
+        long ticks = Math.max(1, (unit.toNanos(timeout) + tickNanos - 1) / tickNanos);
+        PendingCall call;
+        synchronized (this) {
+            if (size >= capacity) {
+                throw new IllegalStateException("Pending call table is at its capacity of " + capacity);
+            }
+            if ((size + 1) * 2 > keys.length && keys.length < maximumTableSize) {
+                grow();
+            }
+            int index = hash(key) & mask;
+            while (keys[index] != EMPTY) {
+                if (keys[index] == key) {
+                    throw new IllegalArgumentException("A call with key " + key + " is already pending");
+                }
+                index = (index + 1) & mask;
+            }
+            if (size == 0) {
+                // the wheel stood still while idle, catch its hand up with the time passed
+                tick = (System.nanoTime() - startNanos) / tickNanos;
+                if (worker == null) {
+                    worker = new Thread(this::turn, "PendingCallTable-timer");
+                    worker.setDaemon(true);
+                    worker.start();
+                } else {
+                    notifyAll();
+                }
+            }
+            call = new PendingCall(key, receiver, expiry, tick + ticks);
+            keys[index] = key;
+            calls[index] = call;
+            size++;
+            link(call);
+        }
+        return () -> remove(call);
+    }
+
+    /**
+     * Forwards a response to the pending call with the given key.
+     *
+     * @param key     correlation identifier of the call
+     * @param content response content
+     * @return false when no call with the given key is pending
+     * @throws IOException when the call's receiver fails
+     */
+    public boolean accept(long key, InputStream content) throws IOException {
+        PendingCall call;
+        synchronized (this) {
+            int index = find(key);
+            if (index < 0) {
+                return false;
+            }
+            call = calls[index];
+        }
+        call.receiver.accept(null, content);
+        return true;
+    }
+
+    /**
+     * @return amount of pending calls
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return maximum amount of pending calls
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void allocate(int tableSize) {
+        keys = new long[tableSize];
+        calls = new PendingCall[tableSize];
+        mask = tableSize - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Doubles the size of the hash table, reinserting all pending calls.
+     */
+    private void grow() {
+        long[] previousKeys = keys;
+        PendingCall[] previousCalls = calls;
+        allocate(previousKeys.length * 2);
+        for (int i = 0; i < previousKeys.length; i++) {
+            if (previousKeys[i] != EMPTY) {
+                int index = hash(previousKeys[i]) & mask;
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = previousKeys[i];
+                calls[index] = previousCalls[i];
+            }
+        }
+    }
+
+    private int find(long key) {
+        int index = hash(key) & mask;
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void link(PendingCall call) {
+        int bucket = (int) (call.deadline & wheelMask);
+        PendingCall head = wheel[bucket];
+        call.next = head;
+        if (head != null) {
+            head.previous = call;
+        }
+        wheel[bucket] = call;
+    }
+
+    private void unlink(PendingCall call) {
+        if (call.previous != null) {
+            call.previous.next = call.next;
+        } else {
+            wheel[(int) (call.deadline & wheelMask)] = call.next;
+        }
+        if (call.next != null) {
+            call.next.previous = call.previous;
+        }
+        call.previous = null;
+        call.next = null;
+    }
+
+    private synchronized boolean remove(PendingCall call) {
+        if (call.removed) {
+            return false;
+        }
+        call.removed = true;
+        unlink(call);
+        int index = find(call.key);
+        // backward shift deletion, moves later entries of the probe sequence into the gap
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                calls[gap] = calls[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        calls[gap] = null;
+        size--;
+        return true;
+    }
+
+    /**
+     * Turns the wheel one bucket per tick, expiring the calls due, and parks while no calls are pending.
+     */
+    private void turn() {
+        while (true) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    // ignore, and continue turning
+                }
+                continue;
+            }
+            PendingCall expired = null;
+            synchronized (this) {
+                tick++;
+                PendingCall call = wheel[(int) (tick & wheelMask)];
+                while (call != null) {
+                    PendingCall next = call.next;
+                    if (call.deadline <= tick) {
+                        remove(call);
+                        call.next = expired;
+                        expired = call;
+                    }
+                    call = next;
+                }
+                if (size == 0 && expired == null && !park()) {
+                    worker = null;
+                    return;
+                }
+            }
+            while (expired != null) {
+                PendingCall next = expired.next;
+                expired.next = null;
+                try {
+                    expired.expiry.run();
+                } catch (RuntimeException e) {
+                    // a failing expiry handler must not stop the wheel
+                }
+                expired = next;
+            }
+        }
+    }
+
+    /**
+     * Waits for a call to be registered, called while holding the table's lock.
+     *
+     * @return false when no call was registered within the keep alive time
+     */
+    private boolean park() {
+        long deadline = System.nanoTime() + KEEP_ALIVE_NANOS;
+        while (size == 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                // ignore, and continue parking
+            }
+        }
+        return true;
+    }
+
+}
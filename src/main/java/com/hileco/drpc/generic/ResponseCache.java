@@ -0,0 +1,157 @@
+package com.hileco.drpc.generic;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A size bounded cache of responses by service identifier and serialized arguments, of which entries expire after a
+ * fixed time to live. When full, the least recently used entry is evicted.
+ * <p>
+ * Responses which were requested before an invalidation of their identifier are not cached when they arrive after it,
+ * see {@link #getGeneration()}.
+ *
+ * @author Philipp Gayret
+ */
+public class ResponseCache {
+
+    /**
+     * Returned by {@link #get(String, String)} when no response is cached, as null is a valid response.
+     */
+    public static final Object MISS = new Object();
+
+    private static final class Key {
+
+        private final String identifier;
+        private final String arguments;
+
+        private Key(String identifier, String arguments) {
+            this.identifier = identifier;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return identifier.equals(key.identifier) && arguments.equals(key.arguments);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(identifier, arguments);
+        }
+
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final long expiresAt;
+
+        private Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+    }
+
+    private final long timeToLiveNanos;
+    private final LinkedHashMap<Key, Entry> entries;
+    private volatile long generation;
+
+    /**
+     * @param maximumSize maximum amount of cached responses
+     * @param timeToLive  time after which a cached response expires
+     * @param unit        unit of the time to live
+     */
+    public ResponseCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be at least 1");
+        }
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * @param identifier identifier of the service which responded
+     * @param arguments  serialized arguments of the call
+     * @return the cached response, or {@link #MISS}
+     */
+    public Object get(String identifier, String arguments) {
+        Key key = new Key(identifier, arguments);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return MISS;
+            }
+            if (entry.expiresAt - System.nanoTime() <= 0) {
+                entries.remove(key);
+                return MISS;
+            }
+            return entry.value;
+        }
+    }
+
+    /**
+     * @return the current generation, which changes on every invalidation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches a response, unless an invalidation happened since the given generation.
+     *
+     * @param identifier identifier of the service which responded
+     * @param arguments  serialized arguments of the call
+     * @param value      the response
+     * @param generation generation at the moment the response was requested
+     */
+    public void put(String identifier, String arguments, Object value, long generation) {
+        synchronized (entries) {
+            if (generation == this.generation) {
+                entries.put(new Key(identifier, arguments), new Entry(value, System.nanoTime() + timeToLiveNanos));
+            }
+        }
+    }
+
+    /**
+     * Evicts all responses of the service with the given identifier.
+     *
+     * @param identifier identifier of the service
+     */
+    public void invalidate(String identifier) {
+        synchronized (entries) {
+            generation++;
+            Iterator<Key> keys = entries.keySet().iterator();
+            while (keys.hasNext()) {
+                if (keys.next().identifier.equals(identifier)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return amount of cached responses, including expired responses not yet evicted
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+}
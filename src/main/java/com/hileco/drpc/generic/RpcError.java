@@ -0,0 +1,40 @@
+package com.hileco.drpc.generic;
+
+/**
+ * The content and format of an error carried by a response packet in place of a result.
+ *
+ * @author Philipp Gayret
+ */
+public class RpcError {
+
+    private String type;
+    private String message;
+
+    public RpcError() {
+    }
+
+    public RpcError(String type, String message) {
+        this.type = type;
+        this.message = message;
+    }
+
+    /**
+     * @return the name of the type of exception that caused the error
+     */
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+}
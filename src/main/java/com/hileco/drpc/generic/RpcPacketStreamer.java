@@ -30,7 +30,7 @@ public class RpcPacketStreamer {
      * @throws IOException on streamer failures
      */
     public void writeResponse(OutputStream outputStream, RpcResponsePacket packet) throws IOException {
-        streamer.serializeTo(outputStream, Arrays.asList(packet.getCorrelationId()), Arrays.asList(packet.getBody()));
+        streamer.serializeTo(outputStream, Arrays.asList(packet.getCorrelationId(), packet.getError()), Arrays.asList(packet.getBody()));
     }
 
     /**
@@ -44,7 +44,9 @@ public class RpcPacketStreamer {
     public RpcResponsePacket readResponse(InputStream content, List<Class<?>> bodyTypes) throws IOException {
         Object[] deserializedPacket = streamer.deserializeFrom(content, RpcResponsePacket.HEADER_ENTRIES, bodyTypes);
         Object[] body = Arrays.copyOfRange(deserializedPacket, RpcResponsePacket.HEADER_ENTRIES.size(), deserializedPacket.length);
-        return new RpcResponsePacket((String) deserializedPacket[0], body);
+        RpcResponsePacket packet = new RpcResponsePacket((String) deserializedPacket[0], body);
+        packet.setError((RpcError) deserializedPacket[1]);
+        return packet;
     }
 
     /**
@@ -12,10 +12,12 @@ import java.util.List;
 public class RpcResponsePacket {
 
     public static final List<Class<?>> HEADER_ENTRIES = Collections.unmodifiableList(Arrays.asList(
-            String.class // correlationId
+            String.class,  // correlationId
+            RpcError.class // error, null on success
     ));
 
     private String correlationId;
+    private RpcError error;
     private Object[] body;
 
     public RpcResponsePacket() {
@@ -26,6 +28,15 @@ public class RpcResponsePacket {
         this.body = body;
     }
 
+    /**
+     * Creates an error response, its body holds a single null result so it can be read like any other response.
+     */
+    public RpcResponsePacket(String correlationId, RpcError error) {
+        this.correlationId = correlationId;
+        this.error = error;
+        this.body = new Object[]{null};
+    }
+
     public String getCorrelationId() {
         return correlationId;
     }
@@ -34,6 +45,14 @@ public class RpcResponsePacket {
         this.correlationId = correlationId;
     }
 
+    public RpcError getError() {
+        return error;
+    }
+
+    public void setError(RpcError error) {
+        this.error = error;
+    }
+
     public Object[] getBody() {
         return body;
     }
@@ -30,4 +30,21 @@ public interface ServiceConnector<T> {
      */
     public <R> SilentCloseable drpc(Function<T, R> invoker, Consumer<R> consumer);
 
+    /**
+     * Performs a distributed remote procedure call, using the given invoker to provide the method call information.
+     * Responses are forwarded to the given consumer, and errors responded in place of results to the failure consumer.
+     * <p>
+     * By default delegates to {@link #drpc(Function, Consumer)}, for connectors which do not tell errors apart from
+     * results; the failure consumer is then never called.
+     *
+     * @param invoker         a function which must immediately make one single call on given type {@link T} instance
+     * @param consumer        the response consumer
+     * @param failureConsumer the error response consumer
+     * @param <R>             the response type
+     * @return the closeable useable to end listening for responses
+     */
+    public default <R> SilentCloseable drpc(Function<T, R> invoker, Consumer<R> consumer, Consumer<RuntimeException> failureConsumer) {
+        return drpc(invoker, consumer);
+    }
+
 }
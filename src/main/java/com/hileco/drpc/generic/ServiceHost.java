@@ -3,63 +3,152 @@ package com.hileco.drpc.generic;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A simple service host, allowing for services to be registered by identifier, and connected to.
+ * <p>
+ * Topics are kept in a trie by level, registered topics may contain the MQTT wildcards {@code +} for exactly one level
+ * and {@code #} for any remaining levels. Accepting a message walks the trie along the levels of its topic, so its cost
+ * depends on the amount of levels rather than on the amount of registered topics. Registrations lock, accepting does
+ * not.
  *
  * @author Philipp Gayret
  */
 public class ServiceHost {
 
-    private final Map<String, List<MessageReceiver>> consumers;
+    public static final String SEPARATOR = "/";
+    public static final String SINGLE_LEVEL = "+";
+    public static final String MULTI_LEVEL = "#";
+
+    /**
+     * A level of the trie, with the receivers of topics ending at it.
+     */
+    private static final class Node {
+
+        private final Map<String, Node> children = new ConcurrentHashMap<>();
+        private final List<MessageReceiver> receivers = new CopyOnWriteArrayList<>();
+
+    }
+
+    private final Node root;
+    private int size;
 
     public ServiceHost() {
-        this.consumers = new HashMap<>();
+        this.root = new Node();
+        this.size = 0;
     }
 
     /**
      * Begins listening on the given topic, any messages received on it will be delegated to the given consumer.
      *
-     * @param topic    the topic to listen on
+     * @param topic    the topic to listen on, optionally containing wildcards
      * @param consumer handler to accept messages
      * @return the closeable useable to revert the process of this call
-     * @throws IllegalArgumentException when there is an open consumer already registered on this serviceName
+     * @throws IllegalArgumentException when a multi-level wildcard is not the last level of the topic
      */
     public SilentCloseable register(String topic, MessageReceiver consumer) throws IllegalArgumentException {
-        synchronized (consumers) {
-            if (!this.consumers.containsKey(topic)) {
-                this.consumers.put(topic, new ArrayList<>());
+        String[] levels = topic.split(SEPARATOR, -1);
+        for (int i = 0; i < levels.length - 1; i++) {
+            if (MULTI_LEVEL.equals(levels[i])) {
+                throw new IllegalArgumentException("Multi-level wildcard must be the last level of topic " + topic);
+            }
+        }
+        synchronized (root) {
+            Node node = root;
+            for (String level : levels) {
+                node = node.children.computeIfAbsent(level, key -> new Node());
             }
-            List<MessageReceiver> messageReceivers = this.consumers.get(topic);
-            messageReceivers.add(consumer);
-            return () -> {
-                synchronized (consumers) {
-                    messageReceivers.remove(consumer);
-                    if (messageReceivers.size() == 0) {
-                        this.consumers.remove(topic);
-                    }
+            if (node.receivers.isEmpty()) {
+                size++;
+            }
+            node.receivers.add(consumer);
+        }
+        return () -> unregister(levels, consumer);
+    }
+
+    private void unregister(String[] levels, MessageReceiver consumer) {
+        synchronized (root) {
+            Node[] path = new Node[levels.length + 1];
+            path[0] = root;
+            for (int i = 0; i < levels.length; i++) {
+                path[i + 1] = path[i].children.get(levels[i]);
+                if (path[i + 1] == null) {
+                    return;
                 }
-            };
+            }
+            Node node = path[levels.length];
+            if (!node.receivers.remove(consumer)) {
+                return;
+            }
+            if (node.receivers.isEmpty()) {
+                size--;
+            }
+            // prunes the levels left without receivers or children
+            for (int i = levels.length; i > 0 && path[i].receivers.isEmpty() && path[i].children.isEmpty(); i--) {
+                path[i - 1].children.remove(levels[i - 1]);
+            }
         }
     }
 
     /**
-     * Accepts a content stream for a given topic, forwards the stream to any active consumers for the given topic.
+     * @return amount of topics with at least one consumer registered
+     */
+    public int size() {
+        synchronized (root) {
+            return size;
+        }
+    }
+
+    /**
+     * Accepts a content stream for a given topic, forwards the stream to any active consumers of topics matching the
+     * given topic.
      *
      * @param topic   the consumers' topic
      * @param content a content stream
      * @throws IOException
      */
     public void accept(String topic, InputStream content) throws IOException {
-        List<MessageReceiver> messageReceivers = this.consumers.get(topic);
-        if (messageReceivers != null) {
-            List<MessageReceiver> unmodifyableCopy = new ArrayList<>(messageReceivers);
-            for (MessageReceiver messageReceiver : unmodifyableCopy) {
-                messageReceiver.accept(topic, content);
-            }
+        List<MessageReceiver> receivers = new ArrayList<>();
+        collect(root, topic.split(SEPARATOR, -1), 0, receivers);
+        for (MessageReceiver messageReceiver : receivers) {
+            messageReceiver.accept(topic, content);
+        }
+    }
+
+    /**
+     * @param topic the consumers' topic
+     * @return the distinct consumers of topics matching the given topic, a consumer registered on multiple matching
+     * topics is only included once
+     */
+    public Set<MessageReceiver> receivers(String topic) {
+        Set<MessageReceiver> receivers = new LinkedHashSet<>();
+        collect(root, topic.split(SEPARATOR, -1), 0, receivers);
+        return receivers;
+    }
+
+    private static void collect(Node node, String[] levels, int index, Collection<MessageReceiver> receivers) {
+        Node multiLevel = node.children.get(MULTI_LEVEL);
+        if (multiLevel != null) {
+            receivers.addAll(multiLevel.receivers);
+        }
+        if (index == levels.length) {
+            receivers.addAll(node.receivers);
+            return;
+        }
+        Node exact = node.children.get(levels[index]);
+        if (exact != null) {
+            collect(exact, levels, index + 1, receivers);
+        }
+        Node singleLevel = node.children.get(SINGLE_LEVEL);
+        if (singleLevel != null) {
+            collect(singleLevel, levels, index + 1, receivers);
         }
     }
 
@@ -0,0 +1,98 @@
+package com.hileco.drpc.generic;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ConcurrencyLimiter} which adapts its limit to the observed latencies, in the style of TCP Vegas.
+ * <p>
+ * The lowest latency seen is taken as the latency without queueing, from which every sample's latency estimates how
+ * many operations are queued: {@code limit * (1 - minimum / latency)}. Small queues grow the limit, large queues shrink
+ * it, both by the logarithm of the limit. The minimum is re-measured every {@link #PROBE_INTERVAL} samples so the limit
+ * follows changes in the operations' own cost.
+ *
+ * @author Philipp Gayret
+ */
+public class VegasConcurrencyLimiter implements ConcurrencyLimiter {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+    public static final int PROBE_INTERVAL = 1000;
+
+    private final int maxLimit;
+    private final AtomicInteger inFlight;
+    private volatile int limit;
+    private long minimumLatency;
+    private int samples;
+
+    public VegasConcurrencyLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * @param initialLimit limit to start out with
+     * @param maxLimit     limit never to grow beyond
+     */
+    public VegasConcurrencyLimiter(int initialLimit, int maxLimit) {
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Limits must be at least 1, and the initial limit may not exceed the maximum");
+        }
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.inFlight = new AtomicInteger();
+        this.minimumLatency = Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    @Override
+    public void release(long latency) {
+        int concurrent = inFlight.getAndDecrement();
+        if (latency > 0) {
+            update(latency, concurrent);
+        }
+    }
+
+    private synchronized void update(long latency, int concurrent) {
+        if (++samples >= PROBE_INTERVAL) {
+            samples = 0;
+            minimumLatency = latency;
+            return;
+        }
+        if (latency < minimumLatency) {
+            minimumLatency = latency;
+            return;
+        }
+        int current = limit;
+        int step = Math.max(1, (int) Math.log10(current));
+        double queue = current * (1.0 - (double) minimumLatency / latency);
+        if (queue <= 3 * step) {
+            // only grow when the limit is actually being used
+            if (concurrent * 2 >= current) {
+                limit = Math.min(maxLimit, current + step);
+            }
+        } else if (queue >= 6 * step) {
+            limit = Math.max(1, current - step);
+        }
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+}
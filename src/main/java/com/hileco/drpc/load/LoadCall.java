@@ -0,0 +1,19 @@
+package com.hileco.drpc.load;
+
+/**
+ * A single call made by a {@link LoadGenerator}, usually a remote procedure call on a connected service.
+ *
+ * @author Philipp Gayret
+ */
+@FunctionalInterface
+public interface LoadCall {
+
+    /**
+     * Performs the call, returns once its result is available.
+     *
+     * @param payload a string of the load generator's configured payload size, to pass along as argument
+     * @throws Exception on call failures, which are counted as errors
+     */
+    public void run(String payload) throws Exception;
+
+}
@@ -0,0 +1,147 @@
+package com.hileco.drpc.load;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a mix of calls from multiple threads, optionally at a fixed target rate, and records their latencies.
+ * <p>
+ * With a target rate every call has an intended start time on a fixed schedule. Response times are measured from that
+ * intended start time rather than from the moment the call was actually made, so that a stalled call is accounted for
+ * in the latencies of all calls it delayed, correcting for coordinated omission. Service times are measured from the
+ * actual start of each call.
+ *
+ * @author Philipp Gayret
+ */
+public class LoadGenerator {
+
+    private final int concurrency;
+    private final double targetRate;
+    private final String payload;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final List<WeightedCall> calls;
+    private final int totalWeight;
+
+    static class WeightedCall {
+
+        private final String name;
+        private final int weight;
+        private final LoadCall call;
+
+        WeightedCall(String name, int weight, LoadCall call) {
+            this.name = name;
+            this.weight = weight;
+            this.call = call;
+        }
+
+    }
+
+    private class Worker implements Callable<LoadReport> {
+
+        private final long startNanos;
+        private final long intervalNanos;
+
+        private Worker(long startNanos, long intervalNanos) {
+            this.startNanos = startNanos;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public LoadReport call() {
+            LoadReport report = new LoadReport(durationNanos);
+            long recordFrom = startNanos + warmupNanos;
+            long end = recordFrom + durationNanos;
+            long intendedStart = startNanos;
+            while (true) {
+                long now = System.nanoTime();
+                if (intervalNanos > 0) {
+                    while (now < intendedStart) {
+                        LockSupport.parkNanos(intendedStart - now);
+                        now = System.nanoTime();
+                    }
+                } else {
+                    intendedStart = now;
+                }
+                if (intendedStart >= end) {
+                    return report;
+                }
+                WeightedCall weightedCall = pick();
+                boolean failed = false;
+                long callStart = System.nanoTime();
+                try {
+                    weightedCall.call.run(payload);
+                } catch (Exception e) {
+                    failed = true;
+                }
+                long callEnd = System.nanoTime();
+                if (intendedStart >= recordFrom) {
+                    report.record(weightedCall.name, callEnd - intendedStart, callEnd - callStart, failed);
+                }
+                intendedStart += intervalNanos;
+            }
+        }
+
+    }
+
+    /**
+     * The recommended way to create an instance is with {@link com.hileco.drpc.load.LoadGeneratorBuilder}.
+     */
+    LoadGenerator(int concurrency, double targetRate, int payloadSize, long durationNanos, long warmupNanos, List<WeightedCall> calls) {
+        this.concurrency = concurrency;
+        this.targetRate = targetRate;
+        this.durationNanos = durationNanos;
+        this.warmupNanos = warmupNanos;
+        this.calls = new ArrayList<>(calls);
+        this.totalWeight = calls.stream().mapToInt(call -> call.weight).sum();
+        char[] characters = new char[payloadSize];
+        Arrays.fill(characters, 'x');
+        this.payload = new String(characters);
+    }
+
+    private WeightedCall pick() {
+        if (calls.size() == 1) {
+            return calls.get(0);
+        }
+        int remaining = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (WeightedCall call : calls) {
+            remaining -= call.weight;
+            if (remaining < 0) {
+                return call;
+            }
+        }
+        return calls.get(calls.size() - 1);
+    }
+
+    /**
+     * Runs the warmup and then the measured duration, blocks until all threads are done.
+     *
+     * @return latencies and counts of the calls made after warmup
+     * @throws InterruptedException when interrupted while waiting for the threads
+     */
+    public LoadReport run() throws InterruptedException {
+        long intervalNanos = targetRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * concurrency / targetRate) : 0;
+        ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+        try {
+            long startNanos = System.nanoTime();
+            List<Future<LoadReport>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                long staggeredStart = startNanos + (intervalNanos * i) / concurrency;
+                futures.add(executorService.submit(new Worker(staggeredStart, intervalNanos)));
+            }
+            LoadReport report = new LoadReport(durationNanos);
+            for (Future<LoadReport> future : futures) {
+                try {
+                    report.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Load generating thread failed", e.getCause());
+                }
+            }
+            return report;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.hileco.drpc.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utility to create instances of {@link LoadGenerator}
+ *
+ * @author Philipp Gayret
+ */
+public class LoadGeneratorBuilder {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final int DEFAULT_PAYLOAD_SIZE = 64;
+    public static final long DEFAULT_SECONDS_DURATION = 10;
+    public static final long DEFAULT_SECONDS_WARMUP = 2;
+
+    private int concurrency;
+    private double targetRate;
+    private int payloadSize;
+    private long durationNanos;
+    private long warmupNanos;
+    private final List<LoadGenerator.WeightedCall> calls;
+
+    public LoadGeneratorBuilder() {
+        this.concurrency = DEFAULT_CONCURRENCY;
+        this.targetRate = 0;
+        this.payloadSize = DEFAULT_PAYLOAD_SIZE;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(DEFAULT_SECONDS_DURATION);
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(DEFAULT_SECONDS_WARMUP);
+        this.calls = new ArrayList<>();
+    }
+
+    /**
+     * @param concurrency amount of threads making calls at the same time
+     */
+    public LoadGeneratorBuilder withConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param targetRate calls per second to start across all threads, or 0 for every thread to call back-to-back
+     */
+    public LoadGeneratorBuilder withTargetRate(double targetRate) {
+        this.targetRate = targetRate;
+        return this;
+    }
+
+    /**
+     * @param payloadSize length of the payload string handed to each call
+     */
+    public LoadGeneratorBuilder withPayloadSize(int payloadSize) {
+        this.payloadSize = payloadSize;
+        return this;
+    }
+
+    public LoadGeneratorBuilder withDuration(long duration, TimeUnit unit) {
+        this.durationNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * @param warmup time to make calls for before recording their latencies
+     */
+    public LoadGeneratorBuilder withWarmup(long warmup, TimeUnit unit) {
+        this.warmupNanos = unit.toNanos(warmup);
+        return this;
+    }
+
+    /**
+     * Adds a call to the call mix, calls are picked at random in proportion to their weight.
+     *
+     * @param name   name to report the call's latencies under
+     * @param weight relative frequency of the call
+     * @param call   the call to make
+     */
+    public LoadGeneratorBuilder withCall(String name, int weight, LoadCall call) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight of call " + name + " must be positive");
+        }
+        this.calls.add(new LoadGenerator.WeightedCall(name, weight, call));
+        return this;
+    }
+
+    public LoadGenerator build() {
+        if (calls.isEmpty()) {
+            throw new IllegalArgumentException("At least one call must be configured");
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive");
+        }
+        return new LoadGenerator(concurrency, targetRate, payloadSize, durationNanos, warmupNanos, calls);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.hileco.drpc.load;
+
+import com.hileco.drpc.generic.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latencies and counts of the calls made by a {@link LoadGenerator}, in nanoseconds, per call name.
+ *
+ * @author Philipp Gayret
+ */
+public class LoadReport {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final long durationNanos;
+    private final Map<String, LatencyHistogram> responseTimes;
+    private final Map<String, LatencyHistogram> serviceTimes;
+    private final Map<String, Long> errors;
+
+    LoadReport(long durationNanos) {
+        this.durationNanos = durationNanos;
+        this.responseTimes = new TreeMap<>();
+        this.serviceTimes = new TreeMap<>();
+        this.errors = new TreeMap<>();
+    }
+
+    void record(String name, long responseTime, long serviceTime, boolean failed) {
+        responseTimes.computeIfAbsent(name, key -> new LatencyHistogram()).record(responseTime);
+        serviceTimes.computeIfAbsent(name, key -> new LatencyHistogram()).record(serviceTime);
+        if (failed) {
+            errors.merge(name, 1L, Long::sum);
+        }
+    }
+
+    void add(LoadReport other) {
+        other.responseTimes.forEach((name, histogram) -> responseTimes.computeIfAbsent(name, key -> new LatencyHistogram()).add(histogram));
+        other.serviceTimes.forEach((name, histogram) -> serviceTimes.computeIfAbsent(name, key -> new LatencyHistogram()).add(histogram));
+        other.errors.forEach((name, count) -> errors.merge(name, count, Long::sum));
+    }
+
+    /**
+     * @return latencies from the intended start of each call to its completion, corrected for coordinated omission, or
+     * null when no calls of the given name were made
+     */
+    public LatencyHistogram getResponseTimes(String name) {
+        return responseTimes.get(name);
+    }
+
+    /**
+     * @return latencies from the actual start of each call to its completion, or null when no calls of the given name
+     * were made
+     */
+    public LatencyHistogram getServiceTimes(String name) {
+        return serviceTimes.get(name);
+    }
+
+    /**
+     * @return response times of all calls combined
+     */
+    public LatencyHistogram getResponseTimes() {
+        LatencyHistogram total = new LatencyHistogram();
+        responseTimes.values().forEach(total::add);
+        return total;
+    }
+
+    public long getCalls() {
+        return responseTimes.values().stream().mapToLong(LatencyHistogram::getTotalCount).sum();
+    }
+
+    public long getErrors() {
+        return errors.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public long getErrors(String name) {
+        return errors.getOrDefault(name, 0L);
+    }
+
+    /**
+     * @return completed calls per second over the measured duration
+     */
+    public double getThroughput() {
+        return getCalls() / (durationNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Formats the report as a table with a row per call name and response and service time percentiles in microseconds.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("throughput: %.1f calls/s, calls: %d, errors: %d%n", getThroughput(), getCalls(), getErrors()));
+        builder.append(String.format("%-24s %-9s %10s", "call", "latency", "count"));
+        for (double percentile : PERCENTILES) {
+            builder.append(String.format(" %10s", "p" + formatPercentile(percentile)));
+        }
+        builder.append(String.format(" %10s%n", "max"));
+        for (String name : responseTimes.keySet()) {
+            append(builder, name, "response", responseTimes.get(name));
+            append(builder, name, "service", serviceTimes.get(name));
+        }
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, String name, String kind, LatencyHistogram histogram) {
+        builder.append(String.format("%-24s %-9s %10d", name, kind, histogram.getTotalCount()));
+        for (double percentile : PERCENTILES) {
+            builder.append(String.format(" %10.1f", histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        builder.append(String.format(" %10.1f%n", histogram.getMax() / 1000.0));
+    }
+
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile).replace(".", "");
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.hileco.drpc.metrics;
+
+import com.hileco.drpc.generic.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link SimpleMetricsRegistry} which additionally registers every metric as an MXBean on the platform MBean server.
+ * <p>
+ * Object names consist of the given domain, the metric name as {@code name} key, and the metric's tags as further keys,
+ * for example {@code com.hileco.drpc:name=client.latency,client=c1,interface=a.B,method=c}. Names registered already,
+ * for example by another registry, are left as they are. Removing a metric unregisters its MXBean.
+ *
+ * @author Philipp Gayret
+ */
+public class JmxMetricsRegistry extends SimpleMetricsRegistry {
+
+    public static final String DEFAULT_DOMAIN = "com.hileco.drpc";
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmxMetricsRegistry.class);
+
+    private final MBeanServer mBeanServer;
+    private final String domain;
+    private final Map<String, ObjectName> registeredNames;
+
+    public static interface CounterMXBean {
+
+        public long getCount();
+
+    }
+
+    public static interface HistogramMXBean {
+
+        public long getCount();
+
+        public long getMin();
+
+        public double getMean();
+
+        public long getMax();
+
+        public long get50thPercentile();
+
+        public long get90thPercentile();
+
+        public long get99thPercentile();
+
+        public long get999thPercentile();
+
+    }
+
+    public static interface GaugeMXBean {
+
+        public long getValue();
+
+    }
+
+    public JmxMetricsRegistry(MBeanServer mBeanServer, String domain) {
+        this.mBeanServer = mBeanServer;
+        this.domain = domain;
+        this.registeredNames = new ConcurrentHashMap<>();
+    }
+
+    public JmxMetricsRegistry() {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+
+    @Override
+    protected void onCounterCreated(String name, String[] tags, LongAdder counter) {
+        register(name, tags, (CounterMXBean) counter::sum);
+    }
+
+    @Override
+    protected void onHistogramCreated(String name, String[] tags, LatencyHistogram histogram) {
+        register(name, tags, new HistogramMXBean() {
+            @Override
+            public long getCount() {
+                return histogram.getTotalCount();
+            }
+
+            @Override
+            public long getMin() {
+                return histogram.getMin();
+            }
+
+            @Override
+            public double getMean() {
+                return histogram.getMean();
+            }
+
+            @Override
+            public long getMax() {
+                return histogram.getMax();
+            }
+
+            @Override
+            public long get50thPercentile() {
+                return histogram.getValueAtPercentile(50);
+            }
+
+            @Override
+            public long get90thPercentile() {
+                return histogram.getValueAtPercentile(90);
+            }
+
+            @Override
+            public long get99thPercentile() {
+                return histogram.getValueAtPercentile(99);
+            }
+
+            @Override
+            public long get999thPercentile() {
+                return histogram.getValueAtPercentile(99.9);
+            }
+        });
+    }
+
+    @Override
+    protected void onGaugeCreated(String name, String[] tags, LongSupplier value) {
+        register(name, tags, (GaugeMXBean) value::getAsLong);
+    }
+
+    private void register(String name, String[] tags, Object mxBean) {
+        try {
+            StringBuilder objectName = new StringBuilder(domain).append(":name=").append(quote(name));
+            for (int i = 0; i < tags.length; i += 2) {
+                objectName.append(',').append(tags[i]).append('=').append(quote(tags[i + 1]));
+            }
+            ObjectName registeredName = new ObjectName(objectName.toString());
+            if (registeredNames.remove(key(name, tags)) != null) {
+                // replaces a gauge registered before by this registry
+                mBeanServer.unregisterMBean(registeredName);
+            }
+            mBeanServer.registerMBean(mxBean, registeredName);
+            registeredNames.put(key(name, tags), registeredName);
+        } catch (JMException e) {
+            LOG.warn("Unable to register metric {} with JMX", key(name, tags), e);
+        }
+    }
+
+    @Override
+    protected void onRemoved(String name, String[] tags) {
+        ObjectName registeredName = registeredNames.remove(key(name, tags));
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            mBeanServer.unregisterMBean(registeredName);
+        } catch (JMException e) {
+            LOG.warn("Unable to unregister metric {} from JMX", key(name, tags), e);
+        }
+    }
+
+    private static String quote(String value) {
+        for (char character : value.toCharArray()) {
+            if (",=:\"*?\n".indexOf(character) >= 0) {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+}
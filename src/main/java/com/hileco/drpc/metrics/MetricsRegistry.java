@@ -0,0 +1,49 @@
+package com.hileco.drpc.metrics;
+
+import com.hileco.drpc.generic.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Specification for a registry of named metrics, implement to bridge metrics to any monitoring system.
+ * <p>
+ * Metrics are identified by their name and tags, given as alternating tag keys and values. Requesting a counter or
+ * histogram which already exists returns the existing one.
+ *
+ * @author Philipp Gayret
+ */
+public interface MetricsRegistry {
+
+    /**
+     * @param name metric name
+     * @param tags alternating tag keys and values
+     * @return a counter of occurrences
+     */
+    public LongAdder counter(String name, String... tags);
+
+    /**
+     * @param name metric name
+     * @param tags alternating tag keys and values
+     * @return a histogram of recorded values, such as latencies in nanoseconds or sizes in bytes
+     */
+    public LatencyHistogram histogram(String name, String... tags);
+
+    /**
+     * Registers a value to be sampled whenever the metric is read.
+     *
+     * @param name  metric name
+     * @param value supplier of the current value
+     * @param tags  alternating tag keys and values
+     */
+    public void gauge(String name, LongSupplier value, String... tags);
+
+    /**
+     * Removes a counter, histogram or gauge, so the registry no longer exposes nor references it.
+     *
+     * @param name metric name
+     * @param tags alternating tag keys and values
+     */
+    public void remove(String name, String... tags);
+
+}
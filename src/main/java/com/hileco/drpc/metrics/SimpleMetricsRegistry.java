@@ -0,0 +1,135 @@
+package com.hileco.drpc.metrics;
+
+import com.hileco.drpc.generic.LatencyHistogram;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link MetricsRegistry} which keeps its metrics in memory, readable through its getters.
+ *
+ * @author Philipp Gayret
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    public static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+    public static final int SIGNIFICANT_DECIMAL_DIGITS = 2;
+
+    private final Map<String, LongAdder> counters;
+    private final Map<String, LatencyHistogram> histograms;
+    private final Map<String, LongSupplier> gauges;
+
+    public SimpleMetricsRegistry() {
+        this.counters = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Formats a metric name and tags as a single key, for example {@code client.latency{interface=a.B,method=c}}.
+     *
+     * @param name metric name
+     * @param tags alternating tag keys and values
+     * @return unique key for the metric
+     */
+    public static String key(String name, String... tags) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags must be given as alternating keys and values, got " + Arrays.toString(tags));
+        }
+        if (tags.length == 0) {
+            return name;
+        }
+        StringBuilder builder = new StringBuilder(name).append('{');
+        for (int i = 0; i < tags.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(tags[i]).append('=').append(tags[i + 1]);
+        }
+        return builder.append('}').toString();
+    }
+
+    @Override
+    public LongAdder counter(String name, String... tags) {
+        return counters.computeIfAbsent(key(name, tags), key -> {
+            LongAdder counter = new LongAdder();
+            onCounterCreated(name, tags, counter);
+            return counter;
+        });
+    }
+
+    @Override
+    public LatencyHistogram histogram(String name, String... tags) {
+        return histograms.computeIfAbsent(key(name, tags), key -> {
+            LatencyHistogram histogram = new LatencyHistogram(HIGHEST_TRACKABLE_VALUE, SIGNIFICANT_DECIMAL_DIGITS);
+            onHistogramCreated(name, tags, histogram);
+            return histogram;
+        });
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value, String... tags) {
+        gauges.put(key(name, tags), value);
+        onGaugeCreated(name, tags, value);
+    }
+
+    @Override
+    public void remove(String name, String... tags) {
+        String key = key(name, tags);
+        boolean removed = counters.remove(key) != null;
+        removed |= histograms.remove(key) != null;
+        removed |= gauges.remove(key) != null;
+        if (removed) {
+            onRemoved(name, tags);
+        }
+    }
+
+    /**
+     * Hook for subclasses to expose a counter when it is first created.
+     */
+    protected void onCounterCreated(String name, String[] tags, LongAdder counter) {
+    }
+
+    /**
+     * Hook for subclasses to expose a histogram when it is first created.
+     */
+    protected void onHistogramCreated(String name, String[] tags, LatencyHistogram histogram) {
+    }
+
+    /**
+     * Hook for subclasses to expose a gauge when it is registered.
+     */
+    protected void onGaugeCreated(String name, String[] tags, LongSupplier value) {
+    }
+
+    /**
+     * Hook for subclasses to stop exposing a metric when it is removed.
+     */
+    protected void onRemoved(String name, String[] tags) {
+    }
+
+    /**
+     * @return all counters by their {@link #key(String, String...)}
+     */
+    public Map<String, LongAdder> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * @return all histograms by their {@link #key(String, String...)}
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * @return all gauges by their {@link #key(String, String...)}
+     */
+    public Map<String, LongSupplier> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.hileco.drpc.mqtt;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponential backoff with full jitter, decides how long a failed {@link MqttDrpcTask} waits before its next attempt.
+ * <p>
+ * The ceiling of the delay doubles with every retry up to a maximum, the actual delay is drawn uniformly between zero
+ * and the ceiling so that tasks failing together do not retry together.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcBackoff {
+
+    public static final long DEFAULT_MILLISECONDS_INITIAL_DELAY = 10;
+    public static final long DEFAULT_MILLISECONDS_MAXIMUM_DELAY = 1000;
+
+    private final long initialNanos;
+    private final long maximumNanos;
+
+    public MqttDrpcBackoff() {
+        this(DEFAULT_MILLISECONDS_INITIAL_DELAY, DEFAULT_MILLISECONDS_MAXIMUM_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param initialDelay ceiling of the delay before the first retry
+     * @param maximumDelay ceiling of the delay before any retry
+     * @param unit         unit of the delays
+     */
+    public MqttDrpcBackoff(long initialDelay, long maximumDelay, TimeUnit unit) {
+        if (initialDelay < 1 || maximumDelay < initialDelay) {
+            throw new IllegalArgumentException("Initial delay must be at least 1, and at most the maximum delay");
+        }
+        this.initialNanos = unit.toNanos(initialDelay);
+        this.maximumNanos = unit.toNanos(maximumDelay);
+    }
+
+    /**
+     * @param retries amount of retries made before, zero for the first retry
+     * @return the ceiling of the delay before the retry, in nanoseconds
+     */
+    public long ceiling(int retries) {
+        long ceiling = initialNanos;
+        for (int i = 0; i < retries && ceiling < maximumNanos; i++) {
+            ceiling <<= 1;
+        }
+        return Math.min(ceiling, maximumNanos);
+    }
+
+    /**
+     * @param retries amount of retries made before, zero for the first retry
+     * @return a random delay before the retry, in nanoseconds
+     */
+    public long delay(int retries) {
+        return ThreadLocalRandom.current().nextLong(ceiling(retries) + 1);
+    }
+
+}
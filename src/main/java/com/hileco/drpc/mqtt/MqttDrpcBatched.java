@@ -0,0 +1,47 @@
+package com.hileco.drpc.mqtt;
+
+import java.lang.annotation.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks a method of a service interface as processed in batches by its implementations, so that concurrent requests
+ * of it are invoked together.
+ * <p>
+ * Publishing clients collect the requests of the method arriving within a window after the first, and invoke the
+ * implementation's batch method once for all of them. The batch method is a public method of the implementation with
+ * the given name, taking a {@link List} of the arguments of each request, and returning a {@link List} with the result
+ * of each request in the same order. Exceptions thrown by the batch method are responded to all of its requests.
+ * <p>
+ * Requests are batched per implementation instance, so a service published for many identifiers batches the requests
+ * of all identifiers sharing an implementation together, and those of identifiers with implementations of their own
+ * apart.
+ *
+ * @author Philipp Gayret
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MqttDrpcBatched {
+
+    /**
+     * @return name of the implementation's batch method
+     */
+    String method();
+
+    /**
+     * @return time to collect requests for, after the first request of a batch
+     */
+    long window() default 5;
+
+    /**
+     * @return unit of the window
+     */
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+    /**
+     * @return maximum amount of requests of a batch, a full batch is invoked without awaiting the window
+     */
+    int maximumSize() default 100;
+
+}
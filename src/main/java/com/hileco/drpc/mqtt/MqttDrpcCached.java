@@ -0,0 +1,40 @@
+package com.hileco.drpc.mqtt;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks a method of a service interface as idempotent, so that responses to targeted calls of it are cached by the
+ * calling client, by service identifier and arguments.
+ * <p>
+ * Cached responses are shared between callers, and must not be modified.
+ *
+ * @author Philipp Gayret
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MqttDrpcCached {
+
+    /**
+     * @return time after which a cached response expires
+     */
+    long timeToLive() default 60;
+
+    /**
+     * @return unit of the time to live
+     */
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * @return maximum amount of responses cached for the method
+     */
+    int maximumSize() default 1024;
+
+    /**
+     * @return true to have calling clients listen for invalidations, as sent by
+     * {@link MqttDrpcClient#invalidate(Class, String)}
+     */
+    boolean invalidated() default false;
+
+}
@@ -1,97 +1,368 @@
 package com.hileco.drpc.mqtt;
 
 import com.hileco.drpc.generic.*;
+import com.hileco.drpc.mqtt.MqttDrpcFlightRecorder.Stage;
 import com.hileco.drpc.reflection.ProxyServiceConnector;
-import org.eclipse.paho.client.mqttv3.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Allows publishing services and invoking remote services over MQTT.
  *
  * @author Philipp Gayret
  */
-public class MqttDrpcClient implements MqttCallback {
+public class MqttDrpcClient implements MqttDrpcTransport.Callback {
 
-    private final ServiceHost callbackHost;
+    private static final Logger LOG = LoggerFactory.getLogger(MqttDrpcClient.class);
+
+    private final PendingCallTable pendingCalls;
+    private final long millisecondsCallTimeout;
     private final ServiceHost serviceHost;
     private final MqttDrpcTopicBuilder topicBuilder;
-    private final MqttClient mqttClient;
+    private final MqttDrpcTransport transport;
+    private final String[] callbacks;
     private final RpcPacketStreamer rpcPacketStreamer;
-    private final ExecutorService executorService;
+    private final ScheduledExecutorService executorService;
+    private final MqttDrpcBackoff backoff;
+    private final MqttDrpcRetryBudget retryBudget;
+    private final MqttDrpcBackoff reconnectBackoff;
+    private final boolean replayOnReconnect;
+    private final ExecutorService serviceExecutorService;
+    private final ExecutorService batchExecutorService;
+    private final Function<Class<?>, ConcurrencyLimiter> serviceLimiters;
+    private final Function<Method, ConcurrencyLimiter> methodLimiters;
     private final MqttDrpcFailureHandler mqttDrpcFailureHandler;
-    private final MqttConnectOptions connectOptions;
     private final int qualityOfServiceLevel;
+    private final boolean wildcardSubscriptions;
+    private final MqttDrpcMetrics metrics;
+    private final Map<Class<?>, Map<Method, ResponseCache>> responseCaches;
+    private final Set<Class<?>> invalidatedTypes;
+    private final Map<Class<?>, Set<Method>> singleFlightMethods;
+    private final Map<Class<?>, Map<Method, Integer>> requestQualities;
+    private final Map<Class<?>, Set<Method>> oneWayMethods;
+    private final Map<String, CallFlight> callFlights;
+    private final Map<String, Integer> subscriptions;
+    private final Map<Long, OutstandingCall> outstandingCalls;
+    private final AtomicInteger reconnectRequests;
+    private volatile boolean connected;
 
     /**
      * The recommended way to create an instance is with {@link com.hileco.drpc.mqtt.MqttDrpcClientBuilder}.
+     *
+     * @param backoff                 decides the delays before retrying failed tasks
+     * @param retryBudget             limits the retries of failed tasks
+     * @param reconnectBackoff        decides the delays between attempts to reconnect after the connection is lost, or
+     *                                null to not reconnect
+     * @param replayOnReconnect       whether to publish the requests of targeted calls awaiting responses again once
+     *                                reconnected, rather than failing them when the connection is lost
+     * @param callbacks               amount of callback topics to spread the responses to calls across, topics
+     *                                {@code c/<clientId>/<index>} when more than one, or topic {@code c/<clientId>}
+     * @param pendingCalls            table of calls awaiting responses, which also hands out their correlation identifiers
+     * @param millisecondsCallTimeout time after which calls stop awaiting responses
+     * @param serviceExecutorService executor to invoke published services on, or null to invoke them on the
+     *                               transport's delivery thread
+     * @param serviceLimiters        creates the concurrency limiter shared by all methods of a published service, may
+     *                               return null for no limit
+     * @param methodLimiters         creates the concurrency limiter of a method of a published service, may return null
+     *                               for no limit
+     * @param wildcardSubscriptions  whether to subscribe to the operations of a published service with two wildcard
+     *                               topic filters, rather than two topics per method
      */
-    public MqttDrpcClient(MqttDrpcFailureHandler mqttDrpcFailureHandler, ExecutorService executorService, MqttClient mqttClient,
-                          MqttDrpcTopicBuilder topicBuilder, ServiceHost serviceHost, ServiceHost callbackHost, RpcPacketStreamer rpcPacketStreamer,
-                          MqttConnectOptions connectOptions, int qualityOfServiceLevel) {
-        this.connectOptions = connectOptions;
+    public MqttDrpcClient(MqttDrpcFailureHandler mqttDrpcFailureHandler, ScheduledExecutorService executorService, MqttDrpcBackoff backoff,
+                          MqttDrpcRetryBudget retryBudget, MqttDrpcBackoff reconnectBackoff, boolean replayOnReconnect, int callbacks,
+                          MqttDrpcTransport transport, MqttDrpcTopicBuilder topicBuilder, ServiceHost serviceHost, PendingCallTable pendingCalls, long millisecondsCallTimeout,
+                          RpcPacketStreamer rpcPacketStreamer, int qualityOfServiceLevel, MqttDrpcMetrics metrics, ExecutorService serviceExecutorService,
+                          Function<Class<?>, ConcurrencyLimiter> serviceLimiters, Function<Method, ConcurrencyLimiter> methodLimiters,
+                          boolean wildcardSubscriptions) {
         this.qualityOfServiceLevel = qualityOfServiceLevel;
-        this.mqttDrpcFailureHandler = mqttDrpcFailureHandler;
+        this.wildcardSubscriptions = wildcardSubscriptions;
+        this.serviceExecutorService = serviceExecutorService;
+        // without a service executor, batches ending their window are invoked on a single thread, which ends while idle
+        this.batchExecutorService = new ThreadPoolExecutor(0, 1, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "MqttDrpcClient-batches");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.serviceLimiters = serviceLimiters;
+        this.methodLimiters = methodLimiters;
+        this.metrics = metrics;
+        this.responseCaches = new ConcurrentHashMap<>();
+        this.invalidatedTypes = ConcurrentHashMap.newKeySet();
+        this.singleFlightMethods = new ConcurrentHashMap<>();
+        this.requestQualities = new ConcurrentHashMap<>();
+        this.oneWayMethods = new ConcurrentHashMap<>();
+        this.callFlights = new HashMap<>();
+        this.mqttDrpcFailureHandler = metrics.instrument(retryBudget.limit(mqttDrpcFailureHandler));
         this.executorService = executorService;
+        this.backoff = backoff;
+        this.retryBudget = retryBudget;
+        this.reconnectBackoff = reconnectBackoff;
+        this.replayOnReconnect = replayOnReconnect;
+        this.subscriptions = new HashMap<>();
+        this.outstandingCalls = new ConcurrentHashMap<>();
+        this.reconnectRequests = new AtomicInteger();
         this.topicBuilder = topicBuilder;
         this.serviceHost = serviceHost;
         this.rpcPacketStreamer = rpcPacketStreamer;
-        this.callbackHost = callbackHost;
-        this.mqttClient = mqttClient;
-        this.mqttClient.setCallback(this);
-        String callback = this.topicBuilder.callback(this.mqttClient.getClientId());
-        this.serviceHost.register(callback, (topic, content) -> {
-            content.mark(Integer.MAX_VALUE);
-            RpcResponsePacket rpcResponsePacketHeaders = rpcPacketStreamer.readResponse(content, Collections.emptyList());
-            content.reset();
-            callbackHost.accept(rpcResponsePacketHeaders.getCorrelationId(), content);
-        });
+        this.pendingCalls = pendingCalls;
+        this.millisecondsCallTimeout = millisecondsCallTimeout;
+        this.transport = transport;
+        this.transport.setCallback(this);
+        this.callbacks = new String[callbacks];
+        for (int i = 0; i < callbacks; i++) {
+            this.callbacks[i] = callbacks == 1 ? transport.getClientId() : transport.getClientId() + ServiceHost.SEPARATOR + i;
+        }
+        String[] callbackTopics = callbackTopics();
+        track(callbackTopics);
+        MessageReceiver callbackReceiver = (topic, content) -> {
+            MqttDrpcFlightRecorder.Span routing = MqttDrpcFlightRecorder.begin(Stage.CALLBACK_ROUTING, null, null, null);
+            try {
+                content.mark(Integer.MAX_VALUE);
+                RpcResponsePacket rpcResponsePacketHeaders;
+                try {
+                    rpcResponsePacketHeaders = rpcPacketStreamer.readResponse(content, Collections.emptyList());
+                } catch (IOException e) {
+                    // throwing on the delivery thread would drop the connection, the call expires instead
+                    LOG.warn("Dropped a response on {}, its headers are unreadable", topic, e);
+                    return;
+                }
+                content.reset();
+                String correlationId = rpcResponsePacketHeaders.getCorrelationId();
+                routing.setCorrelationId(correlationId);
+                long key;
+                try {
+                    key = Long.parseLong(correlationId, Character.MAX_RADIX);
+                } catch (NumberFormatException e) {
+                    // not a correlation identifier of this client, ignore the response
+                    return;
+                }
+                OutstandingCall call = outstandingCalls.get(key);
+                if (call != null) {
+                    routing.setCall(call.type, call.method);
+                }
+                if (pendingCalls.accept(key, content)) {
+                    routing.finish();
+                }
+            } finally {
+                // responses which belong to no call of this client are not traced
+                routing.discard();
+            }
+        };
+        for (String callbackTopic : callbackTopics) {
+            this.serviceHost.register(callbackTopic, callbackReceiver);
+        }
+        this.metrics.gauge(MqttDrpcMetrics.CLIENT_CALLBACKS_PENDING, pendingCalls::size);
+        this.metrics.gauge(MqttDrpcMetrics.CLIENT_CALLBACKS_CAPACITY, pendingCalls::getCapacity);
+        this.metrics.gauge(MqttDrpcMetrics.TASK_RETRY_BUDGET, retryBudget::getBalance);
+        if (executorService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) executorService;
+            this.metrics.gauge(MqttDrpcMetrics.EXECUTOR_QUEUE_DEPTH, () -> threadPoolExecutor.getQueue().size());
+        }
+    }
+
+    /**
+     * @return the metrics of this client
+     */
+    public MqttDrpcMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * Delegates disconnect errors to the failure handler.
+     * Delegates disconnect errors to the failure handler, fails the calls awaiting responses which will not be replayed
+     * and begins reconnecting, unless reconnecting already.
      */
     @Override
     public void connectionLost(Throwable throwable) {
         mqttDrpcFailureHandler.handleDisconnect(throwable);
+        boolean reconnect = reconnectBackoff != null && connected;
+        for (OutstandingCall call : outstandingCalls.values()) {
+            if (!reconnect || !replayOnReconnect || !call.replayable) {
+                call.disconnected.accept(throwable);
+            }
+        }
+        if (reconnect && reconnectRequests.getAndIncrement() == 0) {
+            executorService.execute(() -> reconnect(0, 1));
+        }
+    }
+
+    /**
+     * Reconnects the transport and resubscribes all topics of this client, reattempting after a delay until connected
+     * or disconnected on purpose. Once reconnected, replays the remaining calls awaiting responses. Connections lost
+     * while reconnecting are reconnected by another round once this one completes.
+     * <p>
+     * A failed attempt leaves the transport as it is, rather than disconnecting it, so that the connections of a
+     * transport over multiple connections which are still up stay up. The next attempt connects whatever is still down,
+     * and resubscribes over all connections.
+     *
+     * @param attempt  amount of attempts made before in this round
+     * @param requests amount of lost connections this round reconnects
+     */
+    private void reconnect(int attempt, int requests) {
+        if (!connected) {
+            reconnectRequests.set(0);
+            return;
+        }
+        boolean reconnected = true;
+        try {
+            try {
+                transport.connect();
+            } catch (MqttDrpcTransportException e) {
+                if (e.getReasonCode() != MqttDrpcTransportException.REASON_CODE_CLIENT_CONNECTED) {
+                    throw e;
+                }
+                // nothing was down anymore when a previous round already reconnected it, else a previous attempt
+                // connected and failed to subscribe
+                reconnected = attempt > 0;
+            }
+            if (reconnected) {
+                transport.subscribe(subscribedTopics());
+            }
+        } catch (MqttDrpcTransportException | RuntimeException e) {
+            executorService.schedule(() -> reconnect(attempt + 1, requests), reconnectBackoff.delay(attempt), TimeUnit.NANOSECONDS);
+            return;
+        }
+        if (reconnected) {
+            metrics.reconnects().increment();
+            for (OutstandingCall call : outstandingCalls.values()) {
+                submit(() -> transport.publish(call.topic, call.payload, call.qualityOfServiceLevel));
+            }
+        }
+        int remaining = reconnectRequests.addAndGet(-requests);
+        if (remaining > 0) {
+            executorService.execute(() -> reconnect(0, remaining));
+        }
+    }
+
+    /**
+     * Notes topics as subscribed to, to resubscribe to them after reconnecting.
+     *
+     * @param topics topics subscribed to
+     */
+    private void track(String[] topics) {
+        synchronized (subscriptions) {
+            for (String topic : topics) {
+                subscriptions.merge(topic, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Notes topics as no longer subscribed to, topics subscribed to multiple times remain until untracked as often.
+     *
+     * @param topics topics no longer subscribed to
+     * @return the topics which are no longer subscribed to at all
+     */
+    private String[] untrack(String[] topics) {
+        List<String> untracked = new ArrayList<>();
+        synchronized (subscriptions) {
+            for (String topic : topics) {
+                if (subscriptions.merge(topic, -1, (count, decrement) -> count + decrement == 0 ? null : count + decrement) == null) {
+                    untracked.add(topic);
+                }
+            }
+        }
+        return untracked.toArray(new String[untracked.size()]);
+    }
+
+    private String[] callbackTopics() {
+        String[] topics = new String[callbacks.length];
+        for (int i = 0; i < callbacks.length; i++) {
+            topics[i] = topicBuilder.callback(callbacks[i]);
+        }
+        return topics;
+    }
+
+    /**
+     * @return the identifier to respond to a call with, spreading calls across the callback topics of this client
+     */
+    private String callback(long key) {
+        return callbacks[(int) Math.floorMod(key, (long) callbacks.length)];
+    }
+
+    private String[] subscribedTopics() {
+        synchronized (subscriptions) {
+            return subscriptions.keySet().toArray(new String[subscriptions.size()]);
+        }
     }
 
     /**
      * Delegates incoming messages to the service host.
      */
     @Override
-    public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
-        byte[] payload = mqttMessage.getPayload();
+    public void messageArrived(String topic, byte[] payload) throws Exception {
         serviceHost.accept(topic, new ByteArrayInputStream(payload));
     }
 
     /**
-     * Null implementation, delivery is assured by quality of service level.
+     * Connects the internal {@link #transport} to the broker, automatically begins listening for callbacks.
+     *
+     * @throws MqttDrpcTransportException
      */
-    @Override
-    public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
+    public void connect() throws MqttDrpcTransportException {
+        transport.connect();
+        connected = true;
+        String[] callbackTopics = callbackTopics();
+        transport.unsubscribe(callbackTopics);
+        transport.subscribe(callbackTopics);
+    }
+
+    /**
+     * Disconnects the internal {@link #transport} from the broker. The client may connect again afterwards, with its
+     * metrics still in the registry.
+     *
+     * @throws MqttDrpcTransportException
+     */
+    public void disconnect() throws MqttDrpcTransportException {
+        connected = false;
+        transport.disconnect();
     }
 
     /**
-     * Connects the internal {@link #mqttClient} to the broker, automatically begins listening for callbacks.
+     * Disconnects when connected, and removes this client's metrics from the registry. The client is not to be used
+     * afterwards.
      *
-     * @throws MqttException
+     * @throws MqttDrpcTransportException
      */
-    public void connect() throws MqttException {
-        mqttClient.connect(connectOptions);
-        String callbacks = topicBuilder.callback(this.mqttClient.getClientId());
-        mqttClient.unsubscribe(callbacks);
-        mqttClient.subscribe(callbacks);
+    public void close() throws MqttDrpcTransportException {
+        try {
+            if (connected) {
+                disconnect();
+            }
+        } finally {
+            metrics.close();
+        }
     }
 
     /**
@@ -100,64 +371,888 @@ public class MqttDrpcClient implements MqttCallback {
      * @param taskBody task body to execute
      */
     private void await(MqttDrpcTask.TaskBody taskBody) {
-        MqttDrpcTask mqttDrpcTask = new MqttDrpcTask(executorService, mqttDrpcFailureHandler, taskBody);
+        retryBudget.deposit();
+        MqttDrpcTask mqttDrpcTask = new MqttDrpcTask(executorService, mqttDrpcFailureHandler, backoff, taskBody);
         mqttDrpcTask.start();
         mqttDrpcTask.join();
     }
 
+    /**
+     * Creates a new task out of a given task body and schedules it, without awaiting its completion.
+     * <p>
+     * Used from the transport's delivery thread, which MQTT clients also use to complete acknowledgements, and which
+     * therefore must never wait on the broker.
+     *
+     * @param taskBody task body to execute
+     */
+    private void submit(MqttDrpcTask.TaskBody taskBody) {
+        retryBudget.deposit();
+        MqttDrpcTask mqttDrpcTask = new MqttDrpcTask(executorService, mqttDrpcFailureHandler, backoff, taskBody);
+        mqttDrpcTask.start();
+    }
+
+    /**
+     * @param response response to serialize
+     * @return the serialized response
+     * @throws IOException on serialization failures
+     */
+    private byte[] serialize(RpcResponsePacket response) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        rpcPacketStreamer.writeResponse(outputStream, response);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Submits the publishing of a serialized response to the callback topic of the requesting client.
+     *
+     * @param type                  type of the published service
+     * @param method                method the response is for
+     * @param request               request the response is for
+     * @param payload               serialized response
+     * @param qualityOfServiceLevel quality of service level to publish the response with
+     */
+    private void respond(Class<?> type, Method method, RpcRequestPacket request, byte[] payload, int qualityOfServiceLevel) {
+        String callback = topicBuilder.callback(request.getClientId());
+        MqttDrpcFlightRecorder.Span responsePublish = MqttDrpcFlightRecorder.begin(Stage.RESPONSE_PUBLISH, request.getCorrelationId(), type, method);
+        submit(() -> {
+            try {
+                transport.publish(callback, payload, qualityOfServiceLevel);
+                responsePublish.finish();
+            } finally {
+                responsePublish.discard();
+            }
+        });
+    }
+
+    /**
+     * Reads the quality of service level of a method's requests or responses, from its {@link MqttDrpcQualityOfService}
+     * annotation or else that of its type, or else the level of this client.
+     *
+     * @param type     service type
+     * @param method   method of the service
+     * @param response true for the level of responses, false for that of requests
+     * @return the quality of service level
+     */
+    private int qualityOfService(Class<?> type, Method method, boolean response) {
+        for (MqttDrpcQualityOfService annotation : new MqttDrpcQualityOfService[]{method.getAnnotation(MqttDrpcQualityOfService.class),
+                type.getAnnotation(MqttDrpcQualityOfService.class)}) {
+            int level = annotation == null ? -1 : response ? annotation.response() : annotation.request();
+            if (level >= 0) {
+                return level;
+            }
+        }
+        return qualityOfServiceLevel;
+    }
+
+    /**
+     * @param method method of a service
+     * @return true when the method is a {@link MqttDrpcOneWay} notification
+     * @throws IllegalArgumentException when the method is annotated as one-way but does not return void
+     */
+    private static boolean oneWay(Method method) {
+        if (!method.isAnnotationPresent(MqttDrpcOneWay.class)) {
+            return false;
+        }
+        if (method.getReturnType() != void.class) {
+            throw new IllegalArgumentException("One-way method " + method.getDeclaringClass().getName() + "#" + method.getName() + " must return void");
+        }
+        return true;
+    }
+
+    /**
+     * A request admitted to the batch of a {@link MqttDrpcBatched} method, awaiting its invocation.
+     */
+    private static final class BatchedRequest {
+
+        private final String flight;
+        private final RpcRequestPacket request;
+        private final long start;
+
+        private BatchedRequest(String flight, RpcRequestPacket request, long start) {
+            this.flight = flight;
+            this.request = request;
+            this.start = start;
+        }
+
+    }
+
+    /**
+     * Receives the requests of a single method of a published service, admits them within the concurrency limits and
+     * responds to those exceeding the limits with an {@link MqttDrpcOverloadedException}.
+     * <p>
+     * For {@link MqttDrpcSingleFlight} methods, requests arriving while a request with equal arguments is in flight
+     * join it, and are responded to with its result. Requests of {@link MqttDrpcOneWay} methods are never responded to.
+     * Admitted requests of {@link MqttDrpcBatched} methods are collected per implementation, and invoked together.
+     * Implementations are told apart by identity, so identifiers resolving to the same instance share their batches.
+     * <p>
+     * Methods published for many identifiers at once resolve the identifier from the last level of the topic, ignore
+     * requests for identifiers not among them, and invoke the implementation of the identifier.
+     */
+    private class PublishedMethod implements MessageReceiver {
+
+        private final Class<?> type;
+        private final Method method;
+        private final Function<String, ?> implementations;
+        private final Set<String> identifiers;
+        private final List<Class<?>> parameterTypes;
+        private final ConcurrencyLimiter serviceLimiter;
+        private final ConcurrencyLimiter methodLimiter;
+        private final int responseQualityOfService;
+        private final boolean oneWay;
+        private final LatencyHistogram serviceLatency;
+        private final LatencyHistogram serviceResponseBytes;
+        private final LongAdder serviceRejections;
+        private final LongAdder serviceErrors;
+        private final LongAdder serviceCoalesced;
+        private final Map<String, List<RpcRequestPacket>> flights;
+        private final MqttDrpcBatched batched;
+        private final LatencyHistogram serviceBatchSize;
+        private final Map<Object, List<BatchedRequest>> batches;
+        private final Map<Class<?>, Method> batchMethods;
+
+        /**
+         * @param identifiers     identifiers to resolve from topics, or null to invoke the same implementation for all
+         * @param implementations implementation of each identifier, given null when identifiers is null
+         */
+        private PublishedMethod(Class<?> type, Method method, Set<String> identifiers, Function<String, ?> implementations, ConcurrencyLimiter serviceLimiter) {
+            this.type = type;
+            this.method = method;
+            this.implementations = implementations;
+            this.identifiers = identifiers;
+            this.parameterTypes = Arrays.asList(method.getParameterTypes());
+            this.serviceLimiter = serviceLimiter;
+            this.methodLimiter = methodLimiters.apply(method);
+            this.responseQualityOfService = qualityOfService(type, method, true);
+            this.oneWay = oneWay(method);
+            this.serviceLatency = metrics.serviceLatency(type, method);
+            this.serviceResponseBytes = metrics.serviceResponseBytes(type, method);
+            this.serviceRejections = metrics.serviceRejections(type, method);
+            this.serviceErrors = metrics.serviceErrors(type, method);
+            this.serviceCoalesced = metrics.serviceCoalesced(type, method);
+            this.flights = method.isAnnotationPresent(MqttDrpcSingleFlight.class) ? new HashMap<>() : null;
+            this.batched = method.getAnnotation(MqttDrpcBatched.class);
+            this.serviceBatchSize = batched == null ? null : metrics.serviceBatchSize(type, method);
+            this.batches = batched == null ? null : new IdentityHashMap<>();
+            this.batchMethods = batched == null ? null : new ConcurrentHashMap<>();
+            if (batched != null) {
+                if (identifiers == null) {
+                    batchMethod(implementations.apply(null));
+                } else {
+                    for (String identifier : identifiers) {
+                        batchMethod(implementations.apply(identifier));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void accept(String topic, InputStream content) throws IOException {
+            long start = System.nanoTime();
+            String identifier = null;
+            if (identifiers != null) {
+                identifier = topic.substring(topic.lastIndexOf(ServiceHost.SEPARATOR) + 1);
+                if (!identifiers.contains(identifier)) {
+                    return;
+                }
+            }
+            Object implementation = implementations.apply(identifier);
+            MqttDrpcFlightRecorder.Span deserialization = MqttDrpcFlightRecorder.begin(Stage.SERVICE_DESERIALIZATION, null, type, method);
+            RpcRequestPacket request;
+            content.mark(Integer.MAX_VALUE);
+            try {
+                request = rpcPacketStreamer.readRequest(content, parameterTypes);
+            } catch (IOException e) {
+                // when at least the headers are readable, the caller can still be told about the failure
+                content.reset();
+                RpcRequestPacket headers;
+                try {
+                    headers = rpcPacketStreamer.readRequest(content, Collections.emptyList());
+                } catch (IOException ignored) {
+                    // without headers there is no caller to tell, throwing on the delivery thread would drop the connection
+                    deserialization.discard();
+                    LOG.warn("Dropped a request on {}, its headers are unreadable", topic, e);
+                    return;
+                }
+                deserialization.setCorrelationId(headers.getCorrelationId());
+                deserialization.finish();
+                fail(Collections.singletonList(headers), e);
+                return;
+            }
+            deserialization.setCorrelationId(request.getCorrelationId());
+            deserialization.finish();
+            // equal calls to different identifiers are separate flights
+            String flight = flights == null ? null : identifier == null ? argumentsKey(request.getBody()) : identifier + ServiceHost.SEPARATOR + argumentsKey(request.getBody());
+            if (flight != null && join(flight, request)) {
+                return;
+            }
+            if (!acquire()) {
+                reject(land(flight, request));
+                return;
+            }
+            if (batches != null) {
+                batch(implementation, flight, request, start);
+                return;
+            }
+            if (serviceExecutorService == null) {
+                invoke(implementation, flight, request, start);
+            } else {
+                try {
+                    serviceExecutorService.execute(() -> invoke(implementation, flight, request, start));
+                } catch (RejectedExecutionException e) {
+                    release(0);
+                    reject(land(flight, request));
+                }
+            }
+        }
+
+        /**
+         * Joins the request to the flight of equal requests, or starts that flight when there is none.
+         *
+         * @return true when joined, false when the request started the flight and must be invoked
+         */
+        private boolean join(String flight, RpcRequestPacket request) {
+            synchronized (flights) {
+                List<RpcRequestPacket> requests = flights.get(flight);
+                if (requests != null) {
+                    requests.add(request);
+                    serviceCoalesced.increment();
+                    return true;
+                }
+                requests = new ArrayList<>();
+                requests.add(request);
+                flights.put(flight, requests);
+                return false;
+            }
+        }
+
+        /**
+         * Ends the flight of a request, requests arriving afterwards start a new flight.
+         *
+         * @return all requests to respond to with the outcome of the request
+         */
+        private List<RpcRequestPacket> land(String flight, RpcRequestPacket request) {
+            if (flight == null) {
+                return Collections.singletonList(request);
+            }
+            synchronized (flights) {
+                return flights.remove(flight);
+            }
+        }
+
+        private boolean acquire() {
+            if (serviceLimiter != null && !serviceLimiter.tryAcquire()) {
+                return false;
+            }
+            if (methodLimiter != null && !methodLimiter.tryAcquire()) {
+                if (serviceLimiter != null) {
+                    serviceLimiter.release(0);
+                }
+                return false;
+            }
+            return true;
+        }
+
+        private void release(long latency) {
+            if (methodLimiter != null) {
+                methodLimiter.release(latency);
+            }
+            if (serviceLimiter != null) {
+                serviceLimiter.release(latency);
+            }
+        }
+
+        private void reject(List<RpcRequestPacket> requests) {
+            String message = "Rejected a call to " + type.getName() + "#" + method.getName() + ", the service is at its concurrency limit.";
+            RpcError error = new RpcError(MqttDrpcOverloadedException.class.getName(), message);
+            for (RpcRequestPacket request : requests) {
+                serviceRejections.increment();
+                if (oneWay) {
+                    continue;
+                }
+                respondWithError(request, error);
+            }
+        }
+
+        /**
+         * Responds to requests with the error that prevented their invocation or their result, the cause of an
+         * exception thrown by the implementation is responded in its place.
+         */
+        private void fail(List<RpcRequestPacket> requests, Throwable throwable) {
+            Throwable cause = throwable instanceof InvocationTargetException ? throwable.getCause() : throwable;
+            RpcError error = new RpcError(cause.getClass().getName(), cause.getMessage());
+            for (RpcRequestPacket request : requests) {
+                serviceErrors.increment();
+                if (oneWay) {
+                    continue;
+                }
+                respondWithError(request, error);
+            }
+        }
+
+        /**
+         * Responds to a request with an error, or drops the response when the error cannot be serialized; the call
+         * then expires at its caller.
+         */
+        private void respondWithError(RpcRequestPacket request, RpcError error) {
+            byte[] payload;
+            try {
+                payload = serialize(new RpcResponsePacket(request.getCorrelationId(), error));
+            } catch (IOException e) {
+                LOG.warn("Dropped the response to a call to {}#{}, serialization of its error failed", type.getName(), method.getName(), e);
+                return;
+            }
+            respond(type, method, request, payload, responseQualityOfService);
+        }
+
+        private void invoke(Object implementation, String flight, RpcRequestPacket request, long start) {
+            metrics.serviceInvocationsInFlight().increment();
+            try {
+                MqttDrpcFlightRecorder.Span invocation = MqttDrpcFlightRecorder.begin(Stage.SERVICE_INVOCATION, request.getCorrelationId(), type, method);
+                Object result;
+                try {
+                    result = method.invoke(implementation, request.getBody());
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    fail(land(flight, request), e);
+                    return;
+                } finally {
+                    invocation.finish();
+                }
+                succeed(flight, request, start, result);
+            } finally {
+                release(System.nanoTime() - start);
+                metrics.serviceInvocationsInFlight().decrement();
+            }
+        }
+
+        /**
+         * Responds to a request and those which joined its flight with the result of its invocation.
+         */
+        private void succeed(String flight, RpcRequestPacket request, long start, Object result) {
+            List<RpcRequestPacket> landed = land(flight, request);
+            if (oneWay) {
+                serviceLatency.record(System.nanoTime() - start);
+                return;
+            }
+            for (RpcRequestPacket each : landed) {
+                byte[] payload;
+                try {
+                    payload = serialize(new RpcResponsePacket(each.getCorrelationId(), new Object[]{result}));
+                } catch (IOException e) {
+                    fail(Collections.singletonList(each), e);
+                    continue;
+                }
+                serviceResponseBytes.record(payload.length);
+                if (each == request) {
+                    serviceLatency.record(System.nanoTime() - start);
+                }
+                respond(type, method, each, payload, responseQualityOfService);
+            }
+        }
+
+        /**
+         * Adds an admitted request to the batch of its implementation, starting the batch when there is none.
+         */
+        private void batch(Object implementation, String flight, RpcRequestPacket request, long start) {
+            List<BatchedRequest> full = null;
+            synchronized (batches) {
+                List<BatchedRequest> batch = batches.get(implementation);
+                if (batch == null) {
+                    List<BatchedRequest> started = new ArrayList<>();
+                    batches.put(implementation, started);
+                    executorService.schedule(() -> flush(implementation, started), batched.window(), batched.unit());
+                    batch = started;
+                }
+                batch.add(new BatchedRequest(flight, request, start));
+                if (batch.size() >= batched.maximumSize()) {
+                    batches.remove(implementation);
+                    full = batch;
+                }
+            }
+            if (full != null) {
+                execute(implementation, full);
+            }
+        }
+
+        /**
+         * Ends the window of a batch, unless the batch was invoked already when it became full.
+         * <p>
+         * Runs on the client's scheduled executor service, which is not to be held up by the batch method, so without
+         * a service executor the batch is invoked on the client's batch thread instead.
+         */
+        private void flush(Object implementation, List<BatchedRequest> batch) {
+            synchronized (batches) {
+                if (batches.get(implementation) != batch) {
+                    return;
+                }
+                batches.remove(implementation);
+            }
+            if (serviceExecutorService == null) {
+                batchExecutorService.execute(() -> invoke(implementation, batch));
+                return;
+            }
+            execute(implementation, batch);
+        }
+
+        private void execute(Object implementation, List<BatchedRequest> batch) {
+            if (serviceExecutorService == null) {
+                invoke(implementation, batch);
+                return;
+            }
+            try {
+                serviceExecutorService.execute(() -> invoke(implementation, batch));
+            } catch (RejectedExecutionException e) {
+                for (BatchedRequest each : batch) {
+                    release(0);
+                    reject(land(each.flight, each.request));
+                }
+            }
+        }
+
+        /**
+         * Invokes the batch method of the implementation once for all requests of a batch, and responds to each with
+         * its own result.
+         */
+        private void invoke(Object implementation, List<BatchedRequest> batch) {
+            metrics.serviceInvocationsInFlight().add(batch.size());
+            serviceBatchSize.record(batch.size());
+            try {
+                MqttDrpcFlightRecorder.Span invocation = MqttDrpcFlightRecorder.begin(Stage.SERVICE_INVOCATION, null, type, method);
+                List<Object[]> arguments = new ArrayList<>(batch.size());
+                for (BatchedRequest each : batch) {
+                    arguments.add(each.request.getBody());
+                }
+                List<?> results;
+                try {
+                    results = (List<?>) batchMethod(implementation).invoke(implementation, arguments);
+                    if (!oneWay && (results == null || results.size() != batch.size())) {
+                        throw new IllegalStateException("Batch method " + batched.method() + " returned " + (results == null ? "no" : results.size())
+                                + " results for " + batch.size() + " requests.");
+                    }
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    for (BatchedRequest each : batch) {
+                        fail(land(each.flight, each.request), e);
+                    }
+                    return;
+                } finally {
+                    invocation.finish();
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    BatchedRequest each = batch.get(i);
+                    succeed(each.flight, each.request, each.start, oneWay ? null : results.get(i));
+                }
+            } finally {
+                for (BatchedRequest each : batch) {
+                    release(System.nanoTime() - each.start);
+                }
+                metrics.serviceInvocationsInFlight().add(-batch.size());
+            }
+        }
+
+        /**
+         * @return the batch method of the implementation, see {@link MqttDrpcBatched#method()}
+         * @throws IllegalArgumentException when the implementation has no such method
+         */
+        private Method batchMethod(Object implementation) throws IllegalArgumentException {
+            return batchMethods.computeIfAbsent(implementation.getClass(), implementationType -> {
+                try {
+                    Method batchMethod = implementationType.getMethod(batched.method(), List.class);
+                    if (!List.class.isAssignableFrom(batchMethod.getReturnType())) {
+                        throw new IllegalArgumentException("Batch method " + batched.method() + " of " + implementationType.getName() + " must return a List.");
+                    }
+                    // implementations are often of classes which are not public themselves
+                    batchMethod.setAccessible(true);
+                    return batchMethod;
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalArgumentException("Implementation " + implementationType.getName() + " has no public batch method "
+                            + batched.method() + "(List) for " + type.getName() + "#" + method.getName() + ".", e);
+                }
+            });
+        }
+
+    }
+
     /**
      * Publishes a service, informs the router that this client wants to receive messages for the given service.
+     * <p>
+     * Subscribes to the topics of each of the service's methods, or with wildcard subscriptions to two topic filters
+     * matching all of them.
      *
      * @param type           type to publish, and class' defined methods to allow access to
      * @param identifier     identifier of the implementation
      * @param implementation remote procedure call receiver
      * @param <T>            type of implementation
      * @return closeable to use for unregistering
+     * @throws IllegalArgumentException when the implementation lacks the batch method of a {@link MqttDrpcBatched} method
+     */
+    public <T> SilentCloseable publish(Class<T> type, String identifier, T implementation) throws IllegalArgumentException {
+        return publish(type, identifier, implementation, null);
+    }
+
+    /**
+     * @param batch topics to subscribe to later, or null to subscribe right away
      */
-    public <T> SilentCloseable publish(Class<T> type, String identifier, T implementation) {
+    private <T> SilentCloseable publish(Class<T> type, String identifier, T implementation, Set<String> batch) {
         Method[] methods = type.getMethods();
         SilentCloseable[] closeables = new SilentCloseable[methods.length * 2];
-        String[] topics = new String[methods.length * 2];
+        String[] operationTopics = new String[methods.length * 2];
+        ConcurrencyLimiter serviceLimiter = serviceLimiters.apply(type);
+        MessageReceiver[] receivers = new MessageReceiver[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            receivers[i] = new PublishedMethod(type, methods[i], null, key -> implementation, serviceLimiter);
+        }
         for (int i = 0; i < methods.length; i++) {
             Method method = methods[i];
-            MessageReceiver receiver = (String topic, InputStream content) -> {
-                try {
-                    List<Class<?>> parameterTypes = Arrays.asList(method.getParameterTypes());
-                    RpcRequestPacket request = rpcPacketStreamer.readRequest(content, parameterTypes);
-                    try {
-                        Object result = method.invoke(implementation, request.getBody());
-                        String callback = topicBuilder.callback(request.getClientId());
-                        RpcResponsePacket response = new RpcResponsePacket(request.getCorrelationId(), new Object[]{result});
-                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                        rpcPacketStreamer.writeResponse(outputStream, response);
-                        MqttMessage message = new MqttMessage(outputStream.toByteArray());
-                        message.setQos(qualityOfServiceLevel);
-                        await(() -> mqttClient.publish(callback, message));
-                    } catch (ReflectiveOperationException e) {
-                        throw new MqttDrpcRuntimeException("Erred invoking a service method.", e);
-                    }
-                } catch (IOException e) {
-                    throw new MqttDrpcRuntimeException("Deserialization of response message body failed.", e);
-                }
-            };
+            MessageReceiver receiver = receivers[i];
             String operation = topicBuilder.operation(type, method);
             SilentCloseable service = serviceHost.register(operation, receiver);
             String operationById = topicBuilder.operation(type, method, identifier);
             SilentCloseable serviceById = serviceHost.register(operationById, receiver);
-            topics[(i * 2)] = operationById;
+            operationTopics[(i * 2)] = operationById;
             closeables[(i * 2)] = serviceById;
-            topics[(i * 2) + 1] = operation;
+            operationTopics[(i * 2) + 1] = operation;
             closeables[(i * 2) + 1] = service;
         }
-        await(() -> mqttClient.subscribe(topics));
+        String[] topics = wildcardSubscriptions
+                ? new String[]{topicBuilder.operations(type, identifier), topicBuilder.operations(type)}
+                : operationTopics;
+        subscribe(topics, batch);
+        return () -> {
+            for (SilentCloseable closeable : closeables) {
+                closeable.close();
+            }
+            String[] untracked = untrack(topics);
+            if (untracked.length > 0) {
+                await(() -> transport.unsubscribe(untracked));
+            }
+        };
+    }
+
+    /**
+     * Publishes a service for many identifiers at once, such as a single implementation serving many devices.
+     * <p>
+     * Subscribes to one topic filter per method matching any identifier, or with wildcard subscriptions to a single
+     * topic filter, rather than to two topics per method for each identifier. Requests for identifiers not among the
+     * given ones are ignored, and calls without an identifier are not served.
+     *
+     * @param type            type to publish, and class' defined methods to allow access to
+     * @param identifiers     identifiers of the implementations
+     * @param implementations implementation of each identifier, invoked for every request to resolve its receiver, and
+     *                        for every identifier when published to find the batch methods of {@link MqttDrpcBatched}
+     *                        methods; requests are batched per distinct implementation instance
+     * @param <T>             type of implementation
+     * @return closeable to use for unregistering
+     * @throws IllegalArgumentException when an identifier is empty or contains a topic separator or wildcard, or when
+     *                                  an implementation has no batch method
+     */
+    public <T> SilentCloseable publish(Class<T> type, Collection<String> identifiers, Function<String, ? extends T> implementations) throws IllegalArgumentException {
+        return publish(type, identifiers, implementations, null);
+    }
+
+    /**
+     * @param batch topics to subscribe to later, or null to subscribe right away
+     */
+    private <T> SilentCloseable publish(Class<T> type, Collection<String> identifiers, Function<String, ? extends T> implementations, Set<String> batch) {
+        Set<String> index = new HashSet<>(identifiers);
+        for (String identifier : index) {
+            if (identifier.isEmpty() || identifier.contains(ServiceHost.SEPARATOR) || identifier.contains(ServiceHost.SINGLE_LEVEL) || identifier.contains(ServiceHost.MULTI_LEVEL)) {
+                throw new IllegalArgumentException("Identifier is not a single topic level: " + identifier);
+            }
+        }
+        Set<String> unmodifiableIndex = Collections.unmodifiableSet(index);
+        Method[] methods = type.getMethods();
+        SilentCloseable[] closeables = new SilentCloseable[methods.length];
+        String[] operationTopics = new String[methods.length];
+        ConcurrencyLimiter serviceLimiter = serviceLimiters.apply(type);
+        MessageReceiver[] receivers = new MessageReceiver[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            receivers[i] = new PublishedMethod(type, methods[i], unmodifiableIndex, implementations, serviceLimiter);
+        }
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            MessageReceiver receiver = receivers[i];
+            operationTopics[i] = topicBuilder.operation(type, method, ServiceHost.SINGLE_LEVEL);
+            closeables[i] = serviceHost.register(operationTopics[i], receiver);
+        }
+        String[] topics = wildcardSubscriptions
+                ? new String[]{topicBuilder.operations(type, ServiceHost.SINGLE_LEVEL)}
+                : operationTopics;
+        subscribe(topics, batch);
         return () -> {
             for (SilentCloseable closeable : closeables) {
                 closeable.close();
             }
-            await(() -> mqttClient.unsubscribe(topics));
+            String[] untracked = untrack(topics);
+            if (untracked.length > 0) {
+                await(() -> transport.unsubscribe(untracked));
+            }
         };
     }
 
+    /**
+     * Tracks topics and subscribes to them, right away or as part of the given batch.
+     *
+     * @param topics topics to subscribe to
+     * @param batch  topics to subscribe to later, or null to subscribe right away
+     */
+    private void subscribe(String[] topics, Set<String> batch) {
+        track(topics);
+        if (batch == null) {
+            await(() -> transport.subscribe(topics));
+        } else {
+            batch.addAll(Arrays.asList(topics));
+        }
+    }
+
+    /**
+     * Publishes services as part of a batch, whose subscriptions are made at once when the batch is closed.
+     */
+    public class Registration implements SilentCloseable {
+
+        private final Set<String> batch;
+
+        private Registration() {
+            this.batch = new LinkedHashSet<>();
+        }
+
+        /**
+         * See {@link MqttDrpcClient#publish(Class, String, Object)}, receives messages once this batch is closed.
+         */
+        public <T> SilentCloseable publish(Class<T> type, String identifier, T implementation) {
+            synchronized (batch) {
+                return MqttDrpcClient.this.publish(type, identifier, implementation, batch);
+            }
+        }
+
+        /**
+         * See {@link MqttDrpcClient#publish(Class, Collection, Function)}, receives messages once this batch is closed.
+         */
+        public <T> SilentCloseable publish(Class<T> type, Collection<String> identifiers, Function<String, ? extends T> implementations) throws IllegalArgumentException {
+            synchronized (batch) {
+                return MqttDrpcClient.this.publish(type, identifiers, implementations, batch);
+            }
+        }
+
+        /**
+         * Subscribes to the topics of all services published in this batch at once, further publications start a new
+         * batch.
+         */
+        @Override
+        public void close() {
+            String[] topics;
+            synchronized (batch) {
+                topics = batch.toArray(new String[batch.size()]);
+                batch.clear();
+            }
+            if (topics.length > 0) {
+                await(() -> transport.subscribe(topics));
+            }
+        }
+
+    }
+
+    /**
+     * Begins a batch of publications, which subscribes to the topics of all of its services with a single subscription
+     * once closed rather than with one for each service. Services are registered as they are published, so no messages
+     * are missed.
+     *
+     * @return the batch, to publish services with and close once all are published
+     */
+    public Registration register() {
+        return new Registration();
+    }
+
+    /**
+     * Evicts the cached responses of a service from the caches of all clients listening for its invalidations, see
+     * {@link MqttDrpcCached#invalidated()}.
+     *
+     * @param type       type of the service
+     * @param identifier identifier of the service
+     */
+    public void invalidate(Class<?> type, String identifier) {
+        String topic = topicBuilder.invalidation(type);
+        byte[] payload = identifier.getBytes(StandardCharsets.UTF_8);
+        await(() -> transport.publish(topic, payload, qualityOfServiceLevel));
+    }
+
+    /**
+     * Creates the response caches of the type's {@link MqttDrpcCached} methods, and listens for invalidations of the type
+     * when any of them asks for it. Notes the type's {@link MqttDrpcSingleFlight} methods.
+     *
+     * @param type type of the service
+     */
+    private void prepare(Class<?> type) {
+        boolean invalidated = false;
+        // interfaces inheriting the same method from a common interface each keep their own levels and caches
+        Map<Method, ResponseCache> typeResponseCaches = responseCaches.computeIfAbsent(type, key -> new ConcurrentHashMap<>());
+        Map<Method, Integer> typeRequestQualities = requestQualities.computeIfAbsent(type, key -> new ConcurrentHashMap<>());
+        Set<Method> typeOneWayMethods = oneWayMethods.computeIfAbsent(type, key -> ConcurrentHashMap.newKeySet());
+        Set<Method> typeSingleFlightMethods = singleFlightMethods.computeIfAbsent(type, key -> ConcurrentHashMap.newKeySet());
+        for (Method method : type.getMethods()) {
+            typeRequestQualities.put(method, qualityOfService(type, method, false));
+            if (oneWay(method)) {
+                typeOneWayMethods.add(method);
+            }
+            if (method.isAnnotationPresent(MqttDrpcSingleFlight.class)) {
+                typeSingleFlightMethods.add(method);
+            }
+            MqttDrpcCached cached = method.getAnnotation(MqttDrpcCached.class);
+            if (cached != null) {
+                typeResponseCaches.computeIfAbsent(method, key -> new ResponseCache(cached.maximumSize(), cached.timeToLive(), cached.unit()));
+                invalidated |= cached.invalidated();
+            }
+        }
+        if (invalidated && invalidatedTypes.add(type)) {
+            String topic = topicBuilder.invalidation(type);
+            serviceHost.register(topic, (invalidationTopic, content) -> {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                byte[] buffer = new byte[256];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, read);
+                }
+                String identifier = new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+                for (ResponseCache responseCache : typeResponseCaches.values()) {
+                    responseCache.invalidate(identifier);
+                }
+            });
+            String[] topics = new String[]{topic};
+            track(topics);
+            await(() -> transport.subscribe(topics));
+        }
+    }
+
+    /**
+     * @param arguments invocation arguments
+     * @return the arguments serialized, for use as key of equal calls
+     */
+    private String argumentsKey(Object[] arguments) {
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            rpcPacketStreamer.writeRequest(outputStream, new RpcRequestPacket(null, null, arguments == null ? new Object[]{} : arguments));
+            return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new MqttDrpcRuntimeException("Serialization of arguments to message body failed.", e);
+        }
+    }
+
+    /**
+     * @param error error responded in place of a result
+     * @return the exception representing the error
+     */
+    private static MqttDrpcRemoteException exception(RpcError error) {
+        if (MqttDrpcOverloadedException.class.getName().equals(error.getType())) {
+            return new MqttDrpcOverloadedException(error.getMessage());
+        }
+        return new MqttDrpcRemoteException(error.getType(), error.getMessage());
+    }
+
+    /**
+     * A call of which the request is published and responses are awaited, kept to replay or fail it when the connection
+     * to the broker is lost.
+     */
+    private static final class OutstandingCall {
+
+        private final Class<?> type;
+        private final Method method;
+        private final String topic;
+        private final byte[] payload;
+        private final int qualityOfServiceLevel;
+        private final boolean replayable;
+        private final Consumer<Throwable> disconnected;
+
+        /**
+         * @param replayable   false for distributed calls, which may already have been responded to by some services
+         * @param disconnected fails the call
+         */
+        private OutstandingCall(Class<?> type, Method method, String topic, byte[] payload, int qualityOfServiceLevel, boolean replayable,
+                                Consumer<Throwable> disconnected) {
+            this.type = type;
+            this.method = method;
+            this.topic = topic;
+            this.payload = payload;
+            this.qualityOfServiceLevel = qualityOfServiceLevel;
+            this.replayable = replayable;
+            this.disconnected = disconnected;
+        }
+
+    }
+
+    /**
+     * A targeted call shared by all concurrent callers with equal arguments, which all receive its outcome.
+     */
+    private static final class CallFlight {
+
+        private final List<Consumer<Object>> consumers = new ArrayList<>();
+        private final List<Consumer<RuntimeException>> failureConsumers = new ArrayList<>();
+        private SilentCloseable registration;
+        private boolean landed;
+
+        /**
+         * @return false when the flight already landed, and can no longer be joined
+         */
+        private synchronized boolean join(Consumer<Object> consumer, Consumer<RuntimeException> failureConsumer) {
+            if (landed) {
+                return false;
+            }
+            consumers.add(consumer);
+            failureConsumers.add(failureConsumer);
+            return true;
+        }
+
+        private synchronized void leave(Consumer<Object> consumer, Consumer<RuntimeException> failureConsumer) {
+            consumers.remove(consumer);
+            failureConsumers.remove(failureConsumer);
+        }
+
+        private void start(SilentCloseable registration) {
+            boolean close;
+            synchronized (this) {
+                this.registration = registration;
+                close = landed;
+            }
+            if (close) {
+                registration.close();
+            }
+        }
+
+        /**
+         * Lands the flight, its registration is closed as soon as it is known.
+         */
+        private synchronized SilentCloseable land() {
+            landed = true;
+            return registration;
+        }
+
+        private void complete(Object result) {
+            SilentCloseable registration = land();
+            if (registration != null) {
+                registration.close();
+            }
+            List<Consumer<Object>> waiters;
+            synchronized (this) {
+                waiters = new ArrayList<>(consumers);
+            }
+            for (Consumer<Object> waiter : waiters) {
+                waiter.accept(result);
+            }
+        }
+
+        private void fail(RuntimeException failure) {
+            SilentCloseable registration = land();
+            if (registration != null) {
+                registration.close();
+            }
+            List<Consumer<RuntimeException>> waiters;
+            synchronized (this) {
+                waiters = new ArrayList<>(failureConsumers);
+            }
+            for (Consumer<RuntimeException> waiter : waiters) {
+                waiter.accept(failure);
+            }
+        }
+
+    }
+
     /**
      * Creates a {@link ServiceConnector} for the given type, through which remote services
      * can be invoked.
@@ -168,33 +1263,228 @@ public class MqttDrpcClient implements MqttCallback {
      */
     @SuppressWarnings("unchecked")
     public <T> ServiceConnector<T> connector(Class<T> type) {
+        prepare(type);
         return new ProxyServiceConnector<T>(type) {
             @Override
             public <R> SilentCloseable call(Class<?> type, Method method, String identifier, Object[] arguments, Consumer<R> consumer) {
-                String correlationId = UUID.randomUUID().toString();
-                SilentCloseable closeable = callbackHost.register(correlationId, (callbackMetadata, content) -> {
-                    if (method.getReturnType() != void.class) {
-                        List<Class<?>> bodyTypes = Arrays.asList(method.getReturnType());
-                        RpcResponsePacket packet = rpcPacketStreamer.readResponse(content, bodyTypes);
-                        Object result = packet.getBody()[0];
-                        consumer.accept((R) result);
+                return call(type, method, identifier, arguments, consumer, failure -> {
+                });
+            }
+
+            @Override
+            public <R> SilentCloseable call(Class<?> type, Method method, String identifier, Object[] arguments, Consumer<R> consumer,
+                                            Consumer<RuntimeException> failureConsumer) {
+                if (oneWayMethods.getOrDefault(type, Collections.emptySet()).contains(method)) {
+                    return post(type, method, identifier, arguments, consumer);
+                }
+                ResponseCache responseCache = identifier == null ? null : responseCaches.getOrDefault(type, Collections.emptyMap()).get(method);
+                boolean singleFlight = identifier != null && singleFlightMethods.getOrDefault(type, Collections.emptySet()).contains(method);
+                if (responseCache == null && !singleFlight) {
+                    return send(type, method, identifier, arguments, consumer, failureConsumer);
+                }
+                String argumentsKey = argumentsKey(arguments);
+                Consumer<R> resultConsumer = consumer;
+                if (responseCache != null) {
+                    Object cachedResult = responseCache.get(identifier, argumentsKey);
+                    if (cachedResult != ResponseCache.MISS) {
+                        metrics.clientCacheHits(type, method).increment();
+                        consumer.accept((R) cachedResult);
+                        return () -> {
+                        };
+                    }
+                    metrics.clientCacheMisses(type, method).increment();
+                    long generation = responseCache.getGeneration();
+                    resultConsumer = (R result) -> {
+                        responseCache.put(identifier, argumentsKey, result, generation);
+                        consumer.accept(result);
+                    };
+                }
+                if (singleFlight) {
+                    // the full signature tells overloads apart, the type tells apart interfaces inheriting the same method
+                    String flightKey = type.getName() + "\n" + method + "\n" + identifier + "\n" + argumentsKey;
+                    return coalesce(flightKey, method, resultConsumer, failureConsumer,
+                            (flightConsumer, flightFailureConsumer) -> send(type, method, identifier, arguments, flightConsumer, flightFailureConsumer));
+                }
+                return send(type, method, identifier, arguments, resultConsumer, failureConsumer);
+            }
+
+            /**
+             * Joins the flight of an equal call in progress, or starts it by sending the call when there is none.
+             */
+            private <R> SilentCloseable coalesce(String flightKey, Method method, Consumer<R> consumer, Consumer<RuntimeException> failureConsumer,
+                                                 BiFunction<Consumer<Object>, Consumer<RuntimeException>, SilentCloseable> sender) {
+                CallFlight flight;
+                Consumer<Object> waiter = (Consumer<Object>) consumer;
+                synchronized (callFlights) {
+                    flight = callFlights.get(flightKey);
+                    if (flight != null && flight.join(waiter, failureConsumer)) {
+                        metrics.clientCoalesced(type, method).increment();
+                        CallFlight joined = flight;
+                        return () -> joined.leave(waiter, failureConsumer);
+                    }
+                    flight = new CallFlight();
+                    flight.join(waiter, failureConsumer);
+                    callFlights.put(flightKey, flight);
+                }
+                CallFlight started = flight;
+                Runnable land = () -> {
+                    synchronized (callFlights) {
+                        callFlights.remove(flightKey, started);
+                    }
+                };
+                try {
+                    started.start(sender.apply(result -> {
+                        land.run();
+                        started.complete(result);
+                    }, failure -> {
+                        land.run();
+                        started.fail(failure);
+                    }));
+                } catch (RuntimeException e) {
+                    land.run();
+                    started.leave(waiter, failureConsumer);
+                    started.fail(e);
+                    throw e;
+                }
+                return () -> started.leave(waiter, failureConsumer);
+            }
+
+            /**
+             * Hands a request of a one-way method to the executor for publishing, and completes the call right away.
+             */
+            private <R> SilentCloseable post(Class<?> type, Method method, String identifier, Object[] arguments, Consumer<R> consumer) {
+                long key = pendingCalls.nextKey();
+                String correlationId = Long.toString(key, Character.MAX_RADIX);
+                byte[] payload;
+                MqttDrpcFlightRecorder.Span serialization = MqttDrpcFlightRecorder.begin(Stage.REQUEST_SERIALIZATION, correlationId, type, method);
+                try {
+                    RpcRequestPacket packet = new RpcRequestPacket();
+                    packet.setClientId(callback(key));
+                    packet.setCorrelationId(correlationId);
+                    packet.setBody(arguments == null ? new Object[]{} : arguments);
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    rpcPacketStreamer.writeRequest(outputStream, packet);
+                    payload = outputStream.toByteArray();
+                    serialization.finish();
+                } catch (IOException e) {
+                    throw new MqttDrpcRuntimeException("Serialization of arguments to message body failed.", e);
+                } finally {
+                    serialization.discard();
+                }
+                metrics.clientRequestBytes(type, method).record(payload.length);
+                String topic = identifier == null ? topicBuilder.operation(type, method) : topicBuilder.operation(type, method, identifier);
+                int requestQualityOfService = requestQualities.getOrDefault(type, Collections.emptyMap()).getOrDefault(method, qualityOfServiceLevel);
+                MqttDrpcFlightRecorder.Span publish = MqttDrpcFlightRecorder.begin(Stage.REQUEST_PUBLISH, correlationId, type, method);
+                submit(() -> {
+                    try {
+                        transport.publish(topic, payload, requestQualityOfService);
+                        publish.finish();
+                    } finally {
+                        publish.discard();
+                    }
+                });
+                consumer.accept(null);
+                return () -> {
+                };
+            }
+
+            /**
+             * Sends a request, and registers the call awaiting its responses.
+             */
+            private <R> SilentCloseable send(Class<?> type, Method method, String identifier, Object[] arguments, Consumer<R> consumer,
+                                             Consumer<RuntimeException> failureConsumer) {
+                long start = System.nanoTime();
+                LatencyHistogram clientLatency = metrics.clientLatency(type, method);
+                long key = pendingCalls.nextKey();
+                String correlationId = Long.toString(key, Character.MAX_RADIX);
+                MqttDrpcFlightRecorder.Span transit = MqttDrpcFlightRecorder.begin(Stage.BROKER_TRANSIT, correlationId, type, method);
+                MessageReceiver receiver = (callbackMetadata, content) -> {
+                    clientLatency.record(System.nanoTime() - start);
+                    transit.finish();
+                    List<Class<?>> bodyTypes = method.getReturnType() != void.class ? Arrays.asList(method.getReturnType()) : Collections.emptyList();
+                    RpcResponsePacket packet;
+                    try {
+                        packet = rpcPacketStreamer.readResponse(content, bodyTypes);
+                    } catch (IOException e) {
+                        failureConsumer.accept(new MqttDrpcRuntimeException("Deserialization of response message body failed.", e));
+                        return;
+                    }
+                    if (packet.getError() != null) {
+                        failureConsumer.accept(exception(packet.getError()));
+                    } else if (method.getReturnType() != void.class) {
+                        consumer.accept((R) packet.getBody()[0]);
                     } else {
                         consumer.accept(null);
                     }
-                });
+                };
+                AtomicBoolean closed = new AtomicBoolean();
+                Runnable expiry = () -> {
+                    if (closed.compareAndSet(false, true)) {
+                        transit.discard();
+                        outstandingCalls.remove(key);
+                        metrics.clientCallsInFlight().decrement();
+                        metrics.clientCallsExpired().increment();
+                        failureConsumer.accept(new MqttDrpcTimeoutException("No response to a call to " + type.getName() + "#"
+                                + method.getName() + " within " + millisecondsCallTimeout + " milliseconds."));
+                    }
+                };
+                metrics.clientCallsInFlight().increment();
+                SilentCloseable registration;
+                try {
+                    registration = pendingCalls.register(key, millisecondsCallTimeout, TimeUnit.MILLISECONDS, receiver, expiry);
+                } catch (IllegalStateException e) {
+                    transit.discard();
+                    metrics.clientCallsInFlight().decrement();
+                    metrics.clientCallsRejected().increment();
+                    throw new MqttDrpcRuntimeException("Too many calls awaiting responses.", e);
+                }
+                SilentCloseable closeable = () -> {
+                    if (closed.compareAndSet(false, true)) {
+                        transit.discard();
+                        outstandingCalls.remove(key);
+                        metrics.clientCallsInFlight().decrement();
+                        registration.close();
+                    }
+                };
+                MqttDrpcFlightRecorder.Span serialization = MqttDrpcFlightRecorder.begin(Stage.REQUEST_SERIALIZATION, correlationId, type, method);
                 try {
                     RpcRequestPacket packet = new RpcRequestPacket();
-                    packet.setClientId(mqttClient.getClientId());
+                    packet.setClientId(callback(key));
                     packet.setCorrelationId(correlationId);
                     packet.setBody(arguments == null ? new Object[]{} : arguments);
                     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
                     rpcPacketStreamer.writeRequest(outputStream, packet);
-                    MqttMessage message = new MqttMessage(outputStream.toByteArray());
-                    message.setQos(qualityOfServiceLevel);
+                    byte[] payload = outputStream.toByteArray();
+                    serialization.finish();
+                    metrics.clientRequestBytes(type, method).record(payload.length);
                     String topic = identifier == null ? topicBuilder.operation(type, method) : topicBuilder.operation(type, method, identifier);
-                    await(() -> mqttClient.publish(topic, message));
+                    int requestQualityOfService = requestQualities.getOrDefault(type, Collections.emptyMap()).getOrDefault(method, qualityOfServiceLevel);
+                    outstandingCalls.put(key, new OutstandingCall(type, method, topic, payload, requestQualityOfService, identifier != null, cause -> {
+                        if (closed.compareAndSet(false, true)) {
+                            transit.discard();
+                            outstandingCalls.remove(key);
+                            metrics.clientCallsInFlight().decrement();
+                            registration.close();
+                            failureConsumer.accept(new MqttDrpcDisconnectedException("Connection lost during a call to " + type.getName()
+                                    + "#" + method.getName() + ".", cause));
+                        }
+                    }));
+                    MqttDrpcFlightRecorder.Span publish = MqttDrpcFlightRecorder.begin(Stage.REQUEST_PUBLISH, correlationId, type, method);
+                    try {
+                        await(() -> transport.publish(topic, payload, requestQualityOfService));
+                        publish.finish();
+                    } finally {
+                        publish.discard();
+                    }
+                    transit.restart();
                 } catch (IOException e) {
+                    closeable.close();
                     throw new MqttDrpcRuntimeException("Serialization of arguments to message body failed.", e);
+                } catch (RuntimeException e) {
+                    closeable.close();
+                    throw e;
+                } finally {
+                    serialization.discard();
                 }
                 return closeable;
             }
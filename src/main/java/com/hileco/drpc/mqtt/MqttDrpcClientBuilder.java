@@ -1,17 +1,29 @@
 package com.hileco.drpc.mqtt;
 
+import com.hileco.drpc.generic.ConcurrencyLimiter;
 import com.hileco.drpc.generic.JSONStreamer;
+import com.hileco.drpc.generic.PendingCallTable;
 import com.hileco.drpc.generic.RpcPacketStreamer;
 import com.hileco.drpc.generic.ServiceHost;
+import com.hileco.drpc.metrics.MetricsRegistry;
+import com.hileco.drpc.metrics.SimpleMetricsRegistry;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Utility to create instances of {@link MqttDrpcClient}
@@ -25,39 +37,68 @@ public class MqttDrpcClientBuilder {
     public static final int DEFAULT_LEVEL_QUALITY_OF_SERVICE = 2;
     public static final int DEFAULT_MAX_THREADS = 10;
     public static final int DEFAULT_RETRY_LIMIT = 5;
+    public static final int DEFAULT_SECONDS_CALL_TIMEOUT = 60;
+    public static final int DEFAULT_MILLISECONDS_RECONNECT_INITIAL_DELAY = 100;
+    public static final int DEFAULT_SECONDS_RECONNECT_MAXIMUM_DELAY = 30;
+    public static final int DEFAULT_TOPIC_ALIAS_MAXIMUM = 256;
+    public static final int DEFAULT_CONNECTIONS = 1;
 
     private String clientId;
-    private MqttClientPersistence mqttClientPersistence;
+    private Supplier<MqttClientPersistence> mqttClientPersistences;
     private MqttDrpcFailureHandler mqttDrpcFailureHandler;
-    private ExecutorService executorService;
-    private ServiceHost callbackHost;
+    private ScheduledExecutorService executorService;
+    private MqttDrpcBackoff backoff;
+    private MqttDrpcRetryBudget retryBudget;
+    private MqttDrpcBackoff reconnectBackoff;
+    private boolean replayOnReconnect;
+    private Integer pendingCallCapacity;
+    private long millisecondsCallTimeout;
     private RpcPacketStreamer rpcPacketStreamer;
     private MqttDrpcTopicBuilder topicBuilder;
     private ServiceHost serviceHost;
     private int keepaliveInterval;
     private int qualityOfServiceLevel;
     private MqttConnectOptions connectOptions;
+    private MetricsRegistry metricsRegistry;
+    private ExecutorService serviceExecutorService;
+    private Function<Class<?>, ConcurrencyLimiter> serviceLimiters;
+    private Function<Method, ConcurrencyLimiter> methodLimiters;
+    private boolean wildcardSubscriptions;
+    private String sharedSubscriptionGroup;
+    private int connections;
 
-
-    public MqttDrpcClientBuilder() throws MqttException {
+    public MqttDrpcClientBuilder() {
         this.clientId = UUID.randomUUID().toString();
-        this.mqttClientPersistence = new MemoryPersistence();
-        this.executorService = Executors.newScheduledThreadPool(DEFAULT_MAX_THREADS);
+        this.mqttClientPersistences = MemoryPersistence::new;
+        this.executorService = null;
+        this.backoff = new MqttDrpcBackoff();
+        this.retryBudget = new MqttDrpcRetryBudget();
+        this.reconnectBackoff = new MqttDrpcBackoff(DEFAULT_MILLISECONDS_RECONNECT_INITIAL_DELAY,
+                TimeUnit.SECONDS.toMillis(DEFAULT_SECONDS_RECONNECT_MAXIMUM_DELAY), TimeUnit.MILLISECONDS);
+        this.replayOnReconnect = false;
         this.topicBuilder = new MqttDrpcTopicBuilder();
         this.serviceHost = new ServiceHost();
-        this.callbackHost = new ServiceHost();
+        this.pendingCallCapacity = null;
+        this.millisecondsCallTimeout = TimeUnit.SECONDS.toMillis(DEFAULT_SECONDS_CALL_TIMEOUT);
         this.rpcPacketStreamer = new RpcPacketStreamer(new JSONStreamer());
         this.keepaliveInterval = DEFAULT_SECONDS_KEEP_ALIVE_INTERVAL;
         this.qualityOfServiceLevel = DEFAULT_LEVEL_QUALITY_OF_SERVICE;
         this.connectOptions = new MqttConnectOptions();
         this.connectOptions.setCleanSession(true);
         this.connectOptions.setKeepAliveInterval(keepaliveInterval);
+        this.metricsRegistry = new SimpleMetricsRegistry();
+        this.serviceExecutorService = null;
+        this.serviceLimiters = type -> null;
+        this.methodLimiters = method -> null;
+        this.wildcardSubscriptions = false;
+        this.sharedSubscriptionGroup = null;
+        this.connections = DEFAULT_CONNECTIONS;
 
         this.mqttDrpcFailureHandler = new MqttDrpcFailureHandler() {
             @Override
             public boolean shouldRetry(Exception cause, MqttDrpcTask task) {
-                if (cause instanceof MqttException) {
-                    if (((MqttException) cause).getReasonCode() == 32202) {
+                if (cause instanceof MqttDrpcTransportException) {
+                    if (((MqttDrpcTransportException) cause).getReasonCode() == MqttDrpcTransportException.REASON_CODE_MAX_INFLIGHT) {
                         return true;
                     }
                 }
@@ -66,7 +107,7 @@ public class MqttDrpcClientBuilder {
 
             @Override
             public void handleDisconnect(Throwable throwable) {
-                // Does not handle disconnects !
+                // the client reconnects by itself
             }
         };
     }
@@ -77,7 +118,34 @@ public class MqttDrpcClientBuilder {
     }
 
     public MqttDrpcClientBuilder withMqttClientPersistence(MqttClientPersistence mqttClientPersistence) {
-        this.mqttClientPersistence = mqttClientPersistence;
+        this.mqttClientPersistences = () -> mqttClientPersistence;
+        return this;
+    }
+
+    /**
+     * Supplies every connection of clients built with {@link #build(String)} with its own persistence, as needed when
+     * connecting with multiple connections, see {@link #withConnections(int)}.
+     *
+     * @param mqttClientPersistences supplier of a new persistence for every connection
+     * @return this
+     */
+    public MqttDrpcClientBuilder withMqttClientPersistence(Supplier<MqttClientPersistence> mqttClientPersistences) {
+        this.mqttClientPersistences = mqttClientPersistences;
+        return this;
+    }
+
+    /**
+     * Connects clients built with a broker URL or in-memory broker over multiple connections, spreading topics across
+     * them, see {@link MqttDrpcStripedTransport}. The connections use the client identifier suffixed by their index.
+     *
+     * @param connections amount of connections, 1 to connect over a single connection with the client identifier
+     * @return this
+     */
+    public MqttDrpcClientBuilder withConnections(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("At least one connection is required, got " + connections);
+        }
+        this.connections = connections;
         return this;
     }
 
@@ -86,11 +154,53 @@ public class MqttDrpcClientBuilder {
         return this;
     }
 
-    public MqttDrpcClientBuilder withExecutorService(ExecutorService executorService) {
+    /**
+     * @param executorService executor service for tasks, retries and reconnects, by default a pool of
+     *                        {@link #DEFAULT_MAX_THREADS} threads shared by the clients of this builder
+     */
+    public MqttDrpcClientBuilder withExecutorService(ScheduledExecutorService executorService) {
         this.executorService = executorService;
         return this;
     }
 
+    /**
+     * @param backoff decides the delays before retrying failed tasks, by default exponential from 10 milliseconds up to
+     *                a second with full jitter
+     */
+    public MqttDrpcClientBuilder withBackoff(MqttDrpcBackoff backoff) {
+        this.backoff = backoff;
+        return this;
+    }
+
+    /**
+     * @param retryBudget limits the retries of all failed tasks of the client, by default to a fifth of its tasks with a
+     *                    reserve of 10 retries per second
+     */
+    public MqttDrpcClientBuilder withRetryBudget(MqttDrpcRetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+        return this;
+    }
+
+    /**
+     * @param reconnectBackoff decides the delays between attempts to reconnect after losing the connection, by default
+     *                         exponential from 100 milliseconds up to 30 seconds with full jitter, or null to not
+     *                         reconnect
+     */
+    public MqttDrpcClientBuilder withReconnectBackoff(MqttDrpcBackoff reconnectBackoff) {
+        this.reconnectBackoff = reconnectBackoff;
+        return this;
+    }
+
+    /**
+     * @param replayOnReconnect whether to publish the requests of targeted calls awaiting responses again once
+     *                          reconnected, by default they fail with a {@link MqttDrpcDisconnectedException} as soon as
+     *                          the connection is lost. Only suitable when services may receive a request twice.
+     */
+    public MqttDrpcClientBuilder withReplayOnReconnect(boolean replayOnReconnect) {
+        this.replayOnReconnect = replayOnReconnect;
+        return this;
+    }
+
     public MqttDrpcClientBuilder withTopicBuilder(MqttDrpcTopicBuilder topicBuilder) {
         this.topicBuilder = topicBuilder;
         return this;
@@ -116,8 +226,22 @@ public class MqttDrpcClientBuilder {
         return this;
     }
 
-    public MqttDrpcClientBuilder withCallbackHost(ServiceHost callbackHost) {
-        this.callbackHost = callbackHost;
+    /**
+     * @param pendingCallCapacity maximum amount of calls awaiting responses, beyond which calls are refused, by default
+     *                            {@link PendingCallTable#DEFAULT_CAPACITY}
+     */
+    public MqttDrpcClientBuilder withPendingCallCapacity(int pendingCallCapacity) {
+        this.pendingCallCapacity = pendingCallCapacity;
+        return this;
+    }
+
+    /**
+     * @param callTimeout time after which calls stop awaiting responses, targeted calls then throw a
+     *                    {@link MqttDrpcTimeoutException}
+     * @param unit        unit of the timeout
+     */
+    public MqttDrpcClientBuilder withCallTimeout(long callTimeout, TimeUnit unit) {
+        this.millisecondsCallTimeout = unit.toMillis(callTimeout);
         return this;
     }
 
@@ -126,11 +250,230 @@ public class MqttDrpcClientBuilder {
         return this;
     }
 
-    public MqttDrpcClient build(String broker) throws MqttException {
-        MqttClient mqttClient = new MqttClient(broker, clientId, mqttClientPersistence);
-        mqttClient.setTimeToWait(DEFAULT_MILLISECONDS_TIME_TO_WAIT_LIMIT);
-        return new MqttDrpcClient(mqttDrpcFailureHandler, executorService, mqttClient, topicBuilder,
-                serviceHost, callbackHost, rpcPacketStreamer, connectOptions, qualityOfServiceLevel);
+    /**
+     * @param metricsRegistry registry to record the client's metrics in, by default a {@link SimpleMetricsRegistry} of the
+     *                        client's own
+     */
+    public MqttDrpcClientBuilder withMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        return this;
+    }
+
+    /**
+     * @param serviceExecutorService executor to invoke published services on, by default services are invoked one at
+     *                               a time on the thread delivering their requests
+     */
+    public MqttDrpcClientBuilder withServiceExecutorService(ExecutorService serviceExecutorService) {
+        this.serviceExecutorService = serviceExecutorService;
+        return this;
+    }
+
+    /**
+     * Limits the concurrent invocations of each published service as a whole, requests beyond the limit are responded
+     * to with an {@link MqttDrpcOverloadedException}. Only meaningful with a service executor.
+     *
+     * @param serviceLimiters creates the limiter of each published service, may return null for no limit
+     */
+    public MqttDrpcClientBuilder withServiceLimiter(Function<Class<?>, ConcurrencyLimiter> serviceLimiters) {
+        this.serviceLimiters = serviceLimiters;
+        return this;
+    }
+
+    /**
+     * Limits the concurrent invocations of each method of published services, requests beyond the limit are responded
+     * to with an {@link MqttDrpcOverloadedException}. Only meaningful with a service executor.
+     *
+     * @param methodLimiters creates the limiter of each method, may return null for no limit
+     */
+    public MqttDrpcClientBuilder withMethodLimiter(Function<Method, ConcurrencyLimiter> methodLimiters) {
+        this.methodLimiters = methodLimiters;
+        return this;
+    }
+
+    /**
+     * @param wildcardSubscriptions whether to subscribe to the operations of published services with two wildcard topic
+     *                              filters per service and identifier, by default two topics per method are subscribed to
+     */
+    public MqttDrpcClientBuilder withWildcardSubscriptions(boolean wildcardSubscriptions) {
+        this.wildcardSubscriptions = wildcardSubscriptions;
+        return this;
+    }
+
+    /**
+     * Builds a client which connects to the given broker with Eclipse Paho.
+     *
+     * @param broker MQTT broker URL
+     * @return the configured client
+     * @throws MqttDrpcTransportException when the broker URL or client configuration is invalid
+     */
+    public MqttDrpcClient build(String broker) throws MqttDrpcTransportException {
+        return build(transport(broker), connections);
+    }
+
+    /**
+     * Builds a connection which connects to the given broker with Eclipse Paho, for multiple clients to share, see
+     * {@link #build(MqttDrpcSharedConnection)}. Only the client identifier, persistence, connect options and amount of
+     * connections configured on this builder apply to the connection.
+     *
+     * @param broker MQTT broker URL
+     * @return the configured connection
+     * @throws MqttDrpcTransportException when the broker URL or connection configuration is invalid
+     */
+    public MqttDrpcSharedConnection buildConnection(String broker) throws MqttDrpcTransportException {
+        return new MqttDrpcSharedConnection(transport(broker));
+    }
+
+    /**
+     * Builds a client which connects over the given shared connection, with the client identifier configured on this
+     * builder. Ignores any persistence, connect options and amount of connections configured on this builder. Unless
+     * configured on this builder, the client uses the connection's executor service and table of pending calls.
+     *
+     * @param connection connection shared by multiple clients
+     * @return the configured client
+     */
+    public MqttDrpcClient build(MqttDrpcSharedConnection connection) {
+        MqttDrpcTransport transport = connection.transport(clientId);
+        return build(transport, 1, executorService != null ? executorService : connection.getExecutorService(),
+                pendingCallCapacity != null ? pendingCalls() : connection.getPendingCalls());
+    }
+
+    /**
+     * @param broker MQTT broker URL
+     * @return a transport connecting to the given broker with Eclipse Paho
+     * @throws MqttDrpcTransportException when the broker URL or client configuration is invalid
+     */
+    private MqttDrpcTransport transport(String broker) throws MqttDrpcTransportException {
+        Set<MqttClientPersistence> persistences = Collections.newSetFromMap(new IdentityHashMap<>());
+        return stripe(connectionClientId -> {
+            MqttClientPersistence mqttClientPersistence = mqttClientPersistences.get();
+            if (!persistences.add(mqttClientPersistence)) {
+                throw new IllegalStateException("Connections cannot share a persistence, supply one per connection.");
+            }
+            MqttClient mqttClient;
+            try {
+                mqttClient = new MqttClient(broker, connectionClientId, mqttClientPersistence);
+            } catch (MqttException e) {
+                throw new MqttDrpcTransportException(e.getReasonCode(), e);
+            }
+            mqttClient.setTimeToWait(DEFAULT_MILLISECONDS_TIME_TO_WAIT_LIMIT);
+            return new MqttDrpcPahoTransport(mqttClient, connectOptions);
+        });
+    }
+
+    /**
+     * Opens a single connection of a client.
+     */
+    private static interface Connection {
+
+        public MqttDrpcTransport open(String clientId) throws MqttDrpcTransportException;
+
+    }
+
+    /**
+     * @param connection opener of connections by client identifier
+     * @return a single connection with the client identifier, or a striped transport over the amount of connections
+     * @throws MqttDrpcTransportException when opening any connection fails
+     */
+    private MqttDrpcTransport stripe(Connection connection) throws MqttDrpcTransportException {
+        if (connections == 1) {
+            return connection.open(clientId);
+        }
+        MqttDrpcTransport[] stripes = new MqttDrpcTransport[connections];
+        for (int i = 0; i < connections; i++) {
+            stripes[i] = connection.open(clientId + "-" + i);
+        }
+        // each callback topic of the client belongs to the connection of its index, so responses arrive over all of them
+        String callbacks = topicBuilder.callback(clientId) + ServiceHost.SEPARATOR;
+        return new MqttDrpcStripedTransport(clientId, topic -> {
+            if (!topic.startsWith(callbacks)) {
+                return -1;
+            }
+            try {
+                return Integer.parseInt(topic.substring(callbacks.length()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }, stripes);
+    }
+
+    /**
+     * Shares the subscriptions to service operations of clients built with {@link #buildMqtt5(String)} in the given
+     * group, so the broker balances calls across the group's clients rather than delivering them to all of them.
+     *
+     * @param sharedSubscriptionGroup name of the group, or null to not share subscriptions
+     * @return this
+     */
+    public MqttDrpcClientBuilder withSharedSubscriptionGroup(String sharedSubscriptionGroup) {
+        this.sharedSubscriptionGroup = sharedSubscriptionGroup;
+        return this;
+    }
+
+    /**
+     * Builds a client which connects to the given MQTT 5 broker with Eclipse Paho, publishing messages which expire
+     * after the call timeout and accepting topic aliases. Ignores any persistence and connect options configured on this
+     * builder, connects with a clean start and the configured keep alive interval.
+     *
+     * @param broker MQTT 5 broker URL
+     * @return the configured client
+     * @throws MqttDrpcTransportException when the broker URL or client configuration is invalid
+     */
+    public MqttDrpcClient buildMqtt5(String broker) throws MqttDrpcTransportException {
+        long secondsMessageExpiryInterval = TimeUnit.MILLISECONDS.toSeconds(millisecondsCallTimeout + TimeUnit.SECONDS.toMillis(1) - 1);
+        return build(stripe(connectionClientId -> MqttDrpcPaho5Transport.open(broker, connectionClientId, keepaliveInterval, DEFAULT_TOPIC_ALIAS_MAXIMUM,
+                DEFAULT_MILLISECONDS_TIME_TO_WAIT_LIMIT, secondsMessageExpiryInterval, sharedSubscriptionGroup, topicBuilder::isOperation)), connections);
+    }
+
+    /**
+     * Builds a client which connects as a simulated client to the given in-memory broker.
+     *
+     * @param broker in-memory broker
+     * @return the configured client
+     */
+    public MqttDrpcClient build(MqttDrpcMemoryBroker broker) {
+        try {
+            return build(stripe(broker::transport), connections);
+        } catch (MqttDrpcTransportException e) {
+            throw new IllegalStateException("In-memory connections cannot fail to open.", e);
+        }
+    }
+
+    /**
+     * Builds a client which relays its messages over the given transport, ignores any client identifier, persistence,
+     * connect options and amount of connections configured on this builder.
+     *
+     * @param transport transport to relay messages over
+     * @return the configured client
+     */
+    public MqttDrpcClient build(MqttDrpcTransport transport) {
+        return build(transport, 1);
+    }
+
+    /**
+     * @param transport transport to relay messages over
+     * @param callbacks amount of callback topics to spread responses across, one per connection of the transport
+     * @return the configured client
+     */
+    private MqttDrpcClient build(MqttDrpcTransport transport, int callbacks) {
+        if (executorService == null) {
+            // created once, shared by all clients of this builder
+            executorService = Executors.newScheduledThreadPool(DEFAULT_MAX_THREADS);
+        }
+        return build(transport, callbacks, executorService, pendingCalls());
+    }
+
+    /**
+     * @return a new table of pending calls, with the capacity configured on this builder
+     */
+    private PendingCallTable pendingCalls() {
+        return new PendingCallTable(pendingCallCapacity != null ? pendingCallCapacity : PendingCallTable.DEFAULT_CAPACITY,
+                PendingCallTable.DEFAULT_MILLISECONDS_TICK_DURATION, TimeUnit.MILLISECONDS, PendingCallTable.DEFAULT_TICKS_PER_WHEEL);
+    }
+
+    private MqttDrpcClient build(MqttDrpcTransport transport, int callbacks, ScheduledExecutorService executorService, PendingCallTable pendingCalls) {
+        return new MqttDrpcClient(mqttDrpcFailureHandler, executorService, backoff, retryBudget, reconnectBackoff, replayOnReconnect, callbacks, transport, topicBuilder,
+                serviceHost, pendingCalls, millisecondsCallTimeout, rpcPacketStreamer, qualityOfServiceLevel,
+                new MqttDrpcMetrics(metricsRegistry, transport.getClientId()), serviceExecutorService, serviceLimiters, methodLimiters,
+                wildcardSubscriptions);
     }
 
 }
@@ -0,0 +1,14 @@
+package com.hileco.drpc.mqtt;
+
+/**
+ * An exception for calls which stopped awaiting responses because the connection to the broker was lost.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcDisconnectedException extends MqttDrpcRuntimeException {
+
+    public MqttDrpcDisconnectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.hileco.drpc.mqtt;
+
+import java.lang.reflect.Method;
+
+/**
+ * Emits Java Flight Recorder events for each stage of a remote procedure call, each carrying the call's correlation
+ * identifier, interface and method.
+ * <p>
+ * Events are only created while a recording has the stage's event enabled, otherwise stages cost a single check. On
+ * JVMs without Flight Recorder support no events are emitted at all.
+ *
+ * @author Philipp Gayret
+ */
+public final class MqttDrpcFlightRecorder {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    /**
+     * The stages of a call, in the order they occur.
+     */
+    public static enum Stage {
+
+        /**
+         * Client side, serializing the arguments into a request.
+         */
+        REQUEST_SERIALIZATION,
+        /**
+         * Client side, waiting for the request to be handed to the broker.
+         */
+        REQUEST_PUBLISH,
+        /**
+         * Client side, from the request being handed to the broker to its response arriving, including the service's
+         * time and both passes through the broker.
+         */
+        BROKER_TRANSIT,
+        /**
+         * Client side, routing an arrived response to the call it belongs to, including the call's handling of it.
+         */
+        CALLBACK_ROUTING,
+        /**
+         * Service side, deserializing the arguments of a request.
+         */
+        SERVICE_DESERIALIZATION,
+        /**
+         * Service side, invoking the implementation.
+         */
+        SERVICE_INVOCATION,
+        /**
+         * Service side, handing the response to the broker.
+         */
+        RESPONSE_PUBLISH
+
+    }
+
+    /**
+     * A stage in progress, must be finished or discarded, after which further calls have no effect.
+     */
+    public static interface Span {
+
+        /**
+         * Sets the correlation identifier, for stages which only learn it while in progress.
+         *
+         * @param correlationId correlation identifier of the call
+         */
+        public void setCorrelationId(String correlationId);
+
+        /**
+         * Sets the interface and method, for stages which only learn the call while in progress.
+         *
+         * @param type   interface the call is made on
+         * @param method method invoked by the call
+         */
+        public void setCall(Class<?> type, Method method);
+
+        /**
+         * Restarts the stage's duration, unless it was already finished.
+         */
+        public void restart();
+
+        /**
+         * Ends the stage, and emits its event.
+         */
+        public void finish();
+
+        /**
+         * Ends the stage without emitting its event, for stages which turn out not to belong to a call.
+         */
+        public void discard();
+
+    }
+
+    private static final Span NOOP = new Span() {
+        @Override
+        public void setCorrelationId(String correlationId) {
+        }
+
+        @Override
+        public void setCall(Class<?> type, Method method) {
+        }
+
+        @Override
+        public void restart() {
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void discard() {
+        }
+    };
+
+    private MqttDrpcFlightRecorder() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Begins a stage of a call.
+     *
+     * @param stage         stage to begin
+     * @param correlationId correlation identifier of the call, or null when not yet known
+     * @param type          interface the call is made on
+     * @param method        method invoked by the call
+     * @return the stage in progress
+     */
+    public static Span begin(Stage stage, String correlationId, Class<?> type, Method method) {
+        if (!AVAILABLE) {
+            return NOOP;
+        }
+        Span span = MqttDrpcFlightRecorderEvents.begin(stage, correlationId, type, method);
+        return span == null ? NOOP : span;
+    }
+
+}
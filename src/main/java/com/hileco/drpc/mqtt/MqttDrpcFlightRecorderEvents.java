@@ -0,0 +1,156 @@
+package com.hileco.drpc.mqtt;
+
+import jdk.jfr.*;
+
+import java.lang.reflect.Method;
+
+/**
+ * The Java Flight Recorder events of {@link MqttDrpcFlightRecorder}, only loaded on JVMs with Flight Recorder support.
+ *
+ * @author Philipp Gayret
+ */
+final class MqttDrpcFlightRecorderEvents {
+
+    @Category({"MQTT DRPC"})
+    @StackTrace(false)
+    private static abstract class StageEvent extends Event implements MqttDrpcFlightRecorder.Span {
+
+        @Label("Correlation Id")
+        String correlationId;
+
+        @Label("Interface")
+        String interfaceName;
+
+        @Label("Method")
+        String methodName;
+
+        private transient volatile boolean finished;
+
+        @Override
+        public void setCorrelationId(String correlationId) {
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public void setCall(Class<?> type, Method method) {
+            this.interfaceName = type.getName();
+            this.methodName = method.getName();
+        }
+
+        @Override
+        public void restart() {
+            if (!finished) {
+                begin();
+            }
+        }
+
+        @Override
+        public void finish() {
+            if (!finished) {
+                finished = true;
+                end();
+                commit();
+            }
+        }
+
+        @Override
+        public void discard() {
+            finished = true;
+        }
+
+    }
+
+    @Name("com.hileco.drpc.RequestSerialization")
+    @Label("Request Serialization")
+    @Description("Serializing the arguments of a call into a request")
+    private static class RequestSerialization extends StageEvent {
+    }
+
+    @Name("com.hileco.drpc.RequestPublish")
+    @Label("Request Publish")
+    @Description("Waiting for a request to be handed to the broker")
+    private static class RequestPublish extends StageEvent {
+    }
+
+    @Name("com.hileco.drpc.BrokerTransit")
+    @Label("Broker Transit")
+    @Description("From a request being handed to the broker to its response arriving, including the remote service's time")
+    private static class BrokerTransit extends StageEvent {
+    }
+
+    @Name("com.hileco.drpc.CallbackRouting")
+    @Label("Callback Routing")
+    @Description("Routing an arrived response to the call it belongs to, including the call's handling of it")
+    private static class CallbackRouting extends StageEvent {
+    }
+
+    @Name("com.hileco.drpc.ServiceDeserialization")
+    @Label("Service Deserialization")
+    @Description("Deserializing the arguments of a request on the service side")
+    private static class ServiceDeserialization extends StageEvent {
+    }
+
+    @Name("com.hileco.drpc.ServiceInvocation")
+    @Label("Service Invocation")
+    @Description("Invoking the service implementation")
+    private static class ServiceInvocation extends StageEvent {
+    }
+
+    @Name("com.hileco.drpc.ResponsePublish")
+    @Label("Response Publish")
+    @Description("Handing a response to the broker on the service side")
+    private static class ResponsePublish extends StageEvent {
+    }
+
+    private static final EventType[] EVENT_TYPES = new EventType[]{
+            EventType.getEventType(RequestSerialization.class),
+            EventType.getEventType(RequestPublish.class),
+            EventType.getEventType(BrokerTransit.class),
+            EventType.getEventType(CallbackRouting.class),
+            EventType.getEventType(ServiceDeserialization.class),
+            EventType.getEventType(ServiceInvocation.class),
+            EventType.getEventType(ResponsePublish.class)
+    };
+
+    private MqttDrpcFlightRecorderEvents() {
+    }
+
+    /**
+     * @return the begun stage, or null when its event is not enabled
+     */
+    static MqttDrpcFlightRecorder.Span begin(MqttDrpcFlightRecorder.Stage stage, String correlationId, Class<?> type, Method method) {
+        if (!EVENT_TYPES[stage.ordinal()].isEnabled()) {
+            return null;
+        }
+        StageEvent event;
+        switch (stage) {
+            case REQUEST_SERIALIZATION:
+                event = new RequestSerialization();
+                break;
+            case REQUEST_PUBLISH:
+                event = new RequestPublish();
+                break;
+            case BROKER_TRANSIT:
+                event = new BrokerTransit();
+                break;
+            case CALLBACK_ROUTING:
+                event = new CallbackRouting();
+                break;
+            case SERVICE_DESERIALIZATION:
+                event = new ServiceDeserialization();
+                break;
+            case SERVICE_INVOCATION:
+                event = new ServiceInvocation();
+                break;
+            default:
+                event = new ResponsePublish();
+                break;
+        }
+        event.correlationId = correlationId;
+        event.interfaceName = type == null ? null : type.getName();
+        event.methodName = method == null ? null : method.getName();
+        event.begin();
+        return event;
+    }
+
+}
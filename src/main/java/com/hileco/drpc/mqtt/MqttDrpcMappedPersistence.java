@@ -0,0 +1,443 @@
+package com.hileco.drpc.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An {@link MqttClientPersistence} which appends messages to a memory-mapped log, so that messages of quality of service
+ * levels 1 and 2 survive a crash of the process.
+ * <p>
+ * Every put and remove appends a checksummed record to the log and updates an in-memory index of the live records, no
+ * file is created or deleted per message. Opening the log rebuilds the index by scanning it, up to the first incomplete
+ * record. When the log is full its live records are copied into a new log, sized to twice what is live, which replaces
+ * the old log atomically.
+ * <p>
+ * The new log is renamed over the old log while the old log is still mapped, Java offers no way to unmap it before its
+ * buffer is garbage collected. POSIX file systems allow this, the old mapping keeps the replaced file alive until then.
+ * Windows refuses to replace a mapped file, there compaction fails and the put which required it throws.
+ * <p>
+ * Writes reach the operating system as soon as they are made, and so survive the process. To also survive a crash of
+ * the operating system every write must be forced to disk, at a considerable cost per message.
+ * <p>
+ * Paho only keeps messages for redelivery across connections when connecting without a clean session, see
+ * {@link org.eclipse.paho.client.mqttv3.MqttConnectOptions#setCleanSession(boolean)}.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcMappedPersistence implements MqttClientPersistence {
+
+    public static final int DEFAULT_INITIAL_SIZE = 1 << 22;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    // length and checksum around each record
+    private static final int FRAME = 8;
+    // marks the end of the log
+    private static final int TERMINATOR = 4;
+
+    /**
+     * Where a live record is in the log.
+     */
+    private static final class Location {
+
+        private final int start;
+        private final int keyLength;
+        private final int headerLength;
+        private final int payloadLength;
+
+        private Location(int start, int keyLength, int headerLength, int payloadLength) {
+            this.start = start;
+            this.keyLength = keyLength;
+            this.headerLength = headerLength;
+            this.payloadLength = payloadLength;
+        }
+
+        private int size() {
+            return FRAME + 1 + 2 + keyLength + 4 + headerLength + 4 + payloadLength;
+        }
+
+        private int headerOffset() {
+            return start + 4 + 1 + 2 + keyLength + 4;
+        }
+
+        private int payloadOffset() {
+            return headerOffset() + headerLength + 4;
+        }
+
+    }
+
+    /**
+     * A message read back from the log.
+     */
+    private static final class Persisted implements MqttPersistable {
+
+        private final byte[] header;
+        private final byte[] payload;
+
+        private Persisted(byte[] header, byte[] payload) {
+            this.header = header;
+            this.payload = payload;
+        }
+
+        @Override
+        public byte[] getHeaderBytes() {
+            return header;
+        }
+
+        @Override
+        public int getHeaderLength() {
+            return header.length;
+        }
+
+        @Override
+        public int getHeaderOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getPayloadBytes() {
+            return payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return payload.length;
+        }
+
+        @Override
+        public int getPayloadOffset() {
+            return 0;
+        }
+
+    }
+
+    private final File directory;
+    private final int initialSize;
+    private final boolean synchronous;
+    private final CRC32 checksum;
+    private File file;
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+    private MappedByteBuffer buffer;
+    private Map<String, Location> index;
+    private int position;
+    private int liveBytes;
+
+    /**
+     * @param directory directory to keep the logs of clients in
+     */
+    public MqttDrpcMappedPersistence(File directory) {
+        this(directory, DEFAULT_INITIAL_SIZE, false);
+    }
+
+    /**
+     * @param directory   directory to keep the logs of clients in
+     * @param initialSize initial and minimum size of a log in bytes
+     * @param synchronous whether to force every write to disk before returning
+     */
+    public MqttDrpcMappedPersistence(File directory, int initialSize, boolean synchronous) {
+        if (initialSize < 64) {
+            throw new IllegalArgumentException("Initial size must be at least 64 bytes");
+        }
+        this.directory = directory;
+        this.initialSize = initialSize;
+        this.synchronous = synchronous;
+        this.checksum = new CRC32();
+    }
+
+    private void assertOpen() throws MqttPersistenceException {
+        if (buffer == null) {
+            throw new MqttPersistenceException();
+        }
+    }
+
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        if (buffer != null) {
+            return;
+        }
+        String name = (clientId + "-" + serverURI).replaceAll("[^a-zA-Z0-9._-]", "");
+        try {
+            Files.createDirectories(directory.toPath());
+            lockFile = new RandomAccessFile(new File(directory, name + ".lock"), "rw");
+            try {
+                lock = lockFile.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                lockFile.close();
+                lockFile = null;
+                throw new MqttPersistenceException(MqttPersistenceException.REASON_CODE_PERSISTENCE_IN_USE);
+            }
+            file = new File(directory, name + ".log");
+            boolean opened = false;
+            try {
+                map(Math.max(initialSize, (int) Math.min(Integer.MAX_VALUE, file.length())));
+                scan();
+                opened = true;
+            } finally {
+                if (!opened) {
+                    buffer = null;
+                    index = null;
+                    unlock();
+                }
+            }
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+    }
+
+    private void unlock() throws IOException {
+        try {
+            lock.release();
+            lockFile.close();
+        } finally {
+            lock = null;
+            lockFile = null;
+        }
+    }
+
+    private void map(int size) throws IOException {
+        try (RandomAccessFile log = new RandomAccessFile(file, "rw")) {
+            if (log.length() < size) {
+                log.setLength(size);
+            }
+            buffer = log.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private int checksum(ByteBuffer source, int start, int length) {
+        ByteBuffer region = source.duplicate();
+        region.limit(start + length);
+        region.position(start);
+        checksum.reset();
+        checksum.update(region);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Rebuilds the index from the log, up to its first incomplete or corrupt record.
+     */
+    private void scan() {
+        index = new HashMap<>();
+        position = 0;
+        liveBytes = 0;
+        int capacity = buffer.capacity();
+        while (position + FRAME <= capacity) {
+            int length = buffer.getInt(position);
+            if (length < 3 || length > capacity - position - FRAME) {
+                break;
+            }
+            if (checksum(buffer, position + 4, length) != buffer.getInt(position + 4 + length)) {
+                break;
+            }
+            byte type = buffer.get(position + 4);
+            int keyLength = buffer.getShort(position + 5) & 0xFFFF;
+            byte[] key = new byte[keyLength];
+            ByteBuffer keyRegion = buffer.duplicate();
+            keyRegion.position(position + 7);
+            keyRegion.get(key);
+            Location previous;
+            if (type == PUT) {
+                int headerLength = buffer.getInt(position + 7 + keyLength);
+                int payloadLength = buffer.getInt(position + 7 + keyLength + 4 + headerLength);
+                Location location = new Location(position, keyLength, headerLength, payloadLength);
+                previous = index.put(new String(key, StandardCharsets.UTF_8), location);
+                liveBytes += location.size();
+            } else {
+                previous = index.remove(new String(key, StandardCharsets.UTF_8));
+            }
+            if (previous != null) {
+                liveBytes -= previous.size();
+            }
+            position += FRAME + length;
+        }
+        // anything beyond the last complete record is discarded
+        if (position + TERMINATOR <= capacity) {
+            buffer.putInt(position, 0);
+        }
+    }
+
+    /**
+     * Appends a record, and returns its location.
+     */
+    private Location append(byte type, String key, byte[] header, int headerOffset, int headerLength,
+                            byte[] payload, int payloadOffset, int payloadLength) throws MqttPersistenceException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + 2 + keyBytes.length + (type == PUT ? 4 + headerLength + 4 + payloadLength : 0);
+        reserve(FRAME + length + TERMINATOR);
+        int start = position;
+        ByteBuffer record = buffer.duplicate();
+        record.position(start + 4);
+        record.put(type);
+        record.putShort((short) keyBytes.length);
+        record.put(keyBytes);
+        if (type == PUT) {
+            record.putInt(headerLength);
+            record.put(header, headerOffset, headerLength);
+            record.putInt(payloadLength);
+            if (payloadLength > 0) {
+                record.put(payload, payloadOffset, payloadLength);
+            }
+        }
+        record.putInt(checksum(buffer, start + 4, length));
+        record.putInt(0);
+        // the length is written last, making the record part of the log only once it is complete
+        buffer.putInt(start, length);
+        if (synchronous) {
+            buffer.force();
+        }
+        position = start + FRAME + length;
+        return new Location(start, keyBytes.length, headerLength, payloadLength);
+    }
+
+    /**
+     * Ensures the log has room for the given amount of bytes, by copying its live records into a new log when it does
+     * not.
+     */
+    private void reserve(int required) throws MqttPersistenceException {
+        if (position + required <= buffer.capacity()) {
+            return;
+        }
+        long wanted = 2L * (liveBytes + required);
+        if (wanted > (1 << 30)) {
+            throw new MqttPersistenceException(new IOException("Persisted messages exceed the maximum log size"));
+        }
+        int size = Math.max(initialSize, Integer.highestOneBit((int) wanted - 1) << 1);
+        File compacted = new File(file.getPath() + ".compact");
+        try {
+            MappedByteBuffer target;
+            try (RandomAccessFile log = new RandomAccessFile(compacted, "rw")) {
+                log.setLength(0);
+                log.setLength(size);
+                target = log.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            Map<String, Location> compactedIndex = new HashMap<>();
+            int targetPosition = 0;
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                Location location = entry.getValue();
+                ByteBuffer source = buffer.duplicate();
+                source.limit(location.start + location.size());
+                source.position(location.start);
+                target.position(targetPosition);
+                target.put(source);
+                compactedIndex.put(entry.getKey(), new Location(targetPosition, location.keyLength, location.headerLength, location.payloadLength));
+                targetPosition += location.size();
+            }
+            target.putInt(targetPosition, 0);
+            target.force();
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            buffer = target;
+            index = compactedIndex;
+            position = targetPosition;
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(compacted.toPath());
+            } catch (IOException ignored) {
+                // left behind, replaced by the next compaction
+            }
+            throw new MqttPersistenceException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws MqttPersistenceException {
+        if (buffer == null) {
+            return;
+        }
+        buffer.force();
+        buffer = null;
+        index = null;
+        try {
+            unlock();
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        assertOpen();
+        byte[] payload = persistable.getPayloadBytes();
+        int payloadLength = payload == null ? 0 : persistable.getPayloadLength();
+        Location location = append(PUT, key, persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength(),
+                payload, payload == null ? 0 : persistable.getPayloadOffset(), payloadLength);
+        Location previous = index.put(key, location);
+        liveBytes += location.size();
+        if (previous != null) {
+            liveBytes -= previous.size();
+        }
+    }
+
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        assertOpen();
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        byte[] header = new byte[location.headerLength];
+        byte[] payload = new byte[location.payloadLength];
+        ByteBuffer source = buffer.duplicate();
+        source.position(location.headerOffset());
+        source.get(header);
+        source.position(location.payloadOffset());
+        source.get(payload);
+        return new Persisted(header, payload);
+    }
+
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        assertOpen();
+        if (!index.containsKey(key)) {
+            return;
+        }
+        append(REMOVE, key, null, 0, 0, null, 0, 0);
+        liveBytes -= index.remove(key).size();
+    }
+
+    @Override
+    public synchronized Enumeration keys() throws MqttPersistenceException {
+        assertOpen();
+        return Collections.enumeration(new ArrayList<>(index.keySet()));
+    }
+
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        assertOpen();
+        buffer.putInt(0, 0);
+        if (synchronous) {
+            buffer.force();
+        }
+        index.clear();
+        position = 0;
+        liveBytes = 0;
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        assertOpen();
+        return index.containsKey(key);
+    }
+
+}
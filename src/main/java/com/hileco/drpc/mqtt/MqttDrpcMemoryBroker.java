@@ -0,0 +1,166 @@
+package com.hileco.drpc.mqtt;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * An in-memory stand-in for an MQTT broker, routes messages between any amount of {@link MqttDrpcMemoryTransport}s
+ * within the same JVM.
+ * <p>
+ * Supports exact topics as well as the MQTT {@code +} and {@code #} wildcards. Each message is delivered at most once to
+ * every client with at least one matching subscription, in the order it was published in. Does not support retained
+ * messages or persistent sessions.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcMemoryBroker {
+
+    private static final String SEPARATOR = "/";
+    private static final String SINGLE_LEVEL = "+";
+    private static final String MULTI_LEVEL = "#";
+
+    private final Map<String, MqttDrpcMemoryTransport> clients;
+    private final Map<String, Set<MqttDrpcMemoryTransport>> exactSubscriptions;
+    private final List<Subscription> wildcardSubscriptions;
+
+    private static class Subscription {
+
+        private final String[] filter;
+        private final String topic;
+        private final MqttDrpcMemoryTransport transport;
+
+        private Subscription(String topic, MqttDrpcMemoryTransport transport) {
+            this.filter = topic.split(SEPARATOR, -1);
+            this.topic = topic;
+            this.transport = transport;
+        }
+
+    }
+
+    public MqttDrpcMemoryBroker() {
+        this.clients = new ConcurrentHashMap<>();
+        this.exactSubscriptions = new ConcurrentHashMap<>();
+        this.wildcardSubscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Creates a new, not yet connected transport for a simulated client of this broker.
+     *
+     * @param clientId unique identifier of the client
+     * @return transport to the broker
+     */
+    public MqttDrpcMemoryTransport transport(String clientId) {
+        return new MqttDrpcMemoryTransport(this, clientId);
+    }
+
+    /**
+     * Registers a transport as connected, disconnects any previously connected transport by the same client identifier.
+     *
+     * @param transport transport to connect
+     */
+    void connect(MqttDrpcMemoryTransport transport) {
+        MqttDrpcMemoryTransport previous = clients.put(transport.getClientId(), transport);
+        if (previous != null && previous != transport) {
+            disconnect(previous);
+            previous.connectionLost(new IllegalStateException("Client took over by another connection with identifier " + transport.getClientId()));
+        }
+    }
+
+    /**
+     * Unregisters a transport and removes all of its subscriptions.
+     *
+     * @param transport transport to disconnect
+     */
+    void disconnect(MqttDrpcMemoryTransport transport) {
+        clients.remove(transport.getClientId(), transport);
+        for (Set<MqttDrpcMemoryTransport> subscribers : exactSubscriptions.values()) {
+            subscribers.remove(transport);
+        }
+        wildcardSubscriptions.removeIf(subscription -> subscription.transport == transport);
+    }
+
+    /**
+     * Simulates a restart of the broker, disconnects all clients, and with them all of their subscriptions.
+     */
+    public void restart() {
+        for (MqttDrpcMemoryTransport transport : new ArrayList<>(clients.values())) {
+            disconnect(transport);
+            transport.connectionLost(new IllegalStateException("Broker restarted"));
+        }
+    }
+
+    void subscribe(MqttDrpcMemoryTransport transport, String topic) {
+        if (isWildcard(topic)) {
+            boolean subscribed = wildcardSubscriptions.stream().anyMatch(subscription -> subscription.transport == transport && subscription.topic.equals(topic));
+            if (!subscribed) {
+                wildcardSubscriptions.add(new Subscription(topic, transport));
+            }
+        } else {
+            exactSubscriptions.computeIfAbsent(topic, key -> new CopyOnWriteArraySet<>()).add(transport);
+        }
+    }
+
+    void unsubscribe(MqttDrpcMemoryTransport transport, String topic) {
+        if (isWildcard(topic)) {
+            wildcardSubscriptions.removeIf(subscription -> subscription.transport == transport && subscription.topic.equals(topic));
+        } else {
+            exactSubscriptions.computeIfPresent(topic, (key, subscribers) -> {
+                subscribers.remove(transport);
+                return subscribers.isEmpty() ? null : subscribers;
+            });
+        }
+    }
+
+    /**
+     * Routes a message to every client subscribed to a topic matching the given topic.
+     *
+     * @param topic   topic the message is published on
+     * @param payload message content
+     */
+    void publish(String topic, byte[] payload) {
+        Set<MqttDrpcMemoryTransport> subscribers = exactSubscriptions.get(topic);
+        if (wildcardSubscriptions.isEmpty()) {
+            if (subscribers != null) {
+                for (MqttDrpcMemoryTransport subscriber : subscribers) {
+                    subscriber.deliver(topic, payload);
+                }
+            }
+            return;
+        }
+        Set<MqttDrpcMemoryTransport> recipients = new HashSet<>();
+        if (subscribers != null) {
+            recipients.addAll(subscribers);
+        }
+        String[] levels = topic.split(SEPARATOR, -1);
+        for (Subscription subscription : wildcardSubscriptions) {
+            if (matches(subscription.filter, levels)) {
+                recipients.add(subscription.transport);
+            }
+        }
+        for (MqttDrpcMemoryTransport recipient : recipients) {
+            recipient.deliver(topic, payload);
+        }
+    }
+
+    private static boolean isWildcard(String topic) {
+        return topic.contains(SINGLE_LEVEL) || topic.contains(MULTI_LEVEL);
+    }
+
+    private static boolean matches(String[] filter, String[] levels) {
+        for (int i = 0; i < filter.length; i++) {
+            if (MULTI_LEVEL.equals(filter[i])) {
+                return true;
+            }
+            if (i >= levels.length) {
+                return false;
+            }
+            if (!SINGLE_LEVEL.equals(filter[i]) && !filter[i].equals(levels[i])) {
+                return false;
+            }
+        }
+        return filter.length == levels.length;
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.hileco.drpc.mqtt;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Implementation of {@link MqttDrpcTransport} for a simulated client of an in-memory {@link MqttDrpcMemoryBroker}.
+ * <p>
+ * Publishing never blocks on the receiving clients, each connected transport delivers its inbound messages in order on
+ * a dedicated thread, as an MQTT client library would.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcMemoryTransport implements MqttDrpcTransport {
+
+    private final MqttDrpcMemoryBroker broker;
+    private final String clientId;
+    private volatile ExecutorService delivery;
+    private Callback callback;
+
+    /**
+     * The recommended way to create an instance is with {@link MqttDrpcMemoryBroker#transport(String)}.
+     */
+    public MqttDrpcMemoryTransport(MqttDrpcMemoryBroker broker, String clientId) {
+        this.broker = broker;
+        this.clientId = clientId;
+    }
+
+    @Override
+    public String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public synchronized void connect() throws MqttDrpcTransportException {
+        if (delivery != null) {
+            throw new MqttDrpcTransportException(MqttDrpcTransportException.REASON_CODE_CLIENT_CONNECTED);
+        }
+        delivery = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MqttDrpcMemoryTransport-" + clientId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        broker.connect(this);
+    }
+
+    @Override
+    public synchronized void disconnect() throws MqttDrpcTransportException {
+        if (delivery == null) {
+            throw new MqttDrpcTransportException(MqttDrpcTransportException.REASON_CODE_CLIENT_ALREADY_DISCONNECTED);
+        }
+        broker.disconnect(this);
+        delivery.shutdown();
+        delivery = null;
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload, int qualityOfServiceLevel) throws MqttDrpcTransportException {
+        assertConnected();
+        broker.publish(topic, payload);
+    }
+
+    @Override
+    public void subscribe(String[] topics) throws MqttDrpcTransportException {
+        assertConnected();
+        for (String topic : topics) {
+            broker.subscribe(this, topic);
+        }
+    }
+
+    @Override
+    public void unsubscribe(String[] topics) throws MqttDrpcTransportException {
+        assertConnected();
+        for (String topic : topics) {
+            broker.unsubscribe(this, topic);
+        }
+    }
+
+    private void assertConnected() throws MqttDrpcTransportException {
+        if (delivery == null) {
+            throw new MqttDrpcTransportException(MqttDrpcTransportException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+    }
+
+    /**
+     * Queues a message for delivery to the callback, a failing callback disconnects the transport.
+     *
+     * @param topic   topic the message was published on
+     * @param payload message content
+     */
+    void deliver(String topic, byte[] payload) {
+        ExecutorService executor = this.delivery;
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    callback.messageArrived(topic, payload);
+                } catch (Exception e) {
+                    try {
+                        disconnect();
+                    } catch (MqttDrpcTransportException ignored) {
+                        // already disconnected
+                    }
+                    callback.connectionLost(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // disconnected while delivering, message is dropped as it would be by a broker
+        }
+    }
+
+    /**
+     * Informs the callback that the broker ended the connection.
+     *
+     * @param cause disconnect cause
+     */
+    void connectionLost(Throwable cause) {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = this.delivery;
+            this.delivery = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            callback.connectionLost(cause);
+        }
+    }
+
+}
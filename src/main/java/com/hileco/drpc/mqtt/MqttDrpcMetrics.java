@@ -0,0 +1,314 @@
+package com.hileco.drpc.mqtt;
+
+import com.hileco.drpc.generic.LatencyHistogram;
+import com.hileco.drpc.metrics.MetricsRegistry;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a single {@link MqttDrpcClient}, all tagged with the client's identifier.
+ * <p>
+ * Per-method metrics are tagged with the interface the method is called through, and the method's signature so that
+ * overloads are told apart. They are looked up in the registry once, and kept by interface and method afterwards.
+ * Closing removes all metrics from the registry, which is done once the client is closed rather than on every disconnect,
+ * as the metrics are kept by the client for its lifetime.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcMetrics {
+
+    public static final String CLIENT_LATENCY = "client.latency";
+    public static final String CLIENT_REQUEST_BYTES = "client.request.bytes";
+    public static final String CLIENT_CALLS_IN_FLIGHT = "client.calls.inflight";
+    public static final String CLIENT_CALLS_EXPIRED = "client.calls.expired";
+    public static final String CLIENT_CALLS_REJECTED = "client.calls.rejected";
+    public static final String CLIENT_COALESCED = "client.coalesced";
+    public static final String CLIENT_CACHE_HITS = "client.cache.hits";
+    public static final String CLIENT_CACHE_MISSES = "client.cache.misses";
+    public static final String CLIENT_CALLBACKS_PENDING = "client.callbacks.pending";
+    public static final String CLIENT_CALLBACKS_CAPACITY = "client.callbacks.capacity";
+    public static final String SERVICE_LATENCY = "service.latency";
+    public static final String SERVICE_RESPONSE_BYTES = "service.response.bytes";
+    public static final String SERVICE_BATCH_SIZE = "service.batch.size";
+    public static final String SERVICE_REJECTIONS = "service.rejections";
+    public static final String SERVICE_ERRORS = "service.errors";
+    public static final String SERVICE_COALESCED = "service.coalesced";
+    public static final String SERVICE_INVOCATIONS_IN_FLIGHT = "service.invocations.inflight";
+    public static final String EXECUTOR_QUEUE_DEPTH = "executor.queue.depth";
+    public static final String TASK_RETRIES = "task.retries";
+    public static final String TASK_FAILURES = "task.failures";
+    public static final String TASK_RETRY_BUDGET = "task.retry.budget";
+    public static final String DISCONNECTS = "disconnects";
+    public static final String RECONNECTS = "reconnects";
+
+    private final MetricsRegistry registry;
+    private final String clientId;
+    private final Map<Class<?>, Map<Method, LatencyHistogram>> clientLatencies;
+    private final Map<Class<?>, Map<Method, LatencyHistogram>> clientRequestBytes;
+    private final Map<Class<?>, Map<Method, LatencyHistogram>> serviceLatencies;
+    private final Map<Class<?>, Map<Method, LatencyHistogram>> serviceResponseBytes;
+    private final Map<Class<?>, Map<Method, LatencyHistogram>> serviceBatchSizes;
+    private final Map<Class<?>, Map<Method, LongAdder>> clientCoalesced;
+    private final Map<Class<?>, Map<Method, LongAdder>> clientCacheHits;
+    private final Map<Class<?>, Map<Method, LongAdder>> clientCacheMisses;
+    private final Map<Class<?>, Map<Method, LongAdder>> serviceRejections;
+    private final Map<Class<?>, Map<Method, LongAdder>> serviceErrors;
+    private final Map<Class<?>, Map<Method, LongAdder>> serviceCoalesced;
+    private final LongAdder clientCallsInFlight;
+    private final LongAdder clientCallsExpired;
+    private final LongAdder clientCallsRejected;
+    private final LongAdder serviceInvocationsInFlight;
+    private final LongAdder taskRetries;
+    private final LongAdder taskFailures;
+    private final LongAdder disconnects;
+    private final LongAdder reconnects;
+    private final List<String[]> registered;
+
+    public MqttDrpcMetrics(MetricsRegistry registry, String clientId) {
+        this.registry = registry;
+        this.clientId = clientId;
+        this.clientLatencies = new ConcurrentHashMap<>();
+        this.clientRequestBytes = new ConcurrentHashMap<>();
+        this.serviceLatencies = new ConcurrentHashMap<>();
+        this.serviceResponseBytes = new ConcurrentHashMap<>();
+        this.serviceBatchSizes = new ConcurrentHashMap<>();
+        this.clientCoalesced = new ConcurrentHashMap<>();
+        this.clientCacheHits = new ConcurrentHashMap<>();
+        this.clientCacheMisses = new ConcurrentHashMap<>();
+        this.serviceRejections = new ConcurrentHashMap<>();
+        this.serviceErrors = new ConcurrentHashMap<>();
+        this.serviceCoalesced = new ConcurrentHashMap<>();
+        this.clientCallsInFlight = new LongAdder();
+        this.serviceInvocationsInFlight = new LongAdder();
+        this.registered = new ArrayList<>();
+        this.clientCallsExpired = counter(CLIENT_CALLS_EXPIRED, "client", clientId);
+        this.clientCallsRejected = counter(CLIENT_CALLS_REJECTED, "client", clientId);
+        this.taskRetries = counter(TASK_RETRIES, "client", clientId);
+        this.taskFailures = counter(TASK_FAILURES, "client", clientId);
+        this.disconnects = counter(DISCONNECTS, "client", clientId);
+        this.reconnects = counter(RECONNECTS, "client", clientId);
+        gauge(CLIENT_CALLS_IN_FLIGHT, clientCallsInFlight::sum);
+        gauge(SERVICE_INVOCATIONS_IN_FLIGHT, serviceInvocationsInFlight::sum);
+    }
+
+    /**
+     * @return the registry the metrics are recorded in
+     */
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Registers a gauge tagged with this client's identifier.
+     *
+     * @param name  metric name
+     * @param value supplier of the current value
+     */
+    public void gauge(String name, LongSupplier value) {
+        register(name, "client", clientId);
+        registry.gauge(name, value, "client", clientId);
+    }
+
+    private LongAdder counter(String name, String... tags) {
+        register(name, tags);
+        return registry.counter(name, tags);
+    }
+
+    private synchronized void register(String name, String... tags) {
+        String[] metric = new String[tags.length + 1];
+        metric[0] = name;
+        System.arraycopy(tags, 0, metric, 1, tags.length);
+        registered.add(metric);
+    }
+
+    /**
+     * Removes all metrics of this client from the registry, after which they are no longer exposed.
+     */
+    public synchronized void close() {
+        for (String[] metric : registered) {
+            registry.remove(metric[0], Arrays.copyOfRange(metric, 1, metric.length));
+        }
+        registered.clear();
+    }
+
+    /**
+     * @return the method's name and parameter types, for example {@code add(java.lang.Integer,java.lang.Integer)}
+     */
+    private static String signature(Method method) {
+        StringBuilder signature = new StringBuilder(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            signature.append(i == 0 ? "" : ",").append(parameterTypes[i].getTypeName());
+        }
+        return signature.append(')').toString();
+    }
+
+    private <M> M metric(Map<Class<?>, Map<Method, M>> metrics, Class<?> type, Method method, BiFunction<String, String[], M> lookup, String name) {
+        Map<Method, M> methods = metrics.computeIfAbsent(type, key -> new ConcurrentHashMap<>());
+        M metric = methods.get(method);
+        if (metric == null) {
+            metric = methods.computeIfAbsent(method, key -> {
+                String[] tags = {"client", clientId, "interface", type.getName(), "method", signature(method)};
+                register(name, tags);
+                return lookup.apply(name, tags);
+            });
+        }
+        return metric;
+    }
+
+    private LatencyHistogram histogram(Map<Class<?>, Map<Method, LatencyHistogram>> histograms, String name, Class<?> type, Method method) {
+        return metric(histograms, type, method, registry::histogram, name);
+    }
+
+    /**
+     * @return latencies in nanoseconds from starting a call of the method to receiving each of its responses
+     */
+    public LatencyHistogram clientLatency(Class<?> type, Method method) {
+        return histogram(clientLatencies, CLIENT_LATENCY, type, method);
+    }
+
+    /**
+     * @return serialized sizes in bytes of requests of the method
+     */
+    public LatencyHistogram clientRequestBytes(Class<?> type, Method method) {
+        return histogram(clientRequestBytes, CLIENT_REQUEST_BYTES, type, method);
+    }
+
+    /**
+     * @return latencies in nanoseconds from receiving a request of the method to publishing its response
+     */
+    public LatencyHistogram serviceLatency(Class<?> type, Method method) {
+        return histogram(serviceLatencies, SERVICE_LATENCY, type, method);
+    }
+
+    /**
+     * @return serialized sizes in bytes of responses of the method
+     */
+    public LatencyHistogram serviceResponseBytes(Class<?> type, Method method) {
+        return histogram(serviceResponseBytes, SERVICE_RESPONSE_BYTES, type, method);
+    }
+
+    /**
+     * @return amounts of requests invoked together, of the {@link MqttDrpcBatched} method
+     */
+    public LatencyHistogram serviceBatchSize(Class<?> type, Method method) {
+        return histogram(serviceBatchSizes, SERVICE_BATCH_SIZE, type, method);
+    }
+
+    private LongAdder counter(Map<Class<?>, Map<Method, LongAdder>> counters, String name, Class<?> type, Method method) {
+        return metric(counters, type, method, registry::counter, name);
+    }
+
+    /**
+     * @return amount of calls of the method which joined an equal call in flight instead of sending a request
+     */
+    public LongAdder clientCoalesced(Class<?> type, Method method) {
+        return counter(clientCoalesced, CLIENT_COALESCED, type, method);
+    }
+
+    /**
+     * @return amount of calls of the method answered from the response cache
+     */
+    public LongAdder clientCacheHits(Class<?> type, Method method) {
+        return counter(clientCacheHits, CLIENT_CACHE_HITS, type, method);
+    }
+
+    /**
+     * @return amount of calls of the method not found in the response cache
+     */
+    public LongAdder clientCacheMisses(Class<?> type, Method method) {
+        return counter(clientCacheMisses, CLIENT_CACHE_MISSES, type, method);
+    }
+
+    /**
+     * @return amount of requests of the method rejected for exceeding a concurrency limit
+     */
+    public LongAdder serviceRejections(Class<?> type, Method method) {
+        return counter(serviceRejections, SERVICE_REJECTIONS, type, method);
+    }
+
+    /**
+     * @return amount of requests of the method responded to with an error
+     */
+    public LongAdder serviceErrors(Class<?> type, Method method) {
+        return counter(serviceErrors, SERVICE_ERRORS, type, method);
+    }
+
+    /**
+     * @return amount of requests of the method which joined an equal request in flight instead of being invoked
+     */
+    public LongAdder serviceCoalesced(Class<?> type, Method method) {
+        return counter(serviceCoalesced, SERVICE_COALESCED, type, method);
+    }
+
+    /**
+     * @return amount of calls of which responses are still awaited
+     */
+    public LongAdder clientCallsInFlight() {
+        return clientCallsInFlight;
+    }
+
+    /**
+     * @return amount of calls which stopped awaiting responses after timing out
+     */
+    public LongAdder clientCallsExpired() {
+        return clientCallsExpired;
+    }
+
+    /**
+     * @return amount of calls refused because too many calls were awaiting responses
+     */
+    public LongAdder clientCallsRejected() {
+        return clientCallsRejected;
+    }
+
+    /**
+     * @return amount of service invocations in progress
+     */
+    public LongAdder serviceInvocationsInFlight() {
+        return serviceInvocationsInFlight;
+    }
+
+    /**
+     * @return amount of times the client reconnected after losing its connection
+     */
+    public LongAdder reconnects() {
+        return reconnects;
+    }
+
+    /**
+     * Wraps a failure handler to count its retries, failures and disconnects.
+     *
+     * @param failureHandler failure handler to delegate decisions to
+     * @return counting failure handler
+     */
+    public MqttDrpcFailureHandler instrument(MqttDrpcFailureHandler failureHandler) {
+        return new MqttDrpcFailureHandler() {
+            @Override
+            public boolean shouldRetry(Exception cause, MqttDrpcTask task) {
+                boolean retry = failureHandler.shouldRetry(cause, task);
+                if (retry) {
+                    taskRetries.increment();
+                } else {
+                    taskFailures.increment();
+                }
+                return retry;
+            }
+
+            @Override
+            public void handleDisconnect(Throwable throwable) {
+                disconnects.increment();
+                failureHandler.handleDisconnect(throwable);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.hileco.drpc.mqtt;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a void method of a service interface as a notification, which is never responded to.
+ * <p>
+ * Calling clients do not await responses of the method, calls return as soon as their request is handed to the
+ * client's executor for publishing. Publishing clients invoke the method without responding, also not when it fails or
+ * is rejected. Failures to publish a request are handled by the client's failure handler, but not reported to the
+ * caller.
+ *
+ * @author Philipp Gayret
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MqttDrpcOneWay {
+
+}
@@ -0,0 +1,15 @@
+package com.hileco.drpc.mqtt;
+
+/**
+ * An error responded by a remote service which rejected a call because it was at its concurrency limit, the call was
+ * not invoked and may be retried.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcOverloadedException extends MqttDrpcRemoteException {
+
+    public MqttDrpcOverloadedException(String message) {
+        super(MqttDrpcOverloadedException.class.getName(), message);
+    }
+
+}
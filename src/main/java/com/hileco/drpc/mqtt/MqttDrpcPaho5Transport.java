@@ -0,0 +1,236 @@
+package com.hileco.drpc.mqtt;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttClient;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+
+import java.util.function.Predicate;
+
+/**
+ * Implementation of {@link MqttDrpcTransport} over an Eclipse Paho MQTT 5 {@link MqttClient}.
+ * <p>
+ * Messages are published with a message expiry interval, so brokers discard messages nobody awaits anymore rather than
+ * delivering them late. Topics matching the shared predicate are subscribed to as shared subscriptions of the given
+ * group, so brokers deliver each of their messages to only one of the group's subscribers. Messages of shared
+ * subscriptions arrive on their own topic, as with any other subscription. Outgoing topics are replaced by topic aliases
+ * as far as the broker allows, incoming ones as far as the connection options allow.
+ * <p>
+ * The callback topic and correlation identifier of a request remain part of its body rather than being set as the
+ * response topic and correlation data properties of MQTT 5. Clients of either MQTT version publish and serve the same
+ * topics, and MQTT 3.1.1 clients cannot read properties; setting them as well would add bytes to every request which no
+ * client reads.
+ * <p>
+ * Failures are thrown as the {@link MqttDrpcTransportException} of the transport specification, with the same reason
+ * code.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcPaho5Transport implements MqttDrpcTransport, MqttCallback {
+
+    public static final String SHARED_SUBSCRIPTION = "$share";
+    public static final int SUBSCRIPTION_QUALITY_OF_SERVICE = 1;
+
+    private final MqttClient mqttClient;
+    private final MqttConnectionOptions connectionOptions;
+    private final long secondsMessageExpiryInterval;
+    private final String sharedGroup;
+    private final Predicate<String> shared;
+    private Callback callback;
+
+    /**
+     * Creates a transport publishing messages which never expire, without shared subscriptions.
+     */
+    public MqttDrpcPaho5Transport(MqttClient mqttClient, MqttConnectionOptions connectionOptions) {
+        this(mqttClient, connectionOptions, 0, null, topic -> false);
+    }
+
+    /**
+     * @param mqttClient                   client to relay messages over
+     * @param connectionOptions            options to connect with
+     * @param secondsMessageExpiryInterval seconds after which brokers discard published messages, or 0 for never
+     * @param sharedGroup                  group to share subscriptions in, or null to share none
+     * @param shared                       whether to share the subscription of a topic
+     */
+    public MqttDrpcPaho5Transport(MqttClient mqttClient, MqttConnectionOptions connectionOptions, long secondsMessageExpiryInterval,
+                                  String sharedGroup, Predicate<String> shared) {
+        this.mqttClient = mqttClient;
+        this.connectionOptions = connectionOptions;
+        this.secondsMessageExpiryInterval = secondsMessageExpiryInterval;
+        this.sharedGroup = sharedGroup;
+        this.shared = shared;
+        this.mqttClient.setCallback(this);
+    }
+
+    /**
+     * Creates a transport over a new client of the given broker, without persistence, which connects with a clean
+     * start and accepts topic aliases.
+     * <p>
+     * Builders create MQTT 5 transports through this method only, so that they load without the optional MQTT 5 client
+     * on the class path.
+     *
+     * @param broker                       MQTT 5 broker URL
+     * @param clientId                     identifier of the client
+     * @param keepAliveInterval            keep alive interval in seconds
+     * @param topicAliasMaximum            maximum amount of topic aliases to accept from the broker
+     * @param millisecondsTimeToWait       maximum time to wait for an action to complete
+     * @param secondsMessageExpiryInterval seconds after which brokers discard published messages, or 0 for never
+     * @param sharedGroup                  group to share subscriptions in, or null to share none
+     * @param shared                       whether to share the subscription of a topic
+     * @return the transport
+     * @throws MqttDrpcTransportException when the broker URL or client configuration is invalid
+     */
+    public static MqttDrpcPaho5Transport open(String broker, String clientId, int keepAliveInterval, int topicAliasMaximum, long millisecondsTimeToWait,
+                                              long secondsMessageExpiryInterval, String sharedGroup, Predicate<String> shared) throws MqttDrpcTransportException {
+        MqttClient mqttClient;
+        try {
+            mqttClient = new MqttClient(broker, clientId, new MemoryPersistence());
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+        mqttClient.setTimeToWait(millisecondsTimeToWait);
+        MqttConnectionOptions connectionOptions = new MqttConnectionOptions();
+        connectionOptions.setCleanStart(true);
+        connectionOptions.setKeepAliveInterval(keepAliveInterval);
+        connectionOptions.setTopicAliasMaximum(topicAliasMaximum);
+        return new MqttDrpcPaho5Transport(mqttClient, connectionOptions, secondsMessageExpiryInterval, sharedGroup, shared);
+    }
+
+    private static MqttDrpcTransportException convert(MqttException e) {
+        return new MqttDrpcTransportException(e.getReasonCode(), e);
+    }
+
+    /**
+     * @param topic topic to subscribe to or unsubscribe from
+     * @return the topic filter to subscribe with, shared when the topic is to be shared
+     */
+    private String filter(String topic) {
+        if (sharedGroup != null && shared.test(topic)) {
+            return SHARED_SUBSCRIPTION + "/" + sharedGroup + "/" + topic;
+        }
+        return topic;
+    }
+
+    @Override
+    public String getClientId() {
+        return mqttClient.getClientId();
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public void connect() throws MqttDrpcTransportException {
+        try {
+            mqttClient.connect(connectionOptions);
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void disconnect() throws MqttDrpcTransportException {
+        try {
+            mqttClient.disconnect();
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload, int qualityOfServiceLevel) throws MqttDrpcTransportException {
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(qualityOfServiceLevel);
+        if (secondsMessageExpiryInterval > 0) {
+            MqttProperties properties = new MqttProperties();
+            properties.setMessageExpiryInterval(secondsMessageExpiryInterval);
+            message.setProperties(properties);
+        }
+        try {
+            mqttClient.publish(topic, message);
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void subscribe(String[] topics) throws MqttDrpcTransportException {
+        MqttSubscription[] subscriptions = new MqttSubscription[topics.length];
+        for (int i = 0; i < topics.length; i++) {
+            subscriptions[i] = new MqttSubscription(filter(topics[i]), SUBSCRIPTION_QUALITY_OF_SERVICE);
+        }
+        try {
+            mqttClient.subscribe(subscriptions);
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void unsubscribe(String[] topics) throws MqttDrpcTransportException {
+        String[] filters = new String[topics.length];
+        for (int i = 0; i < topics.length; i++) {
+            filters[i] = filter(topics[i]);
+        }
+        try {
+            mqttClient.unsubscribe(filters);
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    /**
+     * Delegates disconnects to the callback.
+     */
+    @Override
+    public void disconnected(MqttDisconnectResponse disconnectResponse) {
+        MqttException exception = disconnectResponse.getException();
+        callback.connectionLost(exception == null ? new MqttDrpcTransportException(MqttDrpcTransportException.REASON_CODE_CONNECTION_LOST)
+                : convert(exception));
+    }
+
+    /**
+     * Null implementation, errors of individual operations are thrown by the operations themselves.
+     */
+    @Override
+    public void mqttErrorOccurred(MqttException exception) {
+    }
+
+    /**
+     * Delegates incoming messages to the callback.
+     */
+    @Override
+    public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
+        callback.messageArrived(topic, mqttMessage.getPayload());
+    }
+
+    /**
+     * Null implementation, delivery is assured by quality of service level.
+     */
+    @Override
+    public void deliveryComplete(IMqttToken token) {
+    }
+
+    /**
+     * Null implementation, the client resubscribes by itself after reconnecting.
+     */
+    @Override
+    public void connectComplete(boolean reconnect, String serverURI) {
+    }
+
+    /**
+     * Null implementation, enhanced authentication is not supported.
+     */
+    @Override
+    public void authPacketArrived(int reasonCode, MqttProperties properties) {
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.hileco.drpc.mqtt;
+
+import org.eclipse.paho.client.mqttv3.*;
+
+/**
+ * Implementation of {@link MqttDrpcTransport} over an Eclipse Paho {@link MqttClient}.
+ * <p>
+ * Failures are thrown as the {@link MqttDrpcTransportException} of the transport specification, with the same reason
+ * code.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcPahoTransport implements MqttDrpcTransport, MqttCallback {
+
+    private final MqttClient mqttClient;
+    private final MqttConnectOptions connectOptions;
+    private Callback callback;
+
+    public MqttDrpcPahoTransport(MqttClient mqttClient, MqttConnectOptions connectOptions) {
+        this.mqttClient = mqttClient;
+        this.connectOptions = connectOptions;
+        this.mqttClient.setCallback(this);
+    }
+
+    @Override
+    public String getClientId() {
+        return mqttClient.getClientId();
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    private static MqttDrpcTransportException convert(MqttException e) {
+        return new MqttDrpcTransportException(e.getReasonCode(), e);
+    }
+
+    @Override
+    public void connect() throws MqttDrpcTransportException {
+        try {
+            mqttClient.connect(connectOptions);
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void disconnect() throws MqttDrpcTransportException {
+        try {
+            mqttClient.disconnect();
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload, int qualityOfServiceLevel) throws MqttDrpcTransportException {
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(qualityOfServiceLevel);
+        try {
+            mqttClient.publish(topic, message);
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void subscribe(String[] topics) throws MqttDrpcTransportException {
+        try {
+            mqttClient.subscribe(topics);
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public void unsubscribe(String[] topics) throws MqttDrpcTransportException {
+        try {
+            mqttClient.unsubscribe(topics);
+        } catch (MqttException e) {
+            throw convert(e);
+        }
+    }
+
+    /**
+     * Delegates disconnect errors to the callback.
+     */
+    @Override
+    public void connectionLost(Throwable throwable) {
+        callback.connectionLost(throwable);
+    }
+
+    /**
+     * Delegates incoming messages to the callback.
+     */
+    @Override
+    public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
+        callback.messageArrived(topic, mqttMessage.getPayload());
+    }
+
+    /**
+     * Null implementation, delivery is assured by quality of service level.
+     */
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
+    }
+
+}
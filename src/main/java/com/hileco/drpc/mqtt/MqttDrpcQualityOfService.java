@@ -0,0 +1,30 @@
+package com.hileco.drpc.mqtt;
+
+import java.lang.annotation.*;
+
+/**
+ * Sets the MQTT quality of service levels of the requests and responses of a service interface or one of its methods,
+ * in place of the level configured on the client. Annotations on methods take precedence over those on interfaces.
+ * <p>
+ * Calling clients read the request level when creating a connector, publishing clients read the response level when
+ * publishing. Lower levels save the broker round trips of acknowledgements, at the risk of messages being lost, and
+ * suit idempotent calls which are simply repeated on a timeout.
+ *
+ * @author Philipp Gayret
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface MqttDrpcQualityOfService {
+
+    /**
+     * @return quality of service level of requests, or -1 for the level of the interface or client
+     */
+    int request() default -1;
+
+    /**
+     * @return quality of service level of responses, or -1 for the level of the interface or client
+     */
+    int response() default -1;
+
+}
@@ -0,0 +1,28 @@
+package com.hileco.drpc.mqtt;
+
+/**
+ * An exception for errors which a remote service responded with in place of a result.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcRemoteException extends MqttDrpcRuntimeException {
+
+    private final String type;
+
+    /**
+     * @param type    name of the type of exception that caused the error on the remote service
+     * @param message message of the remote exception
+     */
+    public MqttDrpcRemoteException(String type, String message) {
+        super(type + ": " + message, null);
+        this.type = type;
+    }
+
+    /**
+     * @return the name of the type of exception that caused the error on the remote service
+     */
+    public String getType() {
+        return type;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.hileco.drpc.mqtt;
+
+/**
+ * Limits the retries of all tasks of a client to a fraction of its tasks, so that failures caused by congestion are not
+ * made worse by a storm of retries.
+ * <p>
+ * Every task deposits a fraction of a retry into the budget, and every retry withdraws a whole one. A small reserve of
+ * retries per second is always available, so that a client with few tasks can still retry.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcRetryBudget {
+
+    public static final double DEFAULT_RETRY_RATIO = 0.2;
+    public static final int DEFAULT_RESERVED_RETRIES_PER_SECOND = 10;
+    public static final int DEFAULT_MAXIMUM_BALANCE = 100;
+
+    private static final long SCALE = 1000;
+    private static final long NANOSECONDS_PER_SECOND = 1_000_000_000L;
+
+    private final long deposit;
+    private final long reservedPerSecond;
+    private final long maximumBalance;
+    private final long nanosecondsToFill;
+    private long balance;
+    private long refilledAt;
+
+    public MqttDrpcRetryBudget() {
+        this(DEFAULT_RETRY_RATIO, DEFAULT_RESERVED_RETRIES_PER_SECOND, DEFAULT_MAXIMUM_BALANCE);
+    }
+
+    /**
+     * @param retryRatio               retries allowed per task
+     * @param reservedRetriesPerSecond retries allowed per second regardless of the amount of tasks
+     * @param maximumBalance           retries which can be saved up while tasks succeed
+     */
+    public MqttDrpcRetryBudget(double retryRatio, int reservedRetriesPerSecond, int maximumBalance) {
+        if (retryRatio < 0 || reservedRetriesPerSecond < 0 || maximumBalance < 1) {
+            throw new IllegalArgumentException("Ratio and reserve may not be negative, maximum balance must be at least 1");
+        }
+        this.deposit = (long) (retryRatio * SCALE);
+        this.reservedPerSecond = reservedRetriesPerSecond * SCALE;
+        this.maximumBalance = maximumBalance * SCALE;
+        // time after which the reserve alone refills an empty balance, longer elapsed times refill no further
+        this.nanosecondsToFill = this.reservedPerSecond == 0 ? 0
+                : (long) Math.ceil((double) this.maximumBalance * NANOSECONDS_PER_SECOND / this.reservedPerSecond);
+        this.balance = this.maximumBalance;
+        this.refilledAt = System.nanoTime();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        // capped, as the product with the reserve per second would overflow after days of no withdrawals
+        long elapsed = Math.min(now - refilledAt, nanosecondsToFill);
+        long reserve = reservedPerSecond * elapsed / NANOSECONDS_PER_SECOND;
+        if (reserve > 0) {
+            balance = Math.min(maximumBalance, balance + reserve);
+            refilledAt = now;
+        }
+    }
+
+    /**
+     * Deposits the share of retries of a single task.
+     */
+    public synchronized void deposit() {
+        balance = Math.min(maximumBalance, balance + deposit);
+    }
+
+    /**
+     * Withdraws a single retry, when available.
+     *
+     * @return false when the budget is exhausted
+     */
+    public synchronized boolean tryWithdraw() {
+        refill();
+        if (balance < SCALE) {
+            return false;
+        }
+        balance -= SCALE;
+        return true;
+    }
+
+    /**
+     * @return amount of whole retries currently available
+     */
+    public synchronized long getBalance() {
+        refill();
+        return balance / SCALE;
+    }
+
+    /**
+     * Wraps a failure handler so that it only retries while this budget allows.
+     *
+     * @param failureHandler failure handler to delegate decisions to
+     * @return budgeted failure handler
+     */
+    public MqttDrpcFailureHandler limit(MqttDrpcFailureHandler failureHandler) {
+        return new MqttDrpcFailureHandler() {
+            @Override
+            public boolean shouldRetry(Exception cause, MqttDrpcTask task) {
+                return failureHandler.shouldRetry(cause, task) && tryWithdraw();
+            }
+
+            @Override
+            public void handleDisconnect(Throwable throwable) {
+                failureHandler.handleDisconnect(throwable);
+            }
+        };
+    }
+
+}
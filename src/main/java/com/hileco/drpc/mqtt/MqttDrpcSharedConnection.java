@@ -0,0 +1,284 @@
+package com.hileco.drpc.mqtt;
+
+import com.hileco.drpc.generic.MessageReceiver;
+import com.hileco.drpc.generic.PendingCallTable;
+import com.hileco.drpc.generic.ServiceHost;
+import com.hileco.drpc.generic.SilentCloseable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A single connection to a broker shared by multiple clients, each connecting over a transport of its own, see
+ * {@link #transport(String)}.
+ * <p>
+ * The connection is connected by the first of its transports to connect, and disconnected once all have disconnected.
+ * Subscriptions are counted per topic across transports, a topic is only unsubscribed from once no transport is
+ * subscribed to it anymore. Messages arriving on the connection are handed to each transport subscribed to a topic
+ * matching theirs, once per transport. Losing the connection is handed to all transports, the first to reconnect
+ * reconnects the connection for all of them.
+ * <p>
+ * Clients built over the connection by {@link MqttDrpcClientBuilder#build(MqttDrpcSharedConnection)} share its
+ * scheduled executor service and its table of pending calls, and with it the table's single timer thread, unless
+ * configured otherwise on their builder.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcSharedConnection implements MqttDrpcTransport.Callback {
+
+    private final MqttDrpcTransport transport;
+    private final ServiceHost subscribers;
+    private final Map<String, Integer> subscriptions;
+    private final List<SharedTransport> transports;
+    private final ScheduledExecutorService executorService;
+    private final boolean ownedExecutorService;
+    private final PendingCallTable pendingCalls;
+    private boolean connected;
+
+    /**
+     * Creates a shared connection with an executor service of its own, shut down by {@link #close()}.
+     *
+     * @param transport transport of the connection to share
+     */
+    public MqttDrpcSharedConnection(MqttDrpcTransport transport) {
+        this(transport, Executors.newScheduledThreadPool(MqttDrpcClientBuilder.DEFAULT_MAX_THREADS), true, new PendingCallTable());
+    }
+
+    /**
+     * @param transport       transport of the connection to share
+     * @param executorService executor service shared by the clients of the connection, left running by {@link #close()}
+     * @param pendingCalls    table of calls awaiting responses shared by the clients of the connection
+     */
+    public MqttDrpcSharedConnection(MqttDrpcTransport transport, ScheduledExecutorService executorService, PendingCallTable pendingCalls) {
+        this(transport, executorService, false, pendingCalls);
+    }
+
+    private MqttDrpcSharedConnection(MqttDrpcTransport transport, ScheduledExecutorService executorService, boolean ownedExecutorService,
+                                     PendingCallTable pendingCalls) {
+        this.transport = transport;
+        this.executorService = executorService;
+        this.ownedExecutorService = ownedExecutorService;
+        this.pendingCalls = pendingCalls;
+        this.subscribers = new ServiceHost();
+        this.subscriptions = new HashMap<>();
+        this.transports = new ArrayList<>();
+        this.connected = false;
+        this.transport.setCallback(this);
+    }
+
+    /**
+     * Creates a transport over this connection, for use by a single client.
+     *
+     * @param clientId identifier of the client, unique amongst all clients of the same broker
+     * @return a new transport
+     */
+    public MqttDrpcTransport transport(String clientId) {
+        SharedTransport sharedTransport = new SharedTransport(clientId);
+        synchronized (this) {
+            transports.add(sharedTransport);
+        }
+        return sharedTransport;
+    }
+
+    /**
+     * @return executor service shared by the clients of the connection
+     */
+    public ScheduledExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    /**
+     * @return table of calls awaiting responses shared by the clients of the connection
+     */
+    public PendingCallTable getPendingCalls() {
+        return pendingCalls;
+    }
+
+    /**
+     * Shuts down the executor service the connection created for its clients, after its clients are disconnected. The
+     * connection is not to be used afterwards.
+     */
+    public void close() {
+        if (ownedExecutorService) {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Hands incoming messages to the transports subscribed to them, each given the same payload.
+     */
+    @Override
+    public void messageArrived(String topic, byte[] payload) throws Exception {
+        for (MessageReceiver receiver : subscribers.receivers(topic)) {
+            // only transports of this connection are registered, which take the payload as it arrived
+            ((SharedTransport) receiver).callback.messageArrived(topic, payload);
+        }
+    }
+
+    /**
+     * Hands disconnects to all connected transports.
+     */
+    @Override
+    public void connectionLost(Throwable cause) {
+        List<SharedTransport> lost = new ArrayList<>();
+        synchronized (this) {
+            connected = false;
+            for (SharedTransport sharedTransport : transports) {
+                if (sharedTransport.connected) {
+                    sharedTransport.connected = false;
+                    lost.add(sharedTransport);
+                }
+            }
+        }
+        for (SharedTransport sharedTransport : lost) {
+            sharedTransport.callback.connectionLost(cause);
+        }
+    }
+
+    /**
+     * A client's transport over the shared connection.
+     */
+    private class SharedTransport implements MqttDrpcTransport, MessageReceiver {
+
+        private final String clientId;
+        private final Map<String, SilentCloseable> registrations;
+        private Callback callback;
+        private boolean connected;
+
+        private SharedTransport(String clientId) {
+            this.clientId = clientId;
+            this.registrations = new HashMap<>();
+            this.connected = false;
+        }
+
+        @Override
+        public String getClientId() {
+            return clientId;
+        }
+
+        @Override
+        public void setCallback(Callback callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * Connects the shared connection, unless connected already by another transport.
+         *
+         * @throws MqttDrpcTransportException on connection failures, with reason code
+         *                                    {@link MqttDrpcTransportException#REASON_CODE_CLIENT_CONNECTED} when this
+         *                                    transport was connected already
+         */
+        @Override
+        public void connect() throws MqttDrpcTransportException {
+            synchronized (MqttDrpcSharedConnection.this) {
+                if (connected) {
+                    throw new MqttDrpcTransportException(MqttDrpcTransportException.REASON_CODE_CLIENT_CONNECTED);
+                }
+                if (!MqttDrpcSharedConnection.this.connected) {
+                    transport.connect();
+                    MqttDrpcSharedConnection.this.connected = true;
+                }
+                connected = true;
+            }
+        }
+
+        /**
+         * Ends this transport's subscriptions, and disconnects the shared connection when no other transport is
+         * connected.
+         */
+        @Override
+        public void disconnect() throws MqttDrpcTransportException {
+            synchronized (MqttDrpcSharedConnection.this) {
+                connected = false;
+                String[] topics = registrations.keySet().toArray(new String[registrations.size()]);
+                unsubscribe(topics);
+                for (SharedTransport sharedTransport : transports) {
+                    if (sharedTransport.connected) {
+                        return;
+                    }
+                }
+                if (MqttDrpcSharedConnection.this.connected) {
+                    MqttDrpcSharedConnection.this.connected = false;
+                    transport.disconnect();
+                }
+            }
+        }
+
+        @Override
+        public void publish(String topic, byte[] payload, int qualityOfServiceLevel) throws MqttDrpcTransportException {
+            transport.publish(topic, payload, qualityOfServiceLevel);
+        }
+
+        /**
+         * Subscribes the shared connection to all given topics, which after losing the connection includes those
+         * subscribed to before.
+         */
+        @Override
+        public void subscribe(String[] topics) throws MqttDrpcTransportException {
+            synchronized (MqttDrpcSharedConnection.this) {
+                for (String topic : topics) {
+                    if (!registrations.containsKey(topic)) {
+                        registrations.put(topic, subscribers.register(topic, this));
+                        subscriptions.merge(topic, 1, Integer::sum);
+                    }
+                }
+            }
+            transport.subscribe(topics);
+        }
+
+        /**
+         * Unsubscribes the shared connection from the given topics no other transport is subscribed to.
+         */
+        @Override
+        public void unsubscribe(String[] topics) throws MqttDrpcTransportException {
+            List<String> unsubscribed = new ArrayList<>();
+            boolean subscribed;
+            synchronized (MqttDrpcSharedConnection.this) {
+                for (String topic : topics) {
+                    SilentCloseable registration = registrations.remove(topic);
+                    if (registration == null) {
+                        continue;
+                    }
+                    registration.close();
+                    if (subscriptions.merge(topic, -1, (count, decrement) -> count + decrement == 0 ? null : count + decrement) == null) {
+                        unsubscribed.add(topic);
+                    }
+                }
+                subscribed = MqttDrpcSharedConnection.this.connected;
+            }
+            if (!unsubscribed.isEmpty() && subscribed) {
+                transport.unsubscribe(unsubscribed.toArray(new String[unsubscribed.size()]));
+            }
+        }
+
+        /**
+         * Hands a message given as a stream to this transport's callback. Messages arriving on the shared connection are
+         * handed over as payload instead, see {@link MqttDrpcSharedConnection#messageArrived(String, byte[])}.
+         */
+        @Override
+        public void accept(String topic, InputStream content) throws IOException {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            try {
+                callback.messageArrived(topic, outputStream.toByteArray());
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+
+    }
+
+}
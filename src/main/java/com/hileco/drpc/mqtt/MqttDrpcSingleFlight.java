@@ -0,0 +1,21 @@
+package com.hileco.drpc.mqtt;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a method of a service interface as idempotent, so that concurrent calls with equal arguments share their work.
+ * <p>
+ * Publishing clients invoke the method once for all concurrent requests with equal arguments, and respond to each of
+ * them with that invocation's result. Calling clients send one request for all concurrent targeted calls with equal
+ * identifier and arguments, and hand its response to each caller.
+ * <p>
+ * Calls join others only while those are in progress, results are not kept afterwards.
+ *
+ * @author Philipp Gayret
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MqttDrpcSingleFlight {
+
+}
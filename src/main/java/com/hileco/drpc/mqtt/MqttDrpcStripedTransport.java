@@ -0,0 +1,168 @@
+package com.hileco.drpc.mqtt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Implementation of {@link MqttDrpcTransport} over multiple connections to the same broker, so that network I/O and
+ * delivery of inbound messages are not limited to the single thread of one connection.
+ * <p>
+ * Every topic belongs to one of the connections, by the given placement or else by its hash. It is published on and
+ * subscribed to over that connection only, which preserves the order of messages per topic. Messages arriving on any connection are handed to the same
+ * callback, so responses find their caller regardless of the connection they arrive on. Messages matching overlapping
+ * subscriptions of different connections are delivered once per connection.
+ * <p>
+ * Connecting connects the connections which are not connected, so that after losing one connection, only that one is
+ * reconnected.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcStripedTransport implements MqttDrpcTransport {
+
+    private final String clientId;
+    private final ToIntFunction<String> placement;
+    private final MqttDrpcTransport[] stripes;
+    private final boolean[] connected;
+
+    /**
+     * @param clientId identifier of this transport's client, see {@link #getClientId()}
+     * @param stripes  connections to spread topics across by their hash, each with its own client identifier
+     */
+    public MqttDrpcStripedTransport(String clientId, MqttDrpcTransport... stripes) {
+        this(clientId, topic -> -1, stripes);
+    }
+
+    /**
+     * @param clientId  identifier of this transport's client, see {@link #getClientId()}
+     * @param placement index of the connection a topic belongs to, or a negative value to place it by its hash
+     * @param stripes   connections to spread topics across, each with its own client identifier
+     */
+    public MqttDrpcStripedTransport(String clientId, ToIntFunction<String> placement, MqttDrpcTransport... stripes) {
+        this.clientId = clientId;
+        this.placement = placement;
+        this.stripes = stripes;
+        this.connected = new boolean[stripes.length];
+    }
+
+    /**
+     * @return the index of the connection the topic belongs to
+     */
+    private int stripe(String topic) {
+        int stripe = placement.applyAsInt(topic);
+        return stripe >= 0 ? stripe % stripes.length : Math.floorMod(topic.hashCode(), stripes.length);
+    }
+
+    /**
+     * @return the given topics, grouped by the index of the connection they belong to
+     */
+    private List<List<String>> group(String[] topics) {
+        List<List<String>> groups = new ArrayList<>(stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (String topic : topics) {
+            groups.get(stripe(topic)).add(topic);
+        }
+        return groups;
+    }
+
+    @Override
+    public String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        for (int i = 0; i < stripes.length; i++) {
+            int stripe = i;
+            stripes[i].setCallback(new Callback() {
+                @Override
+                public void messageArrived(String topic, byte[] payload) throws Exception {
+                    callback.messageArrived(topic, payload);
+                }
+
+                @Override
+                public void connectionLost(Throwable cause) {
+                    synchronized (connected) {
+                        connected[stripe] = false;
+                    }
+                    callback.connectionLost(cause);
+                }
+            });
+        }
+    }
+
+    /**
+     * Connects all connections which are not connected.
+     *
+     * @throws MqttDrpcTransportException on connection failures, with reason code
+     *                                    {@link MqttDrpcTransportException#REASON_CODE_CLIENT_CONNECTED} when all
+     *                                    connections were connected already
+     */
+    @Override
+    public void connect() throws MqttDrpcTransportException {
+        synchronized (connected) {
+            boolean connecting = false;
+            for (int i = 0; i < stripes.length; i++) {
+                if (!connected[i]) {
+                    stripes[i].connect();
+                    connected[i] = true;
+                    connecting = true;
+                }
+            }
+            if (!connecting) {
+                throw new MqttDrpcTransportException(MqttDrpcTransportException.REASON_CODE_CLIENT_CONNECTED);
+            }
+        }
+    }
+
+    /**
+     * Disconnects all connections, the first failure is thrown once all were attempted.
+     */
+    @Override
+    public void disconnect() throws MqttDrpcTransportException {
+        MqttDrpcTransportException failure = null;
+        synchronized (connected) {
+            for (int i = 0; i < stripes.length; i++) {
+                connected[i] = false;
+                try {
+                    stripes[i].disconnect();
+                } catch (MqttDrpcTransportException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload, int qualityOfServiceLevel) throws MqttDrpcTransportException {
+        stripes[stripe(topic)].publish(topic, payload, qualityOfServiceLevel);
+    }
+
+    @Override
+    public void subscribe(String[] topics) throws MqttDrpcTransportException {
+        List<List<String>> groups = group(topics);
+        for (int i = 0; i < stripes.length; i++) {
+            List<String> group = groups.get(i);
+            if (!group.isEmpty()) {
+                stripes[i].subscribe(group.toArray(new String[group.size()]));
+            }
+        }
+    }
+
+    @Override
+    public void unsubscribe(String[] topics) throws MqttDrpcTransportException {
+        List<List<String>> groups = group(topics);
+        for (int i = 0; i < stripes.length; i++) {
+            List<String> group = groups.get(i);
+            if (!group.isEmpty()) {
+                stripes[i].unsubscribe(group.toArray(new String[group.size()]));
+            }
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.hileco.drpc.mqtt;
 
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A slight abstraction for concurrency, this class represents a task that can be reattempted and waited on for completion.
@@ -10,11 +11,12 @@ import java.util.concurrent.ExecutorService;
 public class MqttDrpcTask {
 
     private final MqttDrpcFailureHandler mqttDrpcFailureHandler;
-    private final ExecutorService executorService;
+    private final ScheduledExecutorService executorService;
+    private final MqttDrpcBackoff backoff;
     private final TaskBody taskBody;
     private boolean completed;
     private Exception failure;
-    private int retries;
+    private volatile int retries;
     private final Object monitor;
 
     public static interface TaskBody {
@@ -23,9 +25,10 @@ public class MqttDrpcTask {
 
     }
 
-    public MqttDrpcTask(ExecutorService executorService, MqttDrpcFailureHandler mqttDrpcFailureHandler, TaskBody taskBody) {
+    public MqttDrpcTask(ScheduledExecutorService executorService, MqttDrpcFailureHandler mqttDrpcFailureHandler, MqttDrpcBackoff backoff, TaskBody taskBody) {
         this.executorService = executorService;
         this.mqttDrpcFailureHandler = mqttDrpcFailureHandler;
+        this.backoff = backoff;
         this.taskBody = taskBody;
         this.retries = 0;
         this.failure = null;
@@ -34,29 +37,33 @@ public class MqttDrpcTask {
     }
 
     /**
-     * Queues the task for execution. Consults the {@link #mqttDrpcFailureHandler} on failures.
+     * Queues the task for execution. Consults the {@link #mqttDrpcFailureHandler} on failures, and schedules retries
+     * after a delay decided by the {@link #backoff}.
      */
     public void start() {
-        executorService.submit(() -> {
-            try {
-                taskBody.run();
+        executorService.submit(this::attempt);
+    }
+
+    private void attempt() {
+        try {
+            taskBody.run();
+            synchronized (monitor) {
+                this.completed = true;
+                this.monitor.notifyAll();
+            }
+        } catch (Exception e) {
+            if (mqttDrpcFailureHandler.shouldRetry(e, this)) {
+                long delay = backoff.delay(retries);
+                retries++;
+                executorService.schedule(this::attempt, delay, TimeUnit.NANOSECONDS);
+            } else {
                 synchronized (monitor) {
+                    this.failure = e;
                     this.completed = true;
                     this.monitor.notifyAll();
                 }
-            } catch (Exception e) {
-                if (mqttDrpcFailureHandler.shouldRetry(e, this)) {
-                    retries++;
-                    start();
-                } else {
-                    synchronized (monitor) {
-                        this.failure = e;
-                        this.completed = true;
-                        this.monitor.notifyAll();
-                    }
-                }
             }
-        });
+        }
     }
 
     /**
@@ -78,7 +85,7 @@ public class MqttDrpcTask {
     }
 
     /**
-     * @return amount of resubmits to execution queue
+     * @return amount of retries scheduled
      */
     public int getRetries() {
         return retries;
@@ -0,0 +1,14 @@
+package com.hileco.drpc.mqtt;
+
+/**
+ * An exception for calls which stopped awaiting responses after their timeout passed.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcTimeoutException extends MqttDrpcRuntimeException {
+
+    public MqttDrpcTimeoutException(String message) {
+        super(message, null);
+    }
+
+}
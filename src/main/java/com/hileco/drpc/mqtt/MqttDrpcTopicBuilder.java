@@ -1,11 +1,25 @@
 package com.hileco.drpc.mqtt;
 
+import com.hileco.drpc.generic.ServiceHost;
+
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Constructs topics out of identifyable service operations and callbacks.
  * <p>
  * Services should be published under these topics, callbacks registered under these topics and messages sent to these topics.
+ * <p>
+ * By default services are named by their fully qualified interface name and operations by their method name. The
+ * compact scheme instead names them by short hashes of the interface name and of the full method signature, which are
+ * stable across processes, spare bytes in every message and tell overloaded methods apart. Hashes are computed once for
+ * every interface and method. All clients of a service must use the same scheme.
  *
  * @author Philipp Gayret
  */
@@ -13,17 +27,97 @@ public class MqttDrpcTopicBuilder {
 
     private static final String SERVICE = "s";
     private static final String CALLBACK = "c";
+    private static final String INVALIDATION = "i";
+    private static final int HASH_BYTES = 6;
+
+    private final boolean compact;
+    private final Map<Class<?>, String> services;
+    private final Map<Method, String> operations;
+
+    public MqttDrpcTopicBuilder() {
+        this(false);
+    }
+
+    /**
+     * @param compact whether to name services and operations by hashes rather than by name
+     */
+    public MqttDrpcTopicBuilder(boolean compact) {
+        this.compact = compact;
+        this.services = new ConcurrentHashMap<>();
+        this.operations = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param value value to hash
+     * @return the first bytes of the value's SHA-256 hash, as URL-safe Base64, which contains no topic separators or
+     * wildcards
+     */
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, HASH_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private String service(Class<?> service) {
+        if (!compact) {
+            return service.getName();
+        }
+        return services.computeIfAbsent(service, key -> hash(key.getName()));
+    }
+
+    private String operation(Method operation) {
+        if (!compact) {
+            return operation.getName();
+        }
+        return operations.computeIfAbsent(operation, key -> {
+            StringBuilder signature = new StringBuilder(key.getName()).append('(');
+            Class<?>[] parameterTypes = key.getParameterTypes();
+            for (int i = 0; i < parameterTypes.length; i++) {
+                signature.append(i == 0 ? "" : ",").append(parameterTypes[i].getName());
+            }
+            return hash(signature.append(')').toString());
+        });
+    }
 
     public String operation(Class<?> service, Method operation) {
-        return String.format("%s/%s/%s", SERVICE, service.getName(), operation.getName());
+        return String.format("%s/%s/%s", SERVICE, service(service), operation(operation));
     }
 
     public String operation(Class<?> service, Method operation, String identifier) {
-        return String.format("%s/%s/%s/%s", SERVICE, service.getName(), operation.getName(), identifier);
+        return String.format("%s/%s/%s/%s", SERVICE, service(service), operation(operation), identifier);
+    }
+
+    /**
+     * @return a topic filter matching the topics of all operations of the service, see {@link #operation(Class, Method)}
+     */
+    public String operations(Class<?> service) {
+        return String.format("%s/%s/%s", SERVICE, service(service), ServiceHost.SINGLE_LEVEL);
+    }
+
+    /**
+     * @return a topic filter matching the topics of all operations of the service with the given identifier, see
+     * {@link #operation(Class, Method, String)}
+     */
+    public String operations(Class<?> service, String identifier) {
+        return String.format("%s/%s/%s/%s", SERVICE, service(service), ServiceHost.SINGLE_LEVEL, identifier);
+    }
+
+    /**
+     * @return whether the topic is that of an operation, as opposed to that of a callback or invalidation
+     */
+    public boolean isOperation(String topic) {
+        return topic.startsWith(SERVICE + ServiceHost.SEPARATOR);
     }
 
     public String callback(String correlationId) {
         return String.format("%s/%s", CALLBACK, correlationId);
     }
 
+    public String invalidation(Class<?> service) {
+        return String.format("%s/%s", INVALIDATION, service(service));
+    }
+
 }
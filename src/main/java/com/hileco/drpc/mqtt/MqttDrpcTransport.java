@@ -0,0 +1,86 @@
+package com.hileco.drpc.mqtt;
+
+/**
+ * Specification of the publish/subscribe connection an {@link MqttDrpcClient} relays its messages over.
+ * <p>
+ * Implementations follow MQTT topic semantics, and deliver inbound messages to the given {@link Callback}.
+ *
+ * @author Philipp Gayret
+ */
+public interface MqttDrpcTransport {
+
+    /**
+     * Receiver of anything the transport wants to hand to its client.
+     */
+    public static interface Callback {
+
+        /**
+         * Handles a message which arrived on a topic the transport is subscribed to.
+         *
+         * @param topic   topic the message was published on
+         * @param payload message content
+         */
+        public void messageArrived(String topic, byte[] payload) throws Exception;
+
+        /**
+         * Handles a disconnect between the transport and its broker.
+         *
+         * @param cause disconnect cause
+         */
+        public void connectionLost(Throwable cause);
+
+    }
+
+    /**
+     * @return identifier of this transport's client, unique amongst all clients of the same broker
+     */
+    public String getClientId();
+
+    /**
+     * Sets the receiver for inbound messages and disconnects, must be called before connecting.
+     *
+     * @param callback inbound message handler
+     */
+    public void setCallback(Callback callback);
+
+    /**
+     * Connects to the broker.
+     *
+     * @throws MqttDrpcTransportException on connection failures
+     */
+    public void connect() throws MqttDrpcTransportException;
+
+    /**
+     * Disconnects from the broker.
+     *
+     * @throws MqttDrpcTransportException on disconnection failures
+     */
+    public void disconnect() throws MqttDrpcTransportException;
+
+    /**
+     * Publishes a message to all subscribers of the given topic.
+     *
+     * @param topic                 topic to publish on
+     * @param payload               message content
+     * @param qualityOfServiceLevel MQTT quality of service level to publish with
+     * @throws MqttDrpcTransportException on publishing failures
+     */
+    public void publish(String topic, byte[] payload, int qualityOfServiceLevel) throws MqttDrpcTransportException;
+
+    /**
+     * Begins receiving messages published on any of the given topics.
+     *
+     * @param topics topics to subscribe to
+     * @throws MqttDrpcTransportException on subscription failures
+     */
+    public void subscribe(String[] topics) throws MqttDrpcTransportException;
+
+    /**
+     * Ends receiving messages published on any of the given topics.
+     *
+     * @param topics topics to unsubscribe from
+     * @throws MqttDrpcTransportException on unsubscription failures
+     */
+    public void unsubscribe(String[] topics) throws MqttDrpcTransportException;
+
+}
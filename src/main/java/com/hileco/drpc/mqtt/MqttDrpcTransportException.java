@@ -0,0 +1,39 @@
+package com.hileco.drpc.mqtt;
+
+/**
+ * An exception for failed interactions of a {@link MqttDrpcTransport} with its broker.
+ * <p>
+ * Reason codes are those of the Paho clients, which both MQTT versions of Paho share for client side failures, or the
+ * reason code of the broker's response otherwise.
+ *
+ * @author Philipp Gayret
+ */
+public class MqttDrpcTransportException extends Exception {
+
+    public static final int REASON_CODE_CLIENT_EXCEPTION = 0;
+    public static final int REASON_CODE_CLIENT_CONNECTED = 32100;
+    public static final int REASON_CODE_CLIENT_ALREADY_DISCONNECTED = 32101;
+    public static final int REASON_CODE_CLIENT_NOT_CONNECTED = 32104;
+    public static final int REASON_CODE_CONNECTION_LOST = 32109;
+    public static final int REASON_CODE_MAX_INFLIGHT = 32202;
+
+    private final int reasonCode;
+
+    public MqttDrpcTransportException(int reasonCode) {
+        super("Transport failure with reason code " + reasonCode);
+        this.reasonCode = reasonCode;
+    }
+
+    public MqttDrpcTransportException(int reasonCode, Throwable cause) {
+        super("Transport failure with reason code " + reasonCode + ": " + cause.getMessage(), cause);
+        this.reasonCode = reasonCode;
+    }
+
+    /**
+     * @return reason code of the failure
+     */
+    public int getReasonCode() {
+        return reasonCode;
+    }
+
+}
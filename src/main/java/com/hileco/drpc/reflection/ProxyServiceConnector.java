@@ -33,6 +33,15 @@ public abstract class ProxyServiceConnector<T> implements ServiceConnector<T> {
         return this.call(type, invocation.getMethod(), null, invocation.getArguments(), consumer);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <R> SilentCloseable drpc(Function<T, R> invoker, Consumer<R> consumer, Consumer<RuntimeException> failureConsumer) {
+        Invocation invocation = Invocation.one(type, invoker::apply);
+        return this.call(type, invocation.getMethod(), null, invocation.getArguments(), consumer, failureConsumer);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -41,18 +50,27 @@ public abstract class ProxyServiceConnector<T> implements ServiceConnector<T> {
     public T connect(String identifier) {
         return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, (proxy, method, arguments) -> {
             Object[] results = new Object[]{NO_RESULT};
+            RuntimeException[] failures = new RuntimeException[1];
             SilentCloseable listener = this.call(type, method, identifier, arguments, (result) -> {
                 synchronized (results) {
                     results[0] = result;
                     results.notifyAll();
                 }
+            }, (failure) -> {
+                synchronized (results) {
+                    failures[0] = failure;
+                    results.notifyAll();
+                }
             });
             synchronized (results) {
-                while (results[0] == NO_RESULT) {
+                while (results[0] == NO_RESULT && failures[0] == null) {
                     results.wait();
                 }
                 listener.close();
             }
+            if (results[0] == NO_RESULT) {
+                throw failures[0];
+            }
             return results[0];
         });
     }
@@ -70,4 +88,22 @@ public abstract class ProxyServiceConnector<T> implements ServiceConnector<T> {
      */
     public abstract <R> SilentCloseable call(Class<?> type, Method method, String identifier, Object[] arguments, Consumer<R> consumer);
 
+    /**
+     * Should perform a remote procedure call, any responses must be forwarded to the consumer, and any errors responded
+     * in place of results to the failure consumer. By default errors are not reported, and calls are delegated to
+     * {@link #call(Class, Method, String, Object[], Consumer)}.
+     *
+     * @param type            service connector type
+     * @param method          invoked method
+     * @param identifier      service identifier, if calling a service with an idetifier. leave null otherwise
+     * @param arguments       invocation arguments
+     * @param consumer        response handler
+     * @param failureConsumer error response handler
+     * @param <R>             response type
+     * @return {@link SilentCloseable} used to remove the consumers as response handlers.
+     */
+    public <R> SilentCloseable call(Class<?> type, Method method, String identifier, Object[] arguments, Consumer<R> consumer, Consumer<RuntimeException> failureConsumer) {
+        return this.call(type, method, identifier, arguments, consumer);
+    }
+
 }
@@ -0,0 +1,58 @@
+package com.hileco.drpc.generic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Philipp Gayret
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Verifies that percentiles of uniformly recorded values are reported within the histogram's precision.
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(3_600_000_000L, 3);
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        Assert.assertEquals(100_000, histogram.getTotalCount());
+        Assert.assertEquals(50_000_000, histogram.getValueAtPercentile(50), 50_000);
+        Assert.assertEquals(99_000_000, histogram.getValueAtPercentile(99), 99_000);
+        Assert.assertEquals(99_900_000, histogram.getValueAtPercentile(99.9), 99_900);
+        Assert.assertEquals(100_000_000, histogram.getMax());
+        Assert.assertEquals(1000, histogram.getMin());
+    }
+
+    /**
+     * Verifies that small values are tracked exactly.
+     */
+    @Test
+    public void testExactSmallValues() {
+        LatencyHistogram histogram = new LatencyHistogram(1000, 3);
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        Assert.assertEquals(0, histogram.getValueAtPercentile(33));
+        Assert.assertEquals(1, histogram.getValueAtPercentile(66));
+        Assert.assertEquals(2, histogram.getValueAtPercentile(100));
+    }
+
+    /**
+     * Verifies that adding histograms combines their counts and extremes.
+     */
+    @Test
+    public void testAdd() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(20);
+        first.add(second);
+        Assert.assertEquals(2, first.getTotalCount());
+        Assert.assertEquals(10, first.getMin());
+        Assert.assertEquals(20, first.getMax());
+        Assert.assertEquals(15, first.getMean(), 0.001);
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.hileco.drpc.generic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Philipp Gayret
+ */
+public class PendingCallTableTest {
+
+    private static final ByteArrayInputStream CONTENT = new ByteArrayInputStream(new byte[0]);
+
+    /**
+     * Verifies that responses reach only the pending call with their key, and no longer once it is removed.
+     */
+    @Test
+    public void testAcceptAndRemove() throws IOException {
+        PendingCallTable table = new PendingCallTable();
+        AtomicInteger accepted = new AtomicInteger();
+        SilentCloseable registration = table.register(1, 1, TimeUnit.MINUTES, (topic, content) -> accepted.incrementAndGet(), () -> {
+        });
+        Assert.assertTrue(table.accept(1, CONTENT));
+        Assert.assertFalse(table.accept(2, CONTENT));
+        Assert.assertEquals(1, table.size());
+        registration.close();
+        Assert.assertFalse(table.accept(1, CONTENT));
+        Assert.assertEquals(0, table.size());
+        Assert.assertEquals(1, accepted.get());
+    }
+
+    /**
+     * Verifies that pending calls expire after their timeout, and are removed when they do.
+     */
+    @Test
+    public void testExpiry() throws InterruptedException {
+        PendingCallTable table = new PendingCallTable(16, 10, TimeUnit.MILLISECONDS, 8);
+        CountDownLatch expired = new CountDownLatch(2);
+        long start = System.nanoTime();
+        table.register(1, 50, TimeUnit.MILLISECONDS, (topic, content) -> {
+        }, expired::countDown);
+        // longer than a full rotation of the wheel
+        table.register(2, 150, TimeUnit.MILLISECONDS, (topic, content) -> {
+        }, expired::countDown);
+        table.register(3, 1, TimeUnit.MINUTES, (topic, content) -> {
+        }, Assert::fail).close();
+        Assert.assertTrue(expired.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        Assert.assertEquals(0, table.size());
+    }
+
+    /**
+     * Verifies that the wheel is turned by the same thread once calls are pending again after the table was idle.
+     */
+    @Test
+    public void testWorkerParks() throws InterruptedException {
+        PendingCallTable table = new PendingCallTable(16, 10, TimeUnit.MILLISECONDS, 8);
+        Thread[] workers = new Thread[2];
+        for (int i = 0; i < workers.length; i++) {
+            int index = i;
+            CountDownLatch expired = new CountDownLatch(1);
+            table.register(i, 20, TimeUnit.MILLISECONDS, (topic, content) -> {
+            }, () -> {
+                workers[index] = Thread.currentThread();
+                expired.countDown();
+            });
+            Assert.assertTrue(expired.await(5, TimeUnit.SECONDS));
+            // several ticks without pending calls
+            Thread.sleep(50);
+        }
+        Assert.assertSame(workers[0], workers[1]);
+        Assert.assertTrue(workers[1].isAlive());
+    }
+
+    /**
+     * Verifies that calls beyond the capacity are refused.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testCapacity() {
+        PendingCallTable table = new PendingCallTable(2, 100, TimeUnit.MILLISECONDS, 8);
+        for (int i = 0; i < 3; i++) {
+            table.register(i, 1, TimeUnit.MINUTES, (topic, content) -> {
+            }, () -> {
+            });
+        }
+    }
+
+    /**
+     * Verifies that lookups stay correct across many random registrations and removals.
+     */
+    @Test
+    public void testRandomized() throws IOException {
+        PendingCallTable table = new PendingCallTable(1024, 100, TimeUnit.MILLISECONDS, 8);
+        Map<Long, SilentCloseable> registrations = new HashMap<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(2048);
+            SilentCloseable registration = registrations.remove(key);
+            if (registration != null) {
+                registration.close();
+            } else if (registrations.size() < 1024) {
+                registrations.put(key, table.register(key, 1, TimeUnit.MINUTES, (topic, content) -> {
+                }, () -> {
+                }));
+            }
+            Assert.assertEquals(registrations.size(), table.size());
+        }
+        for (long key = 0; key < 2048; key++) {
+            Assert.assertEquals(registrations.containsKey(key), table.accept(key, CONTENT));
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.hileco.drpc.generic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Philipp Gayret
+ */
+public class ResponseCacheTest {
+
+    /**
+     * Verifies that cached responses, including null responses, are returned until they expire.
+     */
+    @Test
+    public void testTimeToLive() throws InterruptedException {
+        ResponseCache cache = new ResponseCache(16, 50, TimeUnit.MILLISECONDS);
+        cache.put("a", "[1]", null, cache.getGeneration());
+        cache.put("a", "[2]", 2, cache.getGeneration());
+        Assert.assertNull(cache.get("a", "[1]"));
+        Assert.assertEquals(2, cache.get("a", "[2]"));
+        Assert.assertSame(ResponseCache.MISS, cache.get("b", "[2]"));
+        Thread.sleep(100);
+        Assert.assertSame(ResponseCache.MISS, cache.get("a", "[2]"));
+    }
+
+    /**
+     * Verifies that the least recently used response is evicted when the cache is full.
+     */
+    @Test
+    public void testMaximumSize() {
+        ResponseCache cache = new ResponseCache(2, 1, TimeUnit.MINUTES);
+        cache.put("a", "[1]", 1, cache.getGeneration());
+        cache.put("a", "[2]", 2, cache.getGeneration());
+        cache.get("a", "[1]");
+        cache.put("a", "[3]", 3, cache.getGeneration());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.get("a", "[1]"));
+        Assert.assertSame(ResponseCache.MISS, cache.get("a", "[2]"));
+    }
+
+    /**
+     * Verifies that invalidation evicts only the identifier's responses, and that responses requested before it are
+     * not cached after it.
+     */
+    @Test
+    public void testInvalidate() {
+        ResponseCache cache = new ResponseCache(16, 1, TimeUnit.MINUTES);
+        cache.put("a", "[1]", 1, cache.getGeneration());
+        cache.put("b", "[1]", 1, cache.getGeneration());
+        long generation = cache.getGeneration();
+        cache.invalidate("a");
+        cache.put("a", "[2]", 2, generation);
+        Assert.assertSame(ResponseCache.MISS, cache.get("a", "[1]"));
+        Assert.assertSame(ResponseCache.MISS, cache.get("a", "[2]"));
+        Assert.assertEquals(1, cache.get("b", "[1]"));
+    }
+
+}
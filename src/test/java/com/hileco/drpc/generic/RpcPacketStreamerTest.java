@@ -57,4 +57,21 @@ public class RpcPacketStreamerTest {
         Assert.assertEquals(responsePacket.getCorrelationId(), readRpcResponsePacket.getCorrelationId());
     }
 
+    /**
+     * Verifies that serializing and deserialising an error response packet yields the same error, and a null result.
+     */
+    @Test
+    public void testWriteReadRpcErrorResponsePacket() throws IOException {
+        RpcPacketStreamer rpcPacketStreamer = new RpcPacketStreamer(STREAMER);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        RpcResponsePacket responsePacket = new RpcResponsePacket(UUID.randomUUID().toString(), new RpcError("java.lang.IllegalStateException", "Hello world"));
+        rpcPacketStreamer.writeResponse(byteArrayOutputStream, responsePacket);
+        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
+        RpcResponsePacket readRpcResponsePacket = rpcPacketStreamer.readResponse(byteArrayInputStream, Arrays.asList(TestSerializableObject.class));
+        Assert.assertEquals(responsePacket.getCorrelationId(), readRpcResponsePacket.getCorrelationId());
+        Assert.assertEquals("java.lang.IllegalStateException", readRpcResponsePacket.getError().getType());
+        Assert.assertEquals("Hello world", readRpcResponsePacket.getError().getMessage());
+        Assert.assertNull(readRpcResponsePacket.getBody()[0]);
+    }
+
 }
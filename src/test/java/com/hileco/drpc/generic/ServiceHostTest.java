@@ -1,10 +1,16 @@
 package com.hileco.drpc.generic;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 /**
  * @author Philipp Gayret
@@ -92,4 +98,65 @@ public class ServiceHostTest {
         Mockito.verify(mockInputStream, Mockito.times(1)).reset();
     }
 
+    /**
+     * Verifies that topics with single-level and multi-level wildcards receive the messages of matching topics only.
+     */
+    @Test
+    public void testWildcards() throws IOException {
+        ServiceHost serviceHost = new ServiceHost();
+        List<String> singleLevel = new ArrayList<>();
+        List<String> multiLevel = new ArrayList<>();
+        serviceHost.register("s/+/add", (topic, content) -> singleLevel.add(topic));
+        serviceHost.register("s/#", (topic, content) -> multiLevel.add(topic));
+        InputStream mockInputStream = Mockito.mock(InputStream.class);
+        serviceHost.accept("s/calculator/add", mockInputStream);
+        serviceHost.accept("s/calculator/add/1", mockInputStream);
+        serviceHost.accept("s", mockInputStream);
+        serviceHost.accept("c/other", mockInputStream);
+        Assert.assertEquals(Collections.singletonList("s/calculator/add"), singleLevel);
+        Assert.assertEquals(Arrays.asList("s/calculator/add", "s/calculator/add/1", "s"), multiLevel);
+    }
+
+    /**
+     * Verifies that unregistering the last topic below a level removes the level, and that other topics stay.
+     */
+    @Test
+    public void testPruning() throws IOException {
+        ServiceHost serviceHost = new ServiceHost();
+        SilentCloseable deep = serviceHost.register("a/b/c", (topic, content) -> content.reset());
+        serviceHost.register("a", (topic, content) -> content.reset());
+        Assert.assertEquals(2, serviceHost.size());
+        deep.close();
+        deep.close();
+        Assert.assertEquals(1, serviceHost.size());
+        InputStream mockInputStream = Mockito.mock(InputStream.class);
+        serviceHost.accept("a/b/c", mockInputStream);
+        serviceHost.accept("a", mockInputStream);
+        Mockito.verify(mockInputStream, Mockito.times(1)).reset();
+    }
+
+    /**
+     * Verifies that multi-level wildcards are only accepted as the last level.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWildcard() {
+        new ServiceHost().register("s/#/add", (topic, content) -> content.reset());
+    }
+
+    /**
+     * Verifies that receivers registered on multiple topics matching a topic are only included once.
+     */
+    @Test
+    public void testReceivers() {
+        ServiceHost serviceHost = new ServiceHost();
+        MessageReceiver receiver = (topic, content) -> content.reset();
+        MessageReceiver other = (topic, content) -> content.reset();
+        serviceHost.register("s/calculator/add", receiver);
+        serviceHost.register("s/+/add", receiver);
+        serviceHost.register("s/#", other);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(receiver, other)), serviceHost.receivers("s/calculator/add"));
+        Assert.assertEquals(Collections.singleton(other), serviceHost.receivers("s/calculator"));
+        Assert.assertTrue(serviceHost.receivers("c/calculator").isEmpty());
+    }
+
 }
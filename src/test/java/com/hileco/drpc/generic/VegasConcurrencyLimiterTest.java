@@ -0,0 +1,56 @@
+package com.hileco.drpc.generic;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Philipp Gayret
+ */
+public class VegasConcurrencyLimiterTest {
+
+    /**
+     * Verifies that the limit grows while fully used at a steady latency.
+     */
+    @Test
+    public void testGrowsWithoutQueueing() {
+        VegasConcurrencyLimiter limiter = new VegasConcurrencyLimiter(10, 100);
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < limiter.getLimit(); j++) {
+                Assert.assertTrue(limiter.tryAcquire());
+            }
+            while (limiter.getInFlight() > 0) {
+                limiter.release(1000);
+            }
+        }
+        Assert.assertEquals(100, limiter.getLimit());
+    }
+
+    /**
+     * Verifies that the limit shrinks when latencies grow, until the estimated queue is small enough to tolerate.
+     */
+    @Test
+    public void testShrinksWhenQueueing() {
+        VegasConcurrencyLimiter limiter = new VegasConcurrencyLimiter(50, 100);
+        Assert.assertTrue(limiter.tryAcquire());
+        limiter.release(1000);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+            limiter.release(100000);
+        }
+        Assert.assertTrue(limiter.getLimit() <= 6);
+    }
+
+    /**
+     * Verifies that operations beyond the limit are not admitted.
+     */
+    @Test
+    public void testRejectsBeyondLimit() {
+        VegasConcurrencyLimiter limiter = new VegasConcurrencyLimiter(2, 2);
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+        limiter.release(1000);
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+}
@@ -0,0 +1,405 @@
+package com.hileco.drpc.mqtt;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A lightweight MQTT 3.1.1 broker which listens on the loopback interface, for use by tests and benchmarks which need
+ * a real MQTT client code path without relying on any outside service.
+ * <p>
+ * Supports quality of service levels 0, 1 and 2 in both directions, subscriptions with {@code +} and {@code #}
+ * wildcards, retained messages and keep alive pings. Also accepts MQTT 3.1 clients. Every session is treated as a clean
+ * session; wills, authentication and redelivery of unacknowledged messages are not supported.
+ *
+ * @author Philipp Gayret
+ */
+public class EmbeddedMqttBroker implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedMqttBroker.class);
+
+    private static final int CONNECT = 1;
+    private static final int CONNACK = 2;
+    private static final int PUBLISH = 3;
+    private static final int PUBACK = 4;
+    private static final int PUBREC = 5;
+    private static final int PUBREL = 6;
+    private static final int PUBCOMP = 7;
+    private static final int SUBSCRIBE = 8;
+    private static final int SUBACK = 9;
+    private static final int UNSUBSCRIBE = 10;
+    private static final int UNSUBACK = 11;
+    private static final int PINGREQ = 12;
+    private static final int PINGRESP = 13;
+    private static final int DISCONNECT = 14;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executorService;
+    private final Map<String, Session> sessions;
+    private final Map<String, Message> retained;
+    private volatile boolean running;
+
+    private static class Message {
+
+        private final String topic;
+        private final byte[] payload;
+        private final int qos;
+
+        private Message(String topic, byte[] payload, int qos) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+        }
+
+    }
+
+    /**
+     * Starts a broker on an available port of the loopback interface.
+     *
+     * @throws IOException when no socket could be bound
+     */
+    public EmbeddedMqttBroker() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Starts a broker on the given port of the loopback interface.
+     *
+     * @param port port to listen on, or 0 for any available port
+     * @throws IOException when no socket could be bound
+     */
+    public EmbeddedMqttBroker(int port) throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.executorService = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "EmbeddedMqttBroker-" + serverSocket.getLocalPort());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sessions = new ConcurrentHashMap<>();
+        this.retained = new ConcurrentHashMap<>();
+        this.running = true;
+        this.executorService.submit(this::acceptConnections);
+    }
+
+    /**
+     * @return broker URL to connect MQTT clients to
+     */
+    public String getUrl() {
+        return "tcp://" + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops listening, and closes all client connections.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOG.warn("Closing the server socket failed", e);
+        }
+        for (Session session : sessions.values()) {
+            session.close();
+        }
+        executorService.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executorService.submit(new Session(socket));
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Accepting a connection failed", e);
+                }
+            }
+        }
+    }
+
+    private void route(Message message) {
+        for (Session session : sessions.values()) {
+            int qos = session.matchingQos(message.topic);
+            if (qos >= 0) {
+                session.send(message, Math.min(qos, message.qos), false);
+            }
+        }
+    }
+
+    static boolean matches(String filter, String topic) {
+        String[] filterLevels = filter.split("/", -1);
+        String[] topicLevels = topic.split("/", -1);
+        if (topic.startsWith("$") && (filterLevels[0].equals("+") || filterLevels[0].equals("#"))) {
+            return false;
+        }
+        for (int i = 0; i < filterLevels.length; i++) {
+            if (filterLevels[i].equals("#")) {
+                return true;
+            }
+            if (i >= topicLevels.length) {
+                return false;
+            }
+            if (!filterLevels[i].equals("+") && !filterLevels[i].equals(topicLevels[i])) {
+                return false;
+            }
+        }
+        return filterLevels.length == topicLevels.length;
+    }
+
+    /**
+     * A single client connection, reads packets on its own thread, writes packets on any thread.
+     */
+    private class Session implements Runnable {
+
+        private final Socket socket;
+        private final DataInputStream input;
+        private final DataOutputStream output;
+        private final Map<String, Integer> subscriptions;
+        private final Set<Integer> receivedQos2;
+        private String clientId;
+        private int nextPacketId;
+
+        private Session(Socket socket) throws IOException {
+            this.socket = socket;
+            this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.subscriptions = new ConcurrentHashMap<>();
+            this.receivedQos2 = new HashSet<>();
+            this.nextPacketId = 0;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    int header = input.read();
+                    if (header < 0) {
+                        break;
+                    }
+                    int remainingLength = readRemainingLength();
+                    byte[] body = new byte[remainingLength];
+                    input.readFully(body);
+                    if (!handle(header >> 4, header & 0x0F, new DataInputStream(new ByteArrayInputStream(body)))) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                LOG.debug("Connection of client {} ended", clientId, e);
+            } finally {
+                close();
+            }
+        }
+
+        private boolean handle(int type, int flags, DataInputStream body) throws IOException {
+            switch (type) {
+                case CONNECT:
+                    connect(body);
+                    return true;
+                case PUBLISH:
+                    publish(flags, body);
+                    return true;
+                case PUBACK:
+                case PUBCOMP:
+                    return true;
+                case PUBREC:
+                    write(PUBREL << 4 | 0x02, packetId(body.readUnsignedShort()));
+                    return true;
+                case PUBREL:
+                    int packetId = body.readUnsignedShort();
+                    synchronized (receivedQos2) {
+                        receivedQos2.remove(packetId);
+                    }
+                    write(PUBCOMP << 4, packetId(packetId));
+                    return true;
+                case SUBSCRIBE:
+                    subscribe(body);
+                    return true;
+                case UNSUBSCRIBE:
+                    unsubscribe(body);
+                    return true;
+                case PINGREQ:
+                    write(PINGRESP << 4, new byte[0]);
+                    return true;
+                case DISCONNECT:
+                    return false;
+                default:
+                    throw new IOException("Unsupported packet type " + type);
+            }
+        }
+
+        private void connect(DataInputStream body) throws IOException {
+            String protocolName = body.readUTF();
+            int protocolLevel = body.readUnsignedByte();
+            int connectFlags = body.readUnsignedByte();
+            body.readUnsignedShort(); // keep alive, not enforced
+            clientId = body.readUTF();
+            if (!("MQTT".equals(protocolName) && protocolLevel == 4) && !("MQIsdp".equals(protocolName) && protocolLevel == 3)) {
+                write(CONNACK << 4, new byte[]{0, 1});
+                throw new IOException("Unsupported protocol " + protocolName + " level " + protocolLevel);
+            }
+            if (clientId.isEmpty()) {
+                clientId = UUID.randomUUID().toString();
+            }
+            Session previous = sessions.put(clientId, this);
+            if (previous != null) {
+                previous.close();
+            }
+            write(CONNACK << 4, new byte[]{0, 0});
+            if ((connectFlags & 0x04) != 0) {
+                body.readUTF(); // will topic
+                body.skipBytes(body.readUnsignedShort()); // will message
+            }
+        }
+
+        private void publish(int flags, DataInputStream body) throws IOException {
+            int qos = (flags >> 1) & 0x03;
+            boolean retain = (flags & 0x01) != 0;
+            String topic = body.readUTF();
+            int packetId = qos > 0 ? body.readUnsignedShort() : 0;
+            byte[] payload = new byte[body.available()];
+            body.readFully(payload);
+            Message message = new Message(topic, payload, qos);
+            boolean duplicate = false;
+            if (qos == 2) {
+                synchronized (receivedQos2) {
+                    duplicate = !receivedQos2.add(packetId);
+                }
+            }
+            if (!duplicate) {
+                if (retain) {
+                    if (payload.length == 0) {
+                        retained.remove(topic);
+                    } else {
+                        retained.put(topic, message);
+                    }
+                }
+                route(message);
+            }
+            if (qos == 1) {
+                write(PUBACK << 4, packetId(packetId));
+            } else if (qos == 2) {
+                write(PUBREC << 4, packetId(packetId));
+            }
+        }
+
+        private void subscribe(DataInputStream body) throws IOException {
+            int packetId = body.readUnsignedShort();
+            List<String> filters = new ArrayList<>();
+            ByteArrayOutputStream granted = new ByteArrayOutputStream();
+            granted.write(packetId(packetId));
+            while (body.available() > 0) {
+                String filter = body.readUTF();
+                int qos = Math.min(body.readUnsignedByte() & 0x03, 2);
+                subscriptions.put(filter, qos);
+                filters.add(filter);
+                granted.write(qos);
+            }
+            write(SUBACK << 4, granted.toByteArray());
+            for (Message message : retained.values()) {
+                for (String filter : filters) {
+                    if (matches(filter, message.topic)) {
+                        send(message, Math.min(subscriptions.get(filter), message.qos), true);
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void unsubscribe(DataInputStream body) throws IOException {
+            int packetId = body.readUnsignedShort();
+            while (body.available() > 0) {
+                subscriptions.remove(body.readUTF());
+            }
+            write(UNSUBACK << 4, packetId(packetId));
+        }
+
+        /**
+         * @return highest quality of service level of the subscriptions matching the topic, or -1 when none match
+         */
+        private int matchingQos(String topic) {
+            int qos = -1;
+            for (Map.Entry<String, Integer> subscription : subscriptions.entrySet()) {
+                if (subscription.getValue() > qos && matches(subscription.getKey(), topic)) {
+                    qos = subscription.getValue();
+                }
+            }
+            return qos;
+        }
+
+        private void send(Message message, int qos, boolean retain) {
+            try {
+                ByteArrayOutputStream packet = new ByteArrayOutputStream(message.payload.length + message.topic.length() + 8);
+                DataOutputStream packetOutput = new DataOutputStream(packet);
+                packetOutput.writeUTF(message.topic);
+                synchronized (output) {
+                    if (qos > 0) {
+                        nextPacketId = nextPacketId % 65535 + 1;
+                        packetOutput.writeShort(nextPacketId);
+                    }
+                    packetOutput.write(message.payload);
+                    write(PUBLISH << 4 | qos << 1 | (retain ? 1 : 0), packet.toByteArray());
+                }
+            } catch (IOException e) {
+                LOG.debug("Sending to client {} failed", clientId, e);
+                close();
+            }
+        }
+
+        private byte[] packetId(int packetId) {
+            return new byte[]{(byte) (packetId >> 8), (byte) packetId};
+        }
+
+        private int readRemainingLength() throws IOException {
+            int value = 0;
+            int multiplier = 1;
+            int encoded;
+            do {
+                encoded = input.readUnsignedByte();
+                value += (encoded & 0x7F) * multiplier;
+                multiplier *= 128;
+            } while ((encoded & 0x80) != 0);
+            return value;
+        }
+
+        private void write(int header, byte[] body) throws IOException {
+            synchronized (output) {
+                output.write(header);
+                int length = body.length;
+                do {
+                    int encoded = length % 128;
+                    length /= 128;
+                    output.write(length > 0 ? encoded | 0x80 : encoded);
+                } while (length > 0);
+                output.write(body);
+                output.flush();
+            }
+        }
+
+        private void close() {
+            if (clientId != null) {
+                sessions.remove(clientId, this);
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOG.debug("Closing connection of client {} failed", clientId, e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.hileco.drpc.mqtt;
+
+import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Philipp Gayret
+ */
+public class EmbeddedMqttBrokerTest {
+
+    private EmbeddedMqttBroker broker;
+    private MqttClient publisher;
+    private MqttClient subscriber;
+    private BlockingQueue<String> received;
+
+    @Before
+    public void before() throws IOException, MqttException {
+        broker = new EmbeddedMqttBroker();
+        received = new LinkedBlockingQueue<>();
+        publisher = connect();
+        subscriber = connect();
+        subscriber.setCallback(new MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                received.add(topic + "=" + new String(message.getPayload()) + (message.isRetained() ? " (retained)" : ""));
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
+    }
+
+    @After
+    public void after() throws MqttException {
+        publisher.disconnect();
+        subscriber.disconnect();
+        broker.close();
+    }
+
+    private MqttClient connect() throws MqttException {
+        MqttClient client = new MqttClient(broker.getUrl(), UUID.randomUUID().toString(), new MemoryPersistence());
+        client.connect();
+        return client;
+    }
+
+    /**
+     * Verifies that messages published and subscribed at every quality of service level arrive, completing each handshake.
+     */
+    @Test
+    public void testQualityOfServiceLevels() throws MqttException, InterruptedException {
+        for (int qos = 0; qos <= 2; qos++) {
+            subscriber.subscribe("topic/" + qos, qos);
+            MqttMessage message = new MqttMessage(("message " + qos).getBytes());
+            message.setQos(qos);
+            publisher.publish("topic/" + qos, message);
+            Assert.assertEquals("topic/" + qos + "=message " + qos, received.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Verifies that wildcard subscriptions receive matching messages only.
+     */
+    @Test
+    public void testWildcards() throws MqttException, InterruptedException {
+        subscriber.subscribe(new String[]{"s/+/add", "c/#"});
+        publisher.publish("s/other/subtract", new MqttMessage("no".getBytes()));
+        publisher.publish("s/calculator/add", new MqttMessage("yes".getBytes()));
+        publisher.publish("c/client/1", new MqttMessage("yes".getBytes()));
+        Assert.assertEquals("s/calculator/add=yes", received.poll(5, TimeUnit.SECONDS));
+        Assert.assertEquals("c/client/1=yes", received.poll(5, TimeUnit.SECONDS));
+        Assert.assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Verifies that a retained message is delivered to later subscribers, and can be cleared.
+     */
+    @Test
+    public void testRetainedMessages() throws MqttException, InterruptedException {
+        publisher.publish("retained/topic", "value".getBytes(), 1, true);
+        subscriber.subscribe("retained/#");
+        Assert.assertEquals("retained/topic=value (retained)", received.poll(5, TimeUnit.SECONDS));
+        subscriber.unsubscribe("retained/#");
+        publisher.publish("retained/topic", new byte[0], 1, true);
+        subscriber.subscribe("retained/#");
+        Assert.assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+}
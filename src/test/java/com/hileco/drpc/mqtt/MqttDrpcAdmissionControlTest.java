@@ -0,0 +1,63 @@
+package com.hileco.drpc.mqtt;
+
+import com.hileco.drpc.generic.FixedConcurrencyLimiter;
+import com.hileco.drpc.metrics.SimpleMetricsRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcAdmissionControlTest {
+
+    private static final String identifier = "12345";
+
+    /**
+     * Verifies that calls beyond a service's concurrency limit are rejected immediately, while admitted calls complete.
+     */
+    @Test
+    public void testOverloaded() throws Exception {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        MqttDrpcClient client = new MqttDrpcClientBuilder()
+                .withClientId("admission")
+                .withMetricsRegistry(registry)
+                .withServiceExecutorService(Executors.newCachedThreadPool())
+                .withServiceLimiter(type -> new FixedConcurrencyLimiter(1))
+                .build(new MqttDrpcMemoryBroker());
+        client.connect();
+        CountDownLatch invoked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        client.publish(CalculatorService.class, identifier, (a, b) -> {
+            invoked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return a + b;
+        });
+        CalculatorService remoteCalculator = client.connector(CalculatorService.class).connect(identifier);
+        Future<Integer> admitted = callers.submit(() -> remoteCalculator.add(1, 2));
+        invoked.await();
+        try {
+            remoteCalculator.add(3, 4);
+            Assert.fail();
+        } catch (MqttDrpcOverloadedException e) {
+            Assert.assertEquals(MqttDrpcOverloadedException.class.getName(), e.getType());
+        }
+        release.countDown();
+        Assert.assertEquals(3, (int) admitted.get());
+        String tags = "{client=admission,interface=" + CalculatorService.class.getName() + ",method=add(java.lang.Integer,java.lang.Integer)}";
+        Assert.assertEquals(1, registry.getCounters().get(MqttDrpcMetrics.SERVICE_REJECTIONS + tags).sum());
+        Assert.assertEquals(0, registry.getGauges().get(MqttDrpcMetrics.CLIENT_CALLS_IN_FLIGHT + "{client=admission}").getAsLong());
+        callers.shutdown();
+        client.disconnect();
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.hileco.drpc.mqtt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcBatchedTest {
+
+    private static final String identifier = "12345";
+    private static final int CALLS = 20;
+
+    public static interface DeviceService {
+
+        @MqttDrpcBatched(method = "readAll", window = 200, maximumSize = 10)
+        public Integer read(Integer device);
+
+    }
+
+    /**
+     * Calls the service concurrently, for the devices 0 up to {@link #CALLS}.
+     *
+     * @return the futures of the calls, in order of device
+     */
+    private static List<Future<Integer>> readConcurrently(MqttDrpcClient callingClient, ExecutorService callers) {
+        DeviceService remoteDevices = callingClient.connector(DeviceService.class).connect(identifier);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < CALLS; i++) {
+            int device = i;
+            results.add(callers.submit(() -> remoteDevices.read(device)));
+        }
+        return results;
+    }
+
+    /**
+     * Verifies that concurrent requests are invoked in batches of at most the maximum size, and that each caller
+     * receives its own result.
+     */
+    @Test
+    public void testBatches() throws Exception {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+        serviceClient.connect();
+        serviceClient.publish(DeviceService.class, identifier, new DeviceService() {
+            @Override
+            public Integer read(Integer device) {
+                throw new UnsupportedOperationException();
+            }
+
+            public List<Integer> readAll(List<Object[]> arguments) {
+                batchSizes.add(arguments.size());
+                List<Integer> readings = new ArrayList<>();
+                for (Object[] each : arguments) {
+                    readings.add((Integer) each[0] * 10);
+                }
+                return readings;
+            }
+        });
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        ExecutorService callers = Executors.newFixedThreadPool(CALLS);
+        try {
+            List<Future<Integer>> results = readConcurrently(callingClient, callers);
+            for (int i = 0; i < CALLS; i++) {
+                Assert.assertEquals(Integer.valueOf(i * 10), results.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        Assert.assertEquals(CALLS, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        Assert.assertTrue(batchSizes.size() < CALLS);
+        Assert.assertTrue(Collections.max(batchSizes) <= 10);
+        Assert.assertEquals((long) batchSizes.size(), serviceClient.getMetrics().serviceBatchSize(DeviceService.class, DeviceService.class.getMethod("read", Integer.class)).getTotalCount());
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that all requests of a batch fail when its batch method returns a result for only some of them.
+     */
+    @Test
+    public void testMissingResults() throws Exception {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+        serviceClient.connect();
+        serviceClient.publish(DeviceService.class, identifier, new DeviceService() {
+            @Override
+            public Integer read(Integer device) {
+                throw new UnsupportedOperationException();
+            }
+
+            public List<Integer> readAll(List<Object[]> arguments) {
+                return Collections.singletonList(0);
+            }
+        });
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        ExecutorService callers = Executors.newFixedThreadPool(CALLS);
+        try {
+            for (Future<Integer> result : readConcurrently(callingClient, callers)) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    Assert.fail();
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof MqttDrpcRemoteException);
+                }
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that batches ending their window are not invoked on the client's scheduled executor service when there
+     * is no service executor.
+     */
+    @Test
+    public void testWindowThread() throws Exception {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        ScheduledExecutorService executorService = Executors.newScheduledThreadPool(1, runnable -> new Thread(runnable, "scheduled"));
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().withExecutorService(executorService).build(broker);
+        serviceClient.connect();
+        serviceClient.publish(DeviceService.class, identifier, new DeviceService() {
+            @Override
+            public Integer read(Integer device) {
+                throw new UnsupportedOperationException();
+            }
+
+            public List<Integer> readAll(List<Object[]> arguments) {
+                threads.add(Thread.currentThread().getName());
+                return Collections.nCopies(arguments.size(), 0);
+            }
+        });
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        DeviceService remoteDevices = callingClient.connector(DeviceService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(0), remoteDevices.read(1));
+        Assert.assertEquals(1, threads.size());
+        Assert.assertNotEquals("scheduled", threads.get(0));
+        serviceClient.disconnect();
+        callingClient.disconnect();
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Verifies that implementations without the batch method are refused when published for many identifiers.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMany() throws MqttDrpcTransportException {
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(new MqttDrpcMemoryBroker());
+        DeviceService implementation = device -> device;
+        serviceClient.publish(DeviceService.class, Arrays.asList("1", "2"), key -> implementation);
+    }
+
+    /**
+     * Verifies that implementations without the batch method are refused when published.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() throws MqttDrpcTransportException {
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(new MqttDrpcMemoryBroker());
+        serviceClient.publish(DeviceService.class, identifier, device -> device);
+    }
+
+}
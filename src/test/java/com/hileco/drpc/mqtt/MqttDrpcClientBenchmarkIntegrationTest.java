@@ -1,13 +1,14 @@
 package com.hileco.drpc.mqtt;
 
-import com.hileco.drpc.generic.ServiceConnector;
-import org.eclipse.paho.client.mqttv3.MqttException;
+import com.hileco.drpc.load.LoadGeneratorBuilder;
+import com.hileco.drpc.load.LoadReport;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -23,7 +24,7 @@ public class MqttDrpcClientBenchmarkIntegrationTest {
     /**
      * Verifies that a client can publish a service at a broker and call its own service via the broker.
      * <p>
-     * Performs this verification serially until a limit is reached and then outputs some basic benchmarks.
+     * Performs this verification concurrently for a while and then outputs throughput and latency percentiles.
      *
      * Client --(request)--> Broker --(request)--> Service
      *                                                |
@@ -32,27 +33,61 @@ public class MqttDrpcClientBenchmarkIntegrationTest {
      */
     @Ignore(value = "Integration test, relies on a local broker")
     @Test
-    public void test() throws MqttException, InterruptedException {
+    public void test() throws MqttDrpcTransportException, InterruptedException {
         MqttDrpcClient mqttDrpcClient = new MqttDrpcClientBuilder().build(broker);
         mqttDrpcClient.connect();
+        LoadReport report = benchmark(mqttDrpcClient, 10, TimeUnit.SECONDS);
+        Assert.assertEquals(0, report.getErrors());
+    }
+
+    /**
+     * Performs the same verification as {@link #test()} briefly over an in-memory broker, measuring the library's own
+     * overhead without any network or broker noise.
+     */
+    @Test
+    public void testInMemory() throws MqttDrpcTransportException, InterruptedException {
+        MqttDrpcClient mqttDrpcClient = new MqttDrpcClientBuilder().build(new MqttDrpcMemoryBroker());
+        mqttDrpcClient.connect();
+        LoadReport report = benchmark(mqttDrpcClient, 1, TimeUnit.SECONDS);
+        Assert.assertEquals(0, report.getErrors());
+        Assert.assertTrue(report.getCalls() > 0);
+        mqttDrpcClient.disconnect();
+    }
+
+    /**
+     * Performs the same verification as {@link #test()} briefly over an embedded broker, measuring the real MQTT client
+     * code path including quality of service handshakes.
+     */
+    @Test
+    public void testEmbeddedBroker() throws MqttDrpcTransportException, InterruptedException, IOException {
+        try (EmbeddedMqttBroker embeddedMqttBroker = new EmbeddedMqttBroker()) {
+            MqttDrpcClient mqttDrpcClient = new MqttDrpcClientBuilder().build(embeddedMqttBroker.getUrl());
+            mqttDrpcClient.connect();
+            LoadReport report = benchmark(mqttDrpcClient, 1, TimeUnit.SECONDS);
+            Assert.assertEquals(0, report.getErrors());
+            Assert.assertTrue(report.getCalls() > 0);
+            mqttDrpcClient.disconnect();
+        }
+    }
+
+    private LoadReport benchmark(MqttDrpcClient mqttDrpcClient, long duration, TimeUnit unit) throws InterruptedException {
         mqttDrpcClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
-        ServiceConnector<CalculatorService> connector = mqttDrpcClient.connector(CalculatorService.class);
-        CalculatorService remoteCalculator = connector.connect(identifier);
+        CalculatorService remoteCalculator = mqttDrpcClient.connector(CalculatorService.class).connect(identifier);
         LOG.info("Starting test, this may take a while");
-        Long start = System.currentTimeMillis();
-        int limit = 10000;
-        for (int j = 0; j < limit; j++) {
-            Integer a = (int) (Math.random() * 100);
-            Integer b = (int) (Math.random() * 100);
-            Integer result = remoteCalculator.add(a, b);
-            Assert.assertTrue(result == a + b);
-        }
-        Long diff = System.currentTimeMillis() - start;
-        // multiply by two, as a message is sent both per request and response
-        Long micros = TimeUnit.MILLISECONDS.toMicros(diff) / (limit * 2);
-        LOG.info("Messages sent: {}", limit * 2);
-        LOG.info("Time per message: {} microseconds", micros);
-        LOG.info("Service invocations per second: {}", TimeUnit.SECONDS.toMicros(1) / micros);
+        LoadReport report = new LoadGeneratorBuilder()
+                .withDuration(duration, unit)
+                .withWarmup(duration / 2, unit)
+                .withCall("add", 1, payload -> {
+                    Integer a = (int) (Math.random() * 100);
+                    Integer b = (int) (Math.random() * 100);
+                    if (!remoteCalculator.add(a, b).equals(a + b)) {
+                        throw new IllegalStateException("Incorrect result for " + a + " + " + b);
+                    }
+                })
+                .build()
+                .run();
+        LOG.info("Results in microseconds:\n{}", report);
+        return report;
     }
 
 }
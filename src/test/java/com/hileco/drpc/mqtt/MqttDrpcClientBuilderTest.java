@@ -0,0 +1,68 @@
+package com.hileco.drpc.mqtt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcClientBuilderTest {
+
+    private static final String MQTT5_PACKAGE = "org.eclipse.paho.mqttv5.";
+
+    /**
+     * A class loader of the test class path, without the optional MQTT 5 client on it.
+     */
+    private static class WithoutMqtt5ClassLoader extends URLClassLoader {
+
+        private WithoutMqtt5ClassLoader(URL[] urls) {
+            // parented by the extension or platform class loader, so that only the JDK is shared with the test
+            super(urls, ClassLoader.getSystemClassLoader().getParent());
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (name.startsWith(MQTT5_PACKAGE)) {
+                throw new ClassNotFoundException(name);
+            }
+            return super.findClass(name);
+        }
+
+    }
+
+    private static URL[] classPath() throws MalformedURLException {
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        URL[] urls = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            urls[i] = new File(entries[i]).toURI().toURL();
+        }
+        return urls;
+    }
+
+    /**
+     * Verifies that clients are built and connected without the optional MQTT 5 client on the class path.
+     */
+    @Test
+    public void testWithoutMqtt5() throws Exception {
+        try (URLClassLoader classLoader = new WithoutMqtt5ClassLoader(classPath())) {
+            try {
+                classLoader.loadClass(MQTT5_PACKAGE + "client.MqttClient");
+                Assert.fail();
+            } catch (ClassNotFoundException expected) {
+                // the MQTT 5 client is absent
+            }
+            Class<?> builderType = classLoader.loadClass(MqttDrpcClientBuilder.class.getName());
+            Class<?> brokerType = classLoader.loadClass(MqttDrpcMemoryBroker.class.getName());
+            Object builder = builderType.getConstructor().newInstance();
+            Object client = builderType.getMethod("build", brokerType).invoke(builder, brokerType.getConstructor().newInstance());
+            client.getClass().getMethod("connect").invoke(client);
+            client.getClass().getMethod("disconnect").invoke(client);
+        }
+    }
+
+}
@@ -2,27 +2,41 @@ package com.hileco.drpc.mqtt;
 
 import com.hileco.drpc.generic.ServiceConnector;
 import com.hileco.drpc.generic.SilentCloseable;
-import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.After;
 import org.junit.Assert;
-import org.junit.Ignore;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
 /**
  * @author Philipp Gayret
  */
 public class MqttDrpcClientIntegrationTest {
 
-    private static final String broker = "tcp://localhost.org:1883";
     private static final String identifier = "12345";
 
+    private EmbeddedMqttBroker broker;
+
+    @Before
+    public void before() throws IOException {
+        broker = new EmbeddedMqttBroker();
+    }
+
+    @After
+    public void after() {
+        broker.close();
+    }
+
     /**
      * A basic test which verifies whether the whole process of publishing a service onto a broker, then calling
      * that service via the broker and retrieving a response via the broker, functions.
      */
-    @Ignore(value = "Integration test, relies on a local broker")
     @Test
-    public void test() throws MqttException {
-        MqttDrpcClient mqttDrpcClient = new MqttDrpcClientBuilder().build(broker);
+    public void test() throws MqttDrpcTransportException {
+        MqttDrpcClient mqttDrpcClient = new MqttDrpcClientBuilder().build(broker.getUrl());
         mqttDrpcClient.connect();
         SilentCloseable publishedService = mqttDrpcClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
         ServiceConnector<CalculatorService> connector = mqttDrpcClient.connector(CalculatorService.class);
@@ -32,6 +46,29 @@ public class MqttDrpcClientIntegrationTest {
         Integer result = remoteCalculator.add(a, b);
         Assert.assertTrue(result == a + b);
         publishedService.close();
+        mqttDrpcClient.disconnect();
+    }
+
+    /**
+     * Verifies that calls succeed with quality of service level 2 messages persisted in a memory-mapped log.
+     */
+    @Test
+    public void testMappedPersistence() throws MqttDrpcTransportException, IOException {
+        File directory = Files.createTempDirectory("mqtt-drpc").toFile();
+        MqttDrpcClient mqttDrpcClient = new MqttDrpcClientBuilder()
+                .withMqttClientPersistence(new MqttDrpcMappedPersistence(directory))
+                .build(broker.getUrl());
+        mqttDrpcClient.connect();
+        mqttDrpcClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        CalculatorService remoteCalculator = mqttDrpcClient.connector(CalculatorService.class).connect(identifier);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(Integer.valueOf(i + 1), remoteCalculator.add(i, 1));
+        }
+        mqttDrpcClient.disconnect();
+        for (File file : directory.listFiles()) {
+            Assert.assertTrue(file.delete());
+        }
+        Assert.assertTrue(directory.delete());
     }
 
 }
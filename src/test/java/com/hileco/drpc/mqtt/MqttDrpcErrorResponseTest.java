@@ -0,0 +1,112 @@
+package com.hileco.drpc.mqtt;
+
+import com.hileco.drpc.generic.SilentCloseable;
+import com.hileco.drpc.metrics.SimpleMetricsRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcErrorResponseTest {
+
+    private static final String identifier = "12345";
+
+    /**
+     * Verifies that an exception thrown by a service is responded to the caller, without leaving the call pending.
+     */
+    @Test
+    public void testTargetedFailure() throws MqttDrpcTransportException {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withClientId("errors").withMetricsRegistry(registry).build(new MqttDrpcMemoryBroker());
+        client.connect();
+        client.publish(CalculatorService.class, identifier, (a, b) -> {
+            throw new IllegalStateException("Out of order");
+        });
+        CalculatorService remoteCalculator = client.connector(CalculatorService.class).connect(identifier);
+        try {
+            remoteCalculator.add(1, 2);
+            Assert.fail();
+        } catch (MqttDrpcRemoteException e) {
+            Assert.assertEquals(IllegalStateException.class.getName(), e.getType());
+            Assert.assertTrue(e.getMessage().contains("Out of order"));
+        }
+        String tags = "{client=errors,interface=" + CalculatorService.class.getName() + ",method=add(java.lang.Integer,java.lang.Integer)}";
+        Assert.assertEquals(1, registry.getCounters().get(MqttDrpcMetrics.SERVICE_ERRORS + tags).sum());
+        Assert.assertEquals(0, registry.getGauges().get(MqttDrpcMetrics.CLIENT_CALLS_IN_FLIGHT + "{client=errors}").getAsLong());
+        Assert.assertEquals(0, registry.getGauges().get(MqttDrpcMetrics.CLIENT_CALLBACKS_PENDING + "{client=errors}").getAsLong());
+        client.disconnect();
+    }
+
+    /**
+     * Verifies that unreadable requests and responses are dropped, without dropping the connection of the client.
+     */
+    @Test
+    public void testMalformedMessages() throws MqttDrpcTransportException, NoSuchMethodException {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withClientId("malformed").withMetricsRegistry(registry).build(broker);
+        client.connect();
+        client.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        MqttDrpcTopicBuilder topicBuilder = new MqttDrpcTopicBuilder();
+        MqttDrpcMemoryTransport sender = broker.transport("sender");
+        sender.connect();
+        byte[] malformed = "[".getBytes(StandardCharsets.UTF_8);
+        sender.publish(topicBuilder.operation(CalculatorService.class, CalculatorService.class.getMethod("add", Integer.class, Integer.class), identifier), malformed, 0);
+        sender.publish(topicBuilder.callback("malformed"), malformed, 0);
+        CalculatorService remoteCalculator = client.connector(CalculatorService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(3), remoteCalculator.add(1, 2));
+        Assert.assertEquals(0, registry.getCounters().get(MqttDrpcMetrics.DISCONNECTS + "{client=malformed}").sum());
+        sender.disconnect();
+        client.disconnect();
+    }
+
+    /**
+     * Verifies that errors of distributed calls are forwarded to the failure consumer.
+     */
+    @Test
+    public void testDistributedFailure() throws MqttDrpcTransportException, InterruptedException, ExecutionException, TimeoutException {
+        MqttDrpcClient client = new MqttDrpcClientBuilder().build(new MqttDrpcMemoryBroker());
+        client.connect();
+        client.publish(CalculatorService.class, identifier, (a, b) -> {
+            throw new IllegalStateException("Out of order");
+        });
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        SilentCloseable drpc = client.connector(CalculatorService.class).drpc(d -> d.add(1, 2), future::complete, future::completeExceptionally);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof MqttDrpcRemoteException);
+        }
+        drpc.close();
+        client.disconnect();
+    }
+
+    /**
+     * Verifies that a call without response fails once its timeout passes, without leaving the call pending.
+     */
+    @Test
+    public void testTimeout() throws MqttDrpcTransportException {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withClientId("timeouts").withMetricsRegistry(registry)
+                .withCallTimeout(200, TimeUnit.MILLISECONDS).build(new MqttDrpcMemoryBroker());
+        client.connect();
+        CalculatorService remoteCalculator = client.connector(CalculatorService.class).connect(identifier);
+        try {
+            remoteCalculator.add(1, 2);
+            Assert.fail();
+        } catch (MqttDrpcTimeoutException e) {
+            Assert.assertEquals(1, registry.getCounters().get(MqttDrpcMetrics.CLIENT_CALLS_EXPIRED + "{client=timeouts}").sum());
+            Assert.assertEquals(0, registry.getGauges().get(MqttDrpcMetrics.CLIENT_CALLBACKS_PENDING + "{client=timeouts}").getAsLong());
+        }
+        client.disconnect();
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.hileco.drpc.mqtt;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcFlightRecorderTest {
+
+    private static final String identifier = "12345";
+
+    /**
+     * Verifies that a recorded call emits an event for each of its stages, all with the call's correlation identifier, interface and method.
+     */
+    @Test
+    public void testStages() throws MqttDrpcTransportException, IOException, InterruptedException {
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withClientId("flight-recorder").build(new MqttDrpcMemoryBroker());
+        client.connect();
+        client.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        CalculatorService remoteCalculator = client.connector(CalculatorService.class).connect(identifier);
+        Path file = Files.createTempFile("mqtt-drpc", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String stage : new String[]{"RequestSerialization", "RequestPublish", "BrokerTransit", "CallbackRouting",
+                    "ServiceDeserialization", "ServiceInvocation", "ResponsePublish"}) {
+                recording.enable("com.hileco.drpc." + stage);
+            }
+            recording.start();
+            remoteCalculator.add(1, 2);
+            // routing and response publishing complete on other threads, after the caller is already answered
+            Thread.sleep(200);
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Set<String> stages = new HashSet<>();
+            Set<String> correlationIds = new HashSet<>();
+            for (RecordedEvent event : events) {
+                stages.add(event.getEventType().getName());
+                correlationIds.add(event.getString("correlationId"));
+                Assert.assertEquals(CalculatorService.class.getName(), event.getString("interfaceName"));
+                Assert.assertEquals("add", event.getString("methodName"));
+            }
+            Assert.assertEquals(7, stages.size());
+            Assert.assertEquals(1, correlationIds.size());
+        } finally {
+            Files.deleteIfExists(file);
+            client.disconnect();
+        }
+    }
+
+}
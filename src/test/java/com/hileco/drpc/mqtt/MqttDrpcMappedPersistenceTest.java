@@ -0,0 +1,197 @@
+package com.hileco.drpc.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcMappedPersistenceTest {
+
+    private static final String clientId = "persistent-client";
+    private static final String serverURI = "tcp://localhost:1883";
+
+    private Path directory;
+
+    private static MqttPersistable persistable(String header, String payload) {
+        return new MqttPersistable() {
+            @Override
+            public byte[] getHeaderBytes() {
+                return ("-" + header).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public int getHeaderLength() {
+                return header.length();
+            }
+
+            @Override
+            public int getHeaderOffset() {
+                return 1;
+            }
+
+            @Override
+            public byte[] getPayloadBytes() {
+                return payload == null ? null : payload.getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public int getPayloadLength() {
+                return payload == null ? 0 : payload.length();
+            }
+
+            @Override
+            public int getPayloadOffset() {
+                return 0;
+            }
+        };
+    }
+
+    private static String header(MqttPersistable persistable) throws MqttPersistenceException {
+        return new String(persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength(), StandardCharsets.UTF_8);
+    }
+
+    private static String payload(MqttPersistable persistable) throws MqttPersistenceException {
+        return new String(persistable.getPayloadBytes(), persistable.getPayloadOffset(), persistable.getPayloadLength(), StandardCharsets.UTF_8);
+    }
+
+    private MqttDrpcMappedPersistence open() throws MqttPersistenceException {
+        MqttDrpcMappedPersistence persistence = new MqttDrpcMappedPersistence(directory.toFile(), 256, false);
+        persistence.open(clientId, serverURI);
+        return persistence;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("mqtt-drpc");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Verifies that messages put, replaced and removed are found as such after reopening the log.
+     */
+    @Test
+    public void testRecovery() throws MqttPersistenceException {
+        MqttDrpcMappedPersistence persistence = open();
+        persistence.put("s-1", persistable("header-1", "payload-1"));
+        persistence.put("s-2", persistable("header-2", null));
+        persistence.put("s-3", persistable("header-3", "payload-3"));
+        persistence.put("s-1", persistable("header-1b", "payload-1b"));
+        persistence.remove("s-3");
+        persistence.close();
+        persistence = open();
+        List<Object> keys = Collections.list(persistence.keys());
+        Assert.assertEquals(2, keys.size());
+        Assert.assertEquals("header-1b", header(persistence.get("s-1")));
+        Assert.assertEquals("payload-1b", payload(persistence.get("s-1")));
+        Assert.assertEquals("header-2", header(persistence.get("s-2")));
+        Assert.assertEquals("", payload(persistence.get("s-2")));
+        Assert.assertFalse(persistence.containsKey("s-3"));
+        Assert.assertNull(persistence.get("s-3"));
+        persistence.clear();
+        persistence.close();
+        persistence = open();
+        Assert.assertFalse(persistence.keys().hasMoreElements());
+        persistence.close();
+    }
+
+    /**
+     * Verifies that a log written well beyond its size is compacted and grown, and keeps all live messages.
+     */
+    @Test
+    public void testCompaction() throws MqttPersistenceException {
+        MqttDrpcMappedPersistence persistence = open();
+        for (int i = 0; i < 1000; i++) {
+            persistence.put("s-" + i, persistable("header-" + i, "payload-" + i));
+            if (i % 10 != 0) {
+                persistence.remove("s-" + i);
+            }
+        }
+        persistence.close();
+        persistence = open();
+        Assert.assertEquals(100, Collections.list(persistence.keys()).size());
+        for (int i = 0; i < 1000; i += 10) {
+            Assert.assertEquals("payload-" + i, payload(persistence.get("s-" + i)));
+        }
+        persistence.close();
+    }
+
+    /**
+     * Verifies that a record torn by a crash while being written is discarded, and does not hide earlier records.
+     */
+    @Test
+    public void testTornRecord() throws MqttPersistenceException, IOException {
+        MqttDrpcMappedPersistence persistence = open();
+        persistence.put("s-1", persistable("header-1", "payload-1"));
+        persistence.put("s-2", persistable("header-2", "payload-2"));
+        persistence.close();
+        File log;
+        try (Stream<Path> paths = Files.list(directory)) {
+            log = paths.filter(path -> path.toString().endsWith(".log")).findFirst().get().toFile();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            // corrupts the last byte of the payload of the second record
+            file.seek(2 * (8 + 1 + 2 + 3 + 4 + 8 + 4 + 9) - 5);
+            file.write('X');
+        }
+        persistence = open();
+        Assert.assertEquals("payload-1", payload(persistence.get("s-1")));
+        Assert.assertFalse(persistence.containsKey("s-2"));
+        persistence.put("s-3", persistable("header-3", "payload-3"));
+        persistence.close();
+        persistence = open();
+        Assert.assertEquals(2, Collections.list(persistence.keys()).size());
+        persistence.close();
+    }
+
+    /**
+     * Verifies that a log cannot be opened twice at once.
+     */
+    @Test(expected = MqttPersistenceException.class)
+    public void testInUse() throws MqttPersistenceException {
+        MqttDrpcMappedPersistence persistence = open();
+        try {
+            open();
+        } finally {
+            persistence.close();
+        }
+    }
+
+    /**
+     * Verifies that a log which fails to open does not stay locked.
+     */
+    @Test
+    public void testFailedOpenUnlocks() throws MqttPersistenceException, IOException {
+        // a directory in place of the log cannot be mapped
+        Path log = Files.createDirectory(directory.resolve("persistent-client-tcplocalhost1883.log"));
+        try {
+            open();
+            Assert.fail();
+        } catch (MqttPersistenceException e) {
+            Files.delete(log);
+        }
+        open().close();
+    }
+
+}
@@ -0,0 +1,231 @@
+package com.hileco.drpc.mqtt;
+
+import com.hileco.drpc.generic.ServiceConnector;
+import com.hileco.drpc.generic.SilentCloseable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcMemoryBrokerTest {
+
+    private static final String identifier = "12345";
+
+    /**
+     * Verifies that a client can call a service published by another client of the same in-memory broker.
+     */
+    @Test
+    public void testTargetedCall() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+        serviceClient.connect();
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        SilentCloseable publishedService = serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(30), remoteCalculator.add(10, 20));
+        publishedService.close();
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that a distributed call reaches every client which published the service.
+     */
+    @Test
+    public void testDistributedCall() throws MqttDrpcTransportException, InterruptedException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient first = new MqttDrpcClientBuilder().build(broker);
+        first.connect();
+        first.publish(CalculatorService.class, "first", (a, b) -> a + b);
+        MqttDrpcClient second = new MqttDrpcClientBuilder().build(broker);
+        second.connect();
+        second.publish(CalculatorService.class, "second", (a, b) -> a * b);
+        ServiceConnector<CalculatorService> connector = first.connector(CalculatorService.class);
+        List<Integer> results = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        SilentCloseable drpc = connector.drpc(calculator -> calculator.add(3, 4), (Integer result) -> {
+            results.add(result);
+            latch.countDown();
+        });
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(results.contains(7));
+        Assert.assertTrue(results.contains(12));
+        drpc.close();
+    }
+
+    /**
+     * Verifies that wildcard subscriptions receive matching messages exactly once, and no others.
+     */
+    @Test
+    public void testWildcardRouting() throws MqttDrpcTransportException, InterruptedException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        List<String> received = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        MqttDrpcMemoryTransport subscriber = broker.transport("subscriber");
+        subscriber.setCallback(new MqttDrpcTransport.Callback() {
+            @Override
+            public void messageArrived(String topic, byte[] payload) {
+                received.add(topic);
+                latch.countDown();
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+        });
+        subscriber.connect();
+        subscriber.subscribe(new String[]{"s/+/add", "s/#"});
+        MqttDrpcMemoryTransport publisher = broker.transport("publisher");
+        publisher.connect();
+        publisher.publish("s/calculator/add", new byte[0], 0);
+        publisher.publish("c/other", new byte[0], 0);
+        publisher.publish("s/calculator/add/1", new byte[0], 0);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        publisher.disconnect();
+        subscriber.disconnect();
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals("s/calculator/add", received.get(0));
+        Assert.assertEquals("s/calculator/add/1", received.get(1));
+    }
+
+    /**
+     * Verifies that targeted and distributed calls reach a service published with wildcard subscriptions.
+     */
+    @Test
+    public void testWildcardSubscriptions() throws MqttDrpcTransportException, InterruptedException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().withWildcardSubscriptions(true).build(broker);
+        serviceClient.connect();
+        SilentCloseable first = serviceClient.publish(CalculatorService.class, "first", (a, b) -> a + b);
+        serviceClient.publish(CalculatorService.class, "second", (a, b) -> a * b);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        ServiceConnector<CalculatorService> connector = callingClient.connector(CalculatorService.class);
+        Assert.assertEquals(Integer.valueOf(7), connector.connect("first").add(3, 4));
+        Assert.assertEquals(Integer.valueOf(12), connector.connect("second").add(3, 4));
+        first.close();
+        // the filter shared by both identifiers remains subscribed while the second is published
+        List<Integer> results = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        connector.drpc(calculator -> calculator.add(3, 4), (Integer result) -> {
+            results.add(result);
+            latch.countDown();
+        });
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        Assert.assertEquals(Collections.singletonList(12), results);
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that a service published for many identifiers at once is called with the implementation of the called
+     * identifier, and ignores calls to identifiers it was not published for.
+     */
+    @Test
+    public void testBulkPublish() throws MqttDrpcTransportException {
+        for (boolean wildcardSubscriptions : new boolean[]{false, true}) {
+            MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+            MqttDrpcClient shardClient = new MqttDrpcClientBuilder().withWildcardSubscriptions(wildcardSubscriptions).build(broker);
+            shardClient.connect();
+            List<String> shards = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                shards.add("shard-" + i);
+            }
+            SilentCloseable publishedShards = shardClient.publish(CalculatorService.class, shards,
+                    shard -> (a, b) -> a + b + Integer.parseInt(shard.substring("shard-".length())));
+            MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+            serviceClient.connect();
+            serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a * b);
+            MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+            callingClient.connect();
+            ServiceConnector<CalculatorService> connector = callingClient.connector(CalculatorService.class);
+            Assert.assertEquals(Integer.valueOf(7), connector.connect("shard-0").add(3, 4));
+            Assert.assertEquals(Integer.valueOf(1006), connector.connect("shard-999").add(3, 4));
+            Assert.assertEquals(Integer.valueOf(12), connector.connect(identifier).add(3, 4));
+            publishedShards.close();
+            shardClient.disconnect();
+            serviceClient.disconnect();
+            callingClient.disconnect();
+        }
+    }
+
+    /**
+     * Verifies that identifiers which are not a single topic level are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBulkPublishInvalid() throws MqttDrpcTransportException {
+        MqttDrpcClient client = new MqttDrpcClientBuilder().build(new MqttDrpcMemoryBroker());
+        client.publish(CalculatorService.class, Arrays.asList("shard-0", "shard/1"), shard -> (a, b) -> a + b);
+    }
+
+    /**
+     * Verifies that with the compact topic scheme, calls to overloaded methods reach their own method.
+     */
+    @Test
+    public void testCompactTopics() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().withTopicBuilder(new MqttDrpcTopicBuilder(true)).build(broker);
+        serviceClient.connect();
+        serviceClient.publish(MqttDrpcTopicBuilderTest.OverloadedService.class, identifier, new MqttDrpcTopicBuilderTest.OverloadedService() {
+            @Override
+            public Integer sum(Integer a, Integer b) {
+                return a + b;
+            }
+
+            @Override
+            public Integer sum(Integer a, Integer b, Integer c) {
+                return a + b + c;
+            }
+        });
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().withTopicBuilder(new MqttDrpcTopicBuilder(true)).build(broker);
+        callingClient.connect();
+        MqttDrpcTopicBuilderTest.OverloadedService remoteService = callingClient.connector(MqttDrpcTopicBuilderTest.OverloadedService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(3), remoteService.sum(1, 2));
+        Assert.assertEquals(Integer.valueOf(6), remoteService.sum(1, 2, 3));
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that services published in a batch are subscribed to with a single subscription, and are called
+     * successfully once the batch is closed.
+     */
+    @Test
+    public void testRegistration() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcMemoryTransport serviceTransport = Mockito.spy(broker.transport("service"));
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(serviceTransport);
+        serviceClient.connect();
+        Mockito.reset(serviceTransport);
+        try (MqttDrpcClient.Registration registration = serviceClient.register()) {
+            for (int i = 0; i < 100; i++) {
+                int offset = i;
+                registration.publish(CalculatorService.class, "calculator-" + i, (a, b) -> a + b + offset);
+            }
+            registration.publish(CalculatorService.class, Arrays.asList("shard-0", "shard-1"), shard -> (a, b) -> a * b);
+            Mockito.verify(serviceTransport, Mockito.never()).subscribe(Mockito.any(String[].class));
+        }
+        Mockito.verify(serviceTransport, Mockito.times(1)).subscribe(Mockito.any(String[].class));
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        ServiceConnector<CalculatorService> connector = callingClient.connector(CalculatorService.class);
+        Assert.assertEquals(Integer.valueOf(7), connector.connect("calculator-0").add(3, 4));
+        Assert.assertEquals(Integer.valueOf(106), connector.connect("calculator-99").add(3, 4));
+        Assert.assertEquals(Integer.valueOf(12), connector.connect("shard-1").add(3, 4));
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.hileco.drpc.mqtt;
+
+import com.hileco.drpc.generic.LatencyHistogram;
+import com.hileco.drpc.metrics.JmxMetricsRegistry;
+import com.hileco.drpc.metrics.SimpleMetricsRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcMetricsTest {
+
+    private static final String identifier = "12345";
+
+    /**
+     * Verifies that a targeted call records latencies and sizes on both the calling and the serving side.
+     */
+    @Test
+    public void testCallMetrics() throws MqttDrpcTransportException, NoSuchMethodException {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withClientId("metrics").withMetricsRegistry(registry).build(broker);
+        client.connect();
+        client.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        CalculatorService remoteCalculator = client.connector(CalculatorService.class).connect(identifier);
+        remoteCalculator.add(1, 2);
+        remoteCalculator.add(3, 4);
+        String tags = "{client=metrics,interface=" + CalculatorService.class.getName() + ",method=add(java.lang.Integer,java.lang.Integer)}";
+        LatencyHistogram clientLatency = registry.getHistograms().get(MqttDrpcMetrics.CLIENT_LATENCY + tags);
+        LatencyHistogram serviceLatency = registry.getHistograms().get(MqttDrpcMetrics.SERVICE_LATENCY + tags);
+        LatencyHistogram requestBytes = registry.getHistograms().get(MqttDrpcMetrics.CLIENT_REQUEST_BYTES + tags);
+        Assert.assertEquals(2, clientLatency.getTotalCount());
+        Assert.assertEquals(2, serviceLatency.getTotalCount());
+        Assert.assertTrue(requestBytes.getMin() > 0);
+        Assert.assertEquals(0, registry.getGauges().get(MqttDrpcMetrics.CLIENT_CALLS_IN_FLIGHT + "{client=metrics}").getAsLong());
+        client.disconnect();
+    }
+
+    /**
+     * Verifies that metrics are readable over JMX.
+     */
+    @Test
+    public void testJmx() throws JMException {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        JmxMetricsRegistry registry = new JmxMetricsRegistry(mBeanServer, "com.hileco.drpc.test");
+        registry.counter("retries", "client", "jmx").add(3);
+        registry.histogram("latency", "client", "jmx", "method", "add").record(100);
+        registry.gauge("pending", () -> 7, "client", "jmx");
+        Assert.assertEquals(3L, mBeanServer.getAttribute(new ObjectName("com.hileco.drpc.test:name=retries,client=jmx"), "Count"));
+        Assert.assertEquals(1L, mBeanServer.getAttribute(new ObjectName("com.hileco.drpc.test:name=latency,client=jmx,method=add"), "Count"));
+        Assert.assertEquals(7L, mBeanServer.getAttribute(new ObjectName("com.hileco.drpc.test:name=pending,client=jmx"), "Value"));
+        registry.remove("pending", "client", "jmx");
+        Assert.assertFalse(mBeanServer.isRegistered(new ObjectName("com.hileco.drpc.test:name=pending,client=jmx")));
+    }
+
+    /**
+     * Verifies that a client which disconnects and connects again keeps recording its metrics in the registry.
+     */
+    @Test
+    public void testKeptOnReconnect() throws MqttDrpcTransportException {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient service = new MqttDrpcClientBuilder().build(broker);
+        service.connect();
+        service.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withClientId("kept").withMetricsRegistry(registry).build(broker);
+        client.connect();
+        CalculatorService remoteCalculator = client.connector(CalculatorService.class).connect(identifier);
+        remoteCalculator.add(1, 2);
+        client.disconnect();
+        client.connect();
+        remoteCalculator.add(3, 4);
+        String tags = "{client=kept,interface=" + CalculatorService.class.getName() + ",method=add(java.lang.Integer,java.lang.Integer)}";
+        Assert.assertEquals(2, registry.getHistograms().get(MqttDrpcMetrics.CLIENT_LATENCY + tags).getTotalCount());
+        Assert.assertEquals(2, registry.getHistograms().get(MqttDrpcMetrics.CLIENT_REQUEST_BYTES + tags).getTotalCount());
+        Assert.assertNotNull(registry.getGauges().get(MqttDrpcMetrics.CLIENT_CALLS_IN_FLIGHT + "{client=kept}"));
+        Assert.assertNotNull(registry.getGauges().get(MqttDrpcMetrics.CLIENT_CALLBACKS_PENDING + "{client=kept}"));
+        Assert.assertNotNull(registry.getCounters().get(MqttDrpcMetrics.RECONNECTS + "{client=kept}"));
+        client.close();
+        service.close();
+    }
+
+    /**
+     * Verifies that closing a client removes its metrics from the registry.
+     */
+    @Test
+    public void testRemovedOnClose() throws MqttDrpcTransportException {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withClientId("removed").withMetricsRegistry(registry).build(new MqttDrpcMemoryBroker());
+        client.connect();
+        client.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        client.connector(CalculatorService.class).connect(identifier).add(1, 2);
+        Assert.assertFalse(registry.getHistograms().isEmpty());
+        Assert.assertFalse(registry.getGauges().isEmpty());
+        client.close();
+        Assert.assertTrue(registry.getCounters().isEmpty());
+        Assert.assertTrue(registry.getHistograms().isEmpty());
+        Assert.assertTrue(registry.getGauges().isEmpty());
+    }
+
+}
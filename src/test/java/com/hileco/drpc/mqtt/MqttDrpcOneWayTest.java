@@ -0,0 +1,77 @@
+package com.hileco.drpc.mqtt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcOneWayTest {
+
+    private static final String identifier = "12345";
+
+    public static interface NotificationService {
+
+        @MqttDrpcOneWay
+        public void report(String message);
+
+    }
+
+    public static interface InvalidNotificationService {
+
+        @MqttDrpcOneWay
+        public Integer report(String message);
+
+    }
+
+    /**
+     * Verifies that one-way calls return without awaiting the service, and that the service does not respond.
+     */
+    @Test
+    public void testOneWay() throws MqttDrpcTransportException, InterruptedException, NoSuchMethodException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        serviceClient.connect();
+        callingClient.connect();
+        List<String> messages = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch received = new CountDownLatch(2);
+        serviceClient.publish(NotificationService.class, identifier, message -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messages.add(message);
+            received.countDown();
+        });
+        NotificationService remoteNotifications = callingClient.connector(NotificationService.class).connect(identifier);
+        // both calls return while the service is still blocked on the first
+        remoteNotifications.report("first");
+        remoteNotifications.report("second");
+        Assert.assertEquals(0, callingClient.getMetrics().clientCallsInFlight().sum());
+        release.countDown();
+        Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(messages.contains("first"));
+        Assert.assertTrue(messages.contains("second"));
+        Assert.assertEquals(0, serviceClient.getMetrics().serviceResponseBytes(NotificationService.class, NotificationService.class.getMethod("report", String.class)).getTotalCount());
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that methods returning a value cannot be one-way.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() throws MqttDrpcTransportException {
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(new MqttDrpcMemoryBroker());
+        callingClient.connector(InvalidNotificationService.class);
+    }
+
+}
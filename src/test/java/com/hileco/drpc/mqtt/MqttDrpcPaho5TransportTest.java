@@ -0,0 +1,104 @@
+package com.hileco.drpc.mqtt;
+
+import org.eclipse.paho.mqttv5.client.MqttClient;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.MqttSubscription;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcPaho5TransportTest {
+
+    private static final String identifier = "12345";
+
+    /**
+     * Verifies that only the subscriptions of topics to share are shared, and that they are unsubscribed from as such.
+     */
+    @Test
+    public void testSharedSubscriptions() throws Exception {
+        MqttClient mqttClient = Mockito.mock(MqttClient.class);
+        MqttDrpcTopicBuilder topicBuilder = new MqttDrpcTopicBuilder();
+        MqttDrpcPaho5Transport transport = new MqttDrpcPaho5Transport(mqttClient, new MqttConnectionOptions(), 0, "calculators", topicBuilder::isOperation);
+        String operations = topicBuilder.operations(CalculatorService.class, identifier);
+        String callback = topicBuilder.callback("correlation");
+        transport.subscribe(new String[]{operations, callback});
+        ArgumentCaptor<MqttSubscription[]> subscriptions = ArgumentCaptor.forClass(MqttSubscription[].class);
+        Mockito.verify(mqttClient).subscribe(subscriptions.capture());
+        Assert.assertEquals("$share/calculators/" + operations, subscriptions.getValue()[0].getTopic());
+        Assert.assertEquals(callback, subscriptions.getValue()[1].getTopic());
+        transport.unsubscribe(new String[]{operations});
+        Mockito.verify(mqttClient).unsubscribe(new String[]{"$share/calculators/" + operations});
+    }
+
+    /**
+     * Verifies that messages are published with the message expiry interval, and without one when it is 0.
+     */
+    @Test
+    public void testMessageExpiry() throws Exception {
+        MqttClient mqttClient = Mockito.mock(MqttClient.class);
+        ArgumentCaptor<MqttMessage> messages = ArgumentCaptor.forClass(MqttMessage.class);
+        new MqttDrpcPaho5Transport(mqttClient, new MqttConnectionOptions(), 60, null, topic -> true).publish("topic", new byte[]{1}, 1);
+        new MqttDrpcPaho5Transport(mqttClient, new MqttConnectionOptions()).publish("topic", new byte[]{1}, 1);
+        Mockito.verify(mqttClient, Mockito.times(2)).publish(Mockito.eq("topic"), messages.capture());
+        Assert.assertEquals(Long.valueOf(60), messages.getAllValues().get(0).getProperties().getMessageExpiryInterval());
+        Assert.assertEquals(1, messages.getAllValues().get(0).getQos());
+        MqttProperties properties = messages.getAllValues().get(1).getProperties();
+        Assert.assertTrue(properties == null || properties.getMessageExpiryInterval() == null);
+    }
+
+    /**
+     * Verifies that failures are thrown with their reason code, as the client's retry and reconnect decisions rely on it.
+     */
+    @Test
+    public void testReasonCodes() throws Exception {
+        MqttClient mqttClient = Mockito.mock(MqttClient.class);
+        MqttConnectionOptions connectionOptions = new MqttConnectionOptions();
+        Mockito.doThrow(new MqttException(MqttDrpcTransportException.REASON_CODE_CLIENT_CONNECTED)).when(mqttClient).connect(connectionOptions);
+        try {
+            new MqttDrpcPaho5Transport(mqttClient, connectionOptions).connect();
+            Assert.fail();
+        } catch (MqttDrpcTransportException e) {
+            Assert.assertEquals(MqttDrpcTransportException.REASON_CODE_CLIENT_CONNECTED, e.getReasonCode());
+        }
+    }
+
+    /**
+     * Verifies that calls to replicas sharing their subscriptions are invoked by one replica only.
+     */
+    @Test
+    @Ignore(value = "Integration test, relies on a local MQTT 5 broker")
+    public void testSharedReplicas() throws MqttDrpcTransportException {
+        AtomicInteger invocations = new AtomicInteger();
+        MqttDrpcClient[] replicas = new MqttDrpcClient[2];
+        for (int i = 0; i < replicas.length; i++) {
+            replicas[i] = new MqttDrpcClientBuilder().withSharedSubscriptionGroup("calculators").buildMqtt5("tcp://localhost:1883");
+            replicas[i].connect();
+            replicas[i].publish(CalculatorService.class, identifier, (a, b) -> {
+                invocations.incrementAndGet();
+                return a + b;
+            });
+        }
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().buildMqtt5("tcp://localhost:1883");
+        callingClient.connect();
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Integer.valueOf(i + i), remoteCalculator.add(i, i));
+        }
+        Assert.assertEquals(10, invocations.get());
+        for (MqttDrpcClient replica : replicas) {
+            replica.disconnect();
+        }
+        callingClient.disconnect();
+    }
+
+}
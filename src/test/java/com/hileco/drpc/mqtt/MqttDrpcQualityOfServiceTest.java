@@ -0,0 +1,150 @@
+package com.hileco.drpc.mqtt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcQualityOfServiceTest {
+
+    private static final String identifier = "12345";
+
+    @MqttDrpcQualityOfService(request = 1, response = 1)
+    public static interface TelemetryService {
+
+        @MqttDrpcQualityOfService(request = 0)
+        public Integer read(Integer channel);
+
+        public Integer calibrate(Integer channel);
+
+    }
+
+    public static interface SensorService {
+
+        public Integer sample(Integer channel);
+
+    }
+
+    @MqttDrpcQualityOfService(request = 0)
+    public static interface LossySensorService extends SensorService {
+    }
+
+    @MqttDrpcQualityOfService(request = 1)
+    public static interface ReliableSensorService extends SensorService {
+    }
+
+    /**
+     * A transport which notes the quality of service level of every message it publishes.
+     */
+    private static class RecordingTransport implements MqttDrpcTransport {
+
+        private final MqttDrpcTransport transport;
+        private final List<Integer> levels;
+
+        private RecordingTransport(MqttDrpcTransport transport) {
+            this.transport = transport;
+            this.levels = new CopyOnWriteArrayList<>();
+        }
+
+        @Override
+        public String getClientId() {
+            return transport.getClientId();
+        }
+
+        @Override
+        public void setCallback(Callback callback) {
+            transport.setCallback(callback);
+        }
+
+        @Override
+        public void connect() throws MqttDrpcTransportException {
+            transport.connect();
+        }
+
+        @Override
+        public void disconnect() throws MqttDrpcTransportException {
+            transport.disconnect();
+        }
+
+        @Override
+        public void publish(String topic, byte[] payload, int qualityOfServiceLevel) throws MqttDrpcTransportException {
+            levels.add(qualityOfServiceLevel);
+            transport.publish(topic, payload, qualityOfServiceLevel);
+        }
+
+        @Override
+        public void subscribe(String[] topics) throws MqttDrpcTransportException {
+            transport.subscribe(topics);
+        }
+
+        @Override
+        public void unsubscribe(String[] topics) throws MqttDrpcTransportException {
+            transport.unsubscribe(topics);
+        }
+
+    }
+
+    /**
+     * Verifies that requests and responses are published with the levels of their method's or interface's annotation,
+     * or else with the level of the client.
+     */
+    @Test
+    public void testLevels() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        RecordingTransport serviceTransport = new RecordingTransport(broker.transport("service"));
+        RecordingTransport callingTransport = new RecordingTransport(broker.transport("caller"));
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(serviceTransport);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(callingTransport);
+        serviceClient.connect();
+        callingClient.connect();
+        serviceClient.publish(TelemetryService.class, identifier, new TelemetryService() {
+            @Override
+            public Integer read(Integer channel) {
+                return channel;
+            }
+
+            @Override
+            public Integer calibrate(Integer channel) {
+                return -channel;
+            }
+        });
+        serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        TelemetryService remoteTelemetry = callingClient.connector(TelemetryService.class).connect(identifier);
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(1), remoteTelemetry.read(1));
+        Assert.assertEquals(Integer.valueOf(-1), remoteTelemetry.calibrate(1));
+        Assert.assertEquals(Integer.valueOf(2), remoteCalculator.add(1, 1));
+        Assert.assertEquals(Arrays.asList(0, 1, MqttDrpcClientBuilder.DEFAULT_LEVEL_QUALITY_OF_SERVICE), callingTransport.levels);
+        Assert.assertEquals(Arrays.asList(1, 1, MqttDrpcClientBuilder.DEFAULT_LEVEL_QUALITY_OF_SERVICE), serviceTransport.levels);
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that interfaces inheriting the same method publish its requests with the levels of their own annotations.
+     */
+    @Test
+    public void testInheritedLevels() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        RecordingTransport callingTransport = new RecordingTransport(broker.transport("caller"));
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(callingTransport);
+        serviceClient.connect();
+        callingClient.connect();
+        serviceClient.publish(LossySensorService.class, identifier, channel -> channel);
+        serviceClient.publish(ReliableSensorService.class, identifier, channel -> -channel);
+        LossySensorService remoteLossy = callingClient.connector(LossySensorService.class).connect(identifier);
+        ReliableSensorService remoteReliable = callingClient.connector(ReliableSensorService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(1), remoteLossy.sample(1));
+        Assert.assertEquals(Integer.valueOf(-1), remoteReliable.sample(1));
+        Assert.assertEquals(Arrays.asList(0, 1), callingTransport.levels);
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+}
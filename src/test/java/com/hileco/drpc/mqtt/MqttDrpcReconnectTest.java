@@ -0,0 +1,145 @@
+package com.hileco.drpc.mqtt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcReconnectTest {
+
+    private static final String identifier = "12345";
+
+    private static void awaitReconnect(MqttDrpcClient client) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getMetrics().reconnects().sum() == 0) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Connects a transport to the broker, which counts down the given latch for every message arriving.
+     */
+    private static MqttDrpcMemoryTransport transport(MqttDrpcMemoryBroker broker, String clientId, CountDownLatch arrivals) throws MqttDrpcTransportException {
+        MqttDrpcMemoryTransport transport = broker.transport(clientId);
+        transport.setCallback(new MqttDrpcTransport.Callback() {
+            @Override
+            public void messageArrived(String topic, byte[] payload) {
+                arrivals.countDown();
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+        });
+        transport.connect();
+        return transport;
+    }
+
+    /**
+     * Verifies that clients reconnect after a broker restart, and that calls succeed again once resubscribed.
+     */
+    @Test
+    public void testResubscribe() throws MqttDrpcTransportException, InterruptedException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+        serviceClient.connect();
+        serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(3), remoteCalculator.add(1, 2));
+        broker.restart();
+        awaitReconnect(serviceClient);
+        awaitReconnect(callingClient);
+        Assert.assertEquals(Integer.valueOf(7), remoteCalculator.add(3, 4));
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that calls awaiting responses fail as soon as the connection is lost.
+     */
+    @Test
+    public void testFailFast() throws MqttDrpcTransportException, InterruptedException, NoSuchMethodException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().withClientId("fail-fast").build(broker);
+        callingClient.connect();
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect("nobody");
+        CountDownLatch published = new CountDownLatch(1);
+        MqttDrpcMemoryTransport observer = transport(broker, "observer", published);
+        observer.subscribe(new String[]{new MqttDrpcTopicBuilder().operation(CalculatorService.class, CalculatorService.class.getMethod("add", Integer.class, Integer.class), "nobody")});
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> result = caller.submit(() -> remoteCalculator.add(1, 2));
+            Assert.assertTrue(published.await(5, TimeUnit.SECONDS));
+            // takes over the connection, as a broker does when another connection uses the same client identifier
+            transport(broker, "fail-fast", new CountDownLatch(0));
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof MqttDrpcDisconnectedException);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        } finally {
+            caller.shutdownNow();
+        }
+        awaitReconnect(callingClient);
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that with replay enabled, requests of calls awaiting responses are published again once reconnected.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        AtomicInteger invocations = new AtomicInteger();
+        CountDownLatch invoked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+        serviceClient.connect();
+        serviceClient.publish(CalculatorService.class, identifier, (a, b) -> {
+            if (invocations.incrementAndGet() == 1) {
+                invoked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return a + b;
+        });
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().withClientId("replay").withReplayOnReconnect(true).build(broker);
+        callingClient.connect();
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> result = caller.submit(() -> remoteCalculator.add(1, 2));
+            Assert.assertTrue(invoked.await(5, TimeUnit.SECONDS));
+            transport(broker, "replay", new CountDownLatch(0));
+            awaitReconnect(callingClient);
+            release.countDown();
+            Assert.assertEquals(Integer.valueOf(3), result.get(5, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (invocations.get() < 2) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            caller.shutdownNow();
+        }
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+}
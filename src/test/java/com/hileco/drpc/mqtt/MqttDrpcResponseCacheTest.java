@@ -0,0 +1,98 @@
+package com.hileco.drpc.mqtt;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcResponseCacheTest {
+
+    private static final String identifier = "12345";
+
+    public interface ConfigurationService {
+
+        @MqttDrpcCached(invalidated = true)
+        public String lookup(String key);
+
+        public String uncached(String key);
+
+    }
+
+    public interface LookupService {
+
+        @MqttDrpcCached
+        public String lookup(String key);
+
+    }
+
+    public interface PrimaryLookupService extends LookupService {
+    }
+
+    public interface SecondaryLookupService extends LookupService {
+    }
+
+    /**
+     * Verifies that interfaces inheriting the same cached method do not answer each other's calls from the cache.
+     */
+    @Test
+    public void testInterfacesSeparate() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient service = new MqttDrpcClientBuilder().build(broker);
+        MqttDrpcClient client = new MqttDrpcClientBuilder().build(broker);
+        service.connect();
+        client.connect();
+        service.publish(PrimaryLookupService.class, identifier, key -> "primary " + key);
+        service.publish(SecondaryLookupService.class, identifier, key -> "secondary " + key);
+        PrimaryLookupService primary = client.connector(PrimaryLookupService.class).connect(identifier);
+        SecondaryLookupService secondary = client.connector(SecondaryLookupService.class).connect(identifier);
+        Assert.assertEquals("primary a", primary.lookup("a"));
+        Assert.assertEquals("secondary a", secondary.lookup("a"));
+        Assert.assertEquals("primary a", primary.lookup("a"));
+        service.disconnect();
+        client.disconnect();
+    }
+
+    /**
+     * Verifies that repeated calls of a cached method are answered from the cache until invalidated by the service.
+     */
+    @Test
+    public void testCachedUntilInvalidated() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient service = new MqttDrpcClientBuilder().build(broker);
+        MqttDrpcClient client = new MqttDrpcClientBuilder().build(broker);
+        service.connect();
+        client.connect();
+        AtomicInteger invocations = new AtomicInteger();
+        service.publish(ConfigurationService.class, identifier, new ConfigurationService() {
+            @Override
+            public String lookup(String key) {
+                return key + invocations.incrementAndGet();
+            }
+
+            @Override
+            public String uncached(String key) {
+                return key + invocations.incrementAndGet();
+            }
+        });
+        ConfigurationService configuration = client.connector(ConfigurationService.class).connect(identifier);
+        Assert.assertEquals("a1", configuration.lookup("a"));
+        Assert.assertEquals("a1", configuration.lookup("a"));
+        Assert.assertEquals("b2", configuration.lookup("b"));
+        Assert.assertEquals("a3", configuration.uncached("a"));
+        Assert.assertEquals("a4", configuration.uncached("a"));
+        service.invalidate(ConfigurationService.class, identifier);
+        // invalidations are delivered asynchronously, await it before calling again
+        long deadline = System.currentTimeMillis() + 5000;
+        String result;
+        do {
+            result = configuration.lookup("a");
+        } while (result.equals("a1") && System.currentTimeMillis() < deadline);
+        Assert.assertEquals("a5", result);
+        service.disconnect();
+        client.disconnect();
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.hileco.drpc.mqtt;
+
+import com.hileco.drpc.generic.PendingCallTable;
+import com.hileco.drpc.generic.SilentCloseable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcSharedConnectionTest {
+
+    private static final String identifier = "12345";
+
+    private static void awaitReconnect(MqttDrpcClient client) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getMetrics().reconnects().sum() == 0) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Verifies that clients sharing a connection call each other's services as well as those of other connections, and
+     * that subscriptions of one client remain when another client unsubscribes or disconnects.
+     */
+    @Test
+    public void testSharedClients() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcSharedConnection connection = new MqttDrpcSharedConnection(broker.transport("shared"));
+        MqttDrpcClient firstClient = new MqttDrpcClientBuilder().build(connection);
+        MqttDrpcClient secondClient = new MqttDrpcClientBuilder().build(connection);
+        firstClient.connect();
+        secondClient.connect();
+        SilentCloseable firstService = firstClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        secondClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        Assert.assertEquals(Integer.valueOf(3), callingClient.connector(CalculatorService.class).connect(identifier).add(1, 2));
+        Assert.assertEquals(Integer.valueOf(3), secondClient.connector(CalculatorService.class).connect(identifier).add(1, 2));
+        firstService.close();
+        firstClient.disconnect();
+        Assert.assertEquals(Integer.valueOf(7), callingClient.connector(CalculatorService.class).connect(identifier).add(3, 4));
+        Assert.assertEquals(Integer.valueOf(7), secondClient.connector(CalculatorService.class).connect(identifier).add(3, 4));
+        secondClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that after losing the shared connection, all clients sharing it reconnect and resubscribe.
+     */
+    @Test
+    public void testReconnect() throws MqttDrpcTransportException, InterruptedException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcSharedConnection connection = new MqttDrpcSharedConnection(broker.transport("shared"));
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(connection);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(connection);
+        serviceClient.connect();
+        callingClient.connect();
+        serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(3), remoteCalculator.add(1, 2));
+        broker.restart();
+        awaitReconnect(serviceClient);
+        awaitReconnect(callingClient);
+        Assert.assertEquals(Integer.valueOf(7), remoteCalculator.add(3, 4));
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that clients sharing a connection await their calls in the connection's table of pending calls.
+     */
+    @Test
+    public void testSharedPendingCalls() throws Exception {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcSharedConnection connection = new MqttDrpcSharedConnection(broker.transport("shared"));
+        MqttDrpcClient firstClient = new MqttDrpcClientBuilder().withClientId("first").build(connection);
+        MqttDrpcClient secondClient = new MqttDrpcClientBuilder().withClientId("second").build(connection);
+        firstClient.connect();
+        secondClient.connect();
+        CountDownLatch release = new CountDownLatch(1);
+        secondClient.publish(CalculatorService.class, identifier, (a, b) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return a + b;
+        });
+        CalculatorService firstCalculator = firstClient.connector(CalculatorService.class).connect(identifier);
+        CalculatorService secondCalculator = secondClient.connector(CalculatorService.class).connect(identifier);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> first = callers.submit(() -> firstCalculator.add(1, 2));
+            Future<Integer> second = callers.submit(() -> secondCalculator.add(3, 4));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (connection.getPendingCalls().size() < 2) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            release.countDown();
+            Assert.assertEquals(Integer.valueOf(3), first.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(Integer.valueOf(7), second.get(5, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdownNow();
+        }
+        Assert.assertEquals(0, connection.getPendingCalls().size());
+        firstClient.disconnect();
+        secondClient.disconnect();
+        connection.close();
+        Assert.assertTrue(connection.getExecutorService().isShutdown());
+    }
+
+    /**
+     * Verifies that closing a connection leaves an executor service given to it running.
+     */
+    @Test
+    public void testCloseGivenExecutor() {
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        MqttDrpcSharedConnection connection = new MqttDrpcSharedConnection(new MqttDrpcMemoryBroker().transport("shared"), executorService, new PendingCallTable());
+        connection.close();
+        Assert.assertFalse(executorService.isShutdown());
+        executorService.shutdown();
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.hileco.drpc.mqtt;
+
+import com.hileco.drpc.generic.ServiceConnector;
+import com.hileco.drpc.metrics.SimpleMetricsRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcSingleFlightTest {
+
+    private static final String identifier = "12345";
+    private static final int CALLERS = 8;
+
+    public interface ReportService {
+
+        @MqttDrpcSingleFlight
+        public Integer aggregate(String query);
+
+    }
+
+    public interface AuditService {
+
+        @MqttDrpcSingleFlight
+        public Integer aggregate(String query);
+
+    }
+
+    /**
+     * Verifies that concurrent requests with equal arguments share one invocation, and all receive its result.
+     */
+    @Test
+    public void testCoalesced() throws Exception {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        MqttDrpcClient client = new MqttDrpcClientBuilder()
+                .withClientId("single-flight")
+                .withMetricsRegistry(registry)
+                .withServiceExecutorService(Executors.newCachedThreadPool())
+                .build(new MqttDrpcMemoryBroker());
+        client.connect();
+        AtomicInteger invocations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        client.publish(ReportService.class, identifier, query -> {
+            invocations.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return query.length();
+        });
+        ServiceConnector<ReportService> connector = client.connector(ReportService.class);
+        // distributed calls are never coalesced by the calling client, so each of them reaches the service
+        List<Integer> results = new CopyOnWriteArrayList<>();
+        CountDownLatch responses = new CountDownLatch(CALLERS);
+        for (int i = 0; i < CALLERS; i++) {
+            connector.drpc(service -> service.aggregate("total"), (Integer result) -> {
+                results.add(result);
+                responses.countDown();
+            });
+        }
+        LongAdder coalesced = registry.getCounters().get(MqttDrpcMetrics.SERVICE_COALESCED
+                + "{client=single-flight,interface=" + ReportService.class.getName() + ",method=aggregate(java.lang.String)}");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalesced.sum() < CALLERS - 1) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        release.countDown();
+        Assert.assertTrue(responses.await(5, TimeUnit.SECONDS));
+        for (Integer result : results) {
+            Assert.assertEquals(5, (int) result);
+        }
+        Assert.assertEquals(1, invocations.get());
+        Assert.assertEquals(5, (int) connector.connect(identifier).aggregate("again"));
+        Assert.assertEquals(2, invocations.get());
+        client.disconnect();
+    }
+
+    /**
+     * Verifies that concurrent targeted calls with equal arguments send a single request, and all receive its result.
+     */
+    @Test
+    public void testCallsCoalesced() throws Exception {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient service = new MqttDrpcClientBuilder().withClientId("single-flight-service").withMetricsRegistry(registry).build(broker);
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withClientId("single-flight-client").withMetricsRegistry(registry).build(broker);
+        service.connect();
+        client.connect();
+        AtomicInteger invocations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        service.publish(ReportService.class, identifier, query -> {
+            invocations.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return query.length();
+        });
+        ReportService reportService = client.connector(ReportService.class).connect(identifier);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(callers.submit(() -> reportService.aggregate("total")));
+        }
+        String tags = ",interface=" + ReportService.class.getName() + ",method=aggregate(java.lang.String)}";
+        LongAdder coalesced = registry.getCounters().get(MqttDrpcMetrics.CLIENT_COALESCED + "{client=single-flight-client" + tags);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (coalesced == null || coalesced.sum() < CALLERS - 1) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+            coalesced = registry.getCounters().get(MqttDrpcMetrics.CLIENT_COALESCED + "{client=single-flight-client" + tags);
+        }
+        release.countDown();
+        for (Future<Integer> result : results) {
+            Assert.assertEquals(5, (int) result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, invocations.get());
+        Assert.assertEquals(0, registry.getCounters().get(MqttDrpcMetrics.SERVICE_COALESCED + "{client=single-flight-service" + tags).sum());
+        Assert.assertEquals(0, registry.getGauges().get(MqttDrpcMetrics.CLIENT_CALLBACKS_PENDING + "{client=single-flight-client}").getAsLong());
+        callers.shutdown();
+        service.disconnect();
+        client.disconnect();
+    }
+
+    /**
+     * Verifies that equal calls to methods of different interfaces, with the same name and arguments, are not coalesced.
+     */
+    @Test
+    public void testInterfacesSeparate() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        MqttDrpcClient client = new MqttDrpcClientBuilder().withServiceExecutorService(Executors.newCachedThreadPool()).build(new MqttDrpcMemoryBroker());
+        client.connect();
+        AtomicInteger invocations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        client.publish(ReportService.class, identifier, query -> {
+            invocations.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return query.length();
+        });
+        client.publish(AuditService.class, identifier, query -> {
+            invocations.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return -query.length();
+        });
+        ReportService reportService = client.connector(ReportService.class).connect(identifier);
+        AuditService auditService = client.connector(AuditService.class).connect(identifier);
+        Future<Integer> report = callers.submit(() -> reportService.aggregate("total"));
+        Future<Integer> audit = callers.submit(() -> auditService.aggregate("total"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (invocations.get() < 2) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        release.countDown();
+        Assert.assertEquals(5, (int) report.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(-5, (int) audit.get(5, TimeUnit.SECONDS));
+        callers.shutdown();
+        client.disconnect();
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.hileco.drpc.mqtt;
+
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcStripedTransportTest {
+
+    private static final String identifier = "12345";
+
+    /**
+     * A transport which fails a given amount of connection attempts, and counts its disconnects.
+     */
+    private static class FlakyTransport implements MqttDrpcTransport {
+
+        private final MqttDrpcTransport transport;
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger disconnects = new AtomicInteger();
+
+        private FlakyTransport(MqttDrpcTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public String getClientId() {
+            return transport.getClientId();
+        }
+
+        @Override
+        public void setCallback(Callback callback) {
+            transport.setCallback(callback);
+        }
+
+        @Override
+        public void connect() throws MqttDrpcTransportException {
+            if (failures.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+                throw new MqttDrpcTransportException(MqttDrpcTransportException.REASON_CODE_CLIENT_EXCEPTION);
+            }
+            transport.connect();
+        }
+
+        @Override
+        public void disconnect() throws MqttDrpcTransportException {
+            disconnects.incrementAndGet();
+            transport.disconnect();
+        }
+
+        @Override
+        public void publish(String topic, byte[] payload, int qualityOfServiceLevel) throws MqttDrpcTransportException {
+            transport.publish(topic, payload, qualityOfServiceLevel);
+        }
+
+        @Override
+        public void subscribe(String[] topics) throws MqttDrpcTransportException {
+            transport.subscribe(topics);
+        }
+
+        @Override
+        public void unsubscribe(String[] topics) throws MqttDrpcTransportException {
+            transport.unsubscribe(topics);
+        }
+
+    }
+
+    /**
+     * Takes over a connection, as a broker does when another connection uses the same client identifier.
+     */
+    private static void takeover(MqttDrpcMemoryBroker broker, String clientId) throws MqttDrpcTransportException {
+        MqttDrpcMemoryTransport takeover = broker.transport(clientId);
+        takeover.setCallback(new MqttDrpcTransport.Callback() {
+            @Override
+            public void messageArrived(String topic, byte[] payload) {
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+        });
+        takeover.connect();
+    }
+
+    private static void awaitReconnects(MqttDrpcClient client, long reconnects) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.getMetrics().reconnects().sum() < reconnects) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Verifies that services published and called over multiple connections are called successfully, whichever
+     * connection their requests and responses travel over.
+     */
+    @Test
+    public void testStripedCalls() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().withConnections(4).build(broker);
+        serviceClient.connect();
+        serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        serviceClient.publish(CalculatorService.class, "other", (a, b) -> a * b);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().withConnections(3).build(broker);
+        callingClient.connect();
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        CalculatorService otherCalculator = callingClient.connector(CalculatorService.class).connect("other");
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Integer.valueOf(i + i), remoteCalculator.add(i, i));
+            Assert.assertEquals(Integer.valueOf(i * i), otherCalculator.add(i, i));
+        }
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that after losing one of its connections, the client reconnects it and is called successfully again.
+     */
+    @Test
+    public void testReconnectStripe() throws MqttDrpcTransportException, InterruptedException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().withClientId("striped").withConnections(2).build(broker);
+        serviceClient.connect();
+        serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(3), remoteCalculator.add(1, 2));
+        for (int i = 0; i < 2; i++) {
+            takeover(broker, "striped-" + i);
+            awaitReconnects(serviceClient, i + 1);
+            Assert.assertEquals(Integer.valueOf(7), remoteCalculator.add(3, 4));
+        }
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that a failed attempt to reconnect a lost connection leaves the other connections connected.
+     */
+    @Test
+    public void testFailedReconnect() throws MqttDrpcTransportException, InterruptedException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        FlakyTransport healthy = new FlakyTransport(broker.transport("flaky-0"));
+        FlakyTransport flaky = new FlakyTransport(broker.transport("flaky-1"));
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(new MqttDrpcStripedTransport("flaky", healthy, flaky));
+        serviceClient.connect();
+        serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().build(broker);
+        callingClient.connect();
+        flaky.failures.set(2);
+        takeover(broker, "flaky-1");
+        awaitReconnects(serviceClient, 1);
+        Assert.assertEquals(0, flaky.failures.get());
+        Assert.assertEquals(0, healthy.disconnects.get());
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        Assert.assertEquals(Integer.valueOf(7), remoteCalculator.add(3, 4));
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that the responses to calls of a client over multiple connections arrive over all of its connections.
+     */
+    @Test
+    public void testCallbacksSpread() throws MqttDrpcTransportException {
+        MqttDrpcMemoryBroker broker = new MqttDrpcMemoryBroker();
+        MqttDrpcClient serviceClient = new MqttDrpcClientBuilder().build(broker);
+        serviceClient.connect();
+        serviceClient.publish(CalculatorService.class, identifier, (a, b) -> a + b);
+        MqttDrpcClient callingClient = new MqttDrpcClientBuilder().withClientId("spread").withConnections(3).build(broker);
+        callingClient.connect();
+        Set<String> callbackTopics = ConcurrentHashMap.newKeySet();
+        MqttDrpcMemoryTransport observer = broker.transport("observer");
+        observer.setCallback(new MqttDrpcTransport.Callback() {
+            @Override
+            public void messageArrived(String topic, byte[] payload) {
+                callbackTopics.add(topic);
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+        });
+        observer.connect();
+        observer.subscribe(new String[]{new MqttDrpcTopicBuilder().callback("spread") + "/+"});
+        CalculatorService remoteCalculator = callingClient.connector(CalculatorService.class).connect(identifier);
+        for (int i = 0; i < 6; i++) {
+            Assert.assertEquals(Integer.valueOf(i + i), remoteCalculator.add(i, i));
+        }
+        Assert.assertEquals(3, callbackTopics.size());
+        observer.disconnect();
+        serviceClient.disconnect();
+        callingClient.disconnect();
+    }
+
+    /**
+     * Verifies that a single persistence is not shared by multiple connections.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testSharedPersistence() throws MqttDrpcTransportException {
+        new MqttDrpcClientBuilder().withConnections(2).withMqttClientPersistence(new MemoryPersistence()).build("tcp://localhost:1883");
+    }
+
+}
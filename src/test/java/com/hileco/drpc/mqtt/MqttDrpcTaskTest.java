@@ -0,0 +1,102 @@
+package com.hileco.drpc.mqtt;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Philipp Gayret
+ */
+public class MqttDrpcTaskTest {
+
+    private static final MqttDrpcFailureHandler ALWAYS_RETRY = new MqttDrpcFailureHandler() {
+        @Override
+        public boolean shouldRetry(Exception cause, MqttDrpcTask task) {
+            return true;
+        }
+
+        @Override
+        public void handleDisconnect(Throwable throwable) {
+        }
+    };
+
+    private ScheduledExecutorService executorService;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newScheduledThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Verifies that the ceiling of the delay doubles per retry, up to the maximum, and that delays stay below it.
+     */
+    @Test
+    public void testBackoff() {
+        MqttDrpcBackoff backoff = new MqttDrpcBackoff(10, 100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(10), backoff.ceiling(0));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(40), backoff.ceiling(2));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), backoff.ceiling(4));
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), backoff.ceiling(Integer.MAX_VALUE));
+        for (int i = 0; i < 1000; i++) {
+            long delay = backoff.delay(3);
+            Assert.assertTrue(delay >= 0 && delay <= TimeUnit.MILLISECONDS.toNanos(80));
+        }
+    }
+
+    /**
+     * Verifies that a failing task is retried after delays, until it succeeds.
+     */
+    @Test
+    public void testRetries() {
+        AtomicInteger attempts = new AtomicInteger();
+        MqttDrpcBackoff backoff = new MqttDrpcBackoff(1, 1, TimeUnit.MILLISECONDS);
+        MqttDrpcTask task = new MqttDrpcTask(executorService, ALWAYS_RETRY, backoff, () -> {
+            if (attempts.incrementAndGet() < 4) {
+                throw new IllegalStateException("Not yet");
+            }
+        });
+        task.start();
+        task.join();
+        Assert.assertEquals(4, attempts.get());
+        Assert.assertEquals(3, task.getRetries());
+    }
+
+    /**
+     * Verifies that retries stop once the retry budget is exhausted, and that successful tasks replenish it.
+     */
+    @Test
+    public void testRetryBudget() {
+        MqttDrpcRetryBudget retryBudget = new MqttDrpcRetryBudget(0.5, 0, 2);
+        MqttDrpcFailureHandler failureHandler = retryBudget.limit(ALWAYS_RETRY);
+        MqttDrpcBackoff backoff = new MqttDrpcBackoff(1, 1, TimeUnit.MILLISECONDS);
+        AtomicInteger attempts = new AtomicInteger();
+        MqttDrpcTask task = new MqttDrpcTask(executorService, failureHandler, backoff, () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("Never");
+        });
+        task.start();
+        try {
+            task.join();
+            Assert.fail();
+        } catch (MqttDrpcRuntimeException e) {
+            Assert.assertEquals(3, attempts.get());
+            Assert.assertEquals(0, retryBudget.getBalance());
+        }
+        retryBudget.deposit();
+        Assert.assertEquals(0, retryBudget.getBalance());
+        retryBudget.deposit();
+        Assert.assertEquals(1, retryBudget.getBalance());
+    }
+
+}
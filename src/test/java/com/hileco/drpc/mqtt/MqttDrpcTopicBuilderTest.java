@@ -30,4 +30,29 @@ public class MqttDrpcTopicBuilderTest {
         Assert.assertTrue(operationWithIdentifier.endsWith("/" + IDENTIFIER));
     }
 
+    public static interface OverloadedService {
+
+        public Integer sum(Integer a, Integer b);
+
+        public Integer sum(Integer a, Integer b, Integer c);
+
+    }
+
+    /**
+     * Verifies that the compact scheme names overloaded methods apart, with topics shorter than those of the default
+     * scheme and equal across topic builders.
+     */
+    @Test
+    public void testCompact() throws NoSuchMethodException {
+        MqttDrpcTopicBuilder compactTopicBuilder = new MqttDrpcTopicBuilder(true);
+        Method sumOfTwo = OverloadedService.class.getMethod("sum", Integer.class, Integer.class);
+        Method sumOfThree = OverloadedService.class.getMethod("sum", Integer.class, Integer.class, Integer.class);
+        String operation = compactTopicBuilder.operation(OverloadedService.class, sumOfTwo, IDENTIFIER);
+        Assert.assertNotEquals(operation, compactTopicBuilder.operation(OverloadedService.class, sumOfThree, IDENTIFIER));
+        Assert.assertEquals(operation, new MqttDrpcTopicBuilder(true).operation(OverloadedService.class, sumOfTwo, IDENTIFIER));
+        Assert.assertTrue(operation.length() < new MqttDrpcTopicBuilder().operation(OverloadedService.class, sumOfTwo, IDENTIFIER).length());
+        Assert.assertTrue(operation.startsWith(compactTopicBuilder.operation(OverloadedService.class, sumOfTwo)));
+        Assert.assertTrue(operation.matches("s/[A-Za-z0-9_-]{8}/[A-Za-z0-9_-]{8}/" + IDENTIFIER));
+    }
+
 }
@@ -87,4 +87,26 @@ public class ProxyServiceConnectorTest {
         drpc.close();
     }
 
+    /**
+     * Verifies that a failure reported instead of a result is thrown to the caller.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testFailure() {
+        ProxyServiceConnector<TestInterface> connector = new ProxyServiceConnector<TestInterface>(TestInterface.class) {
+            @Override
+            public <R> SilentCloseable call(Class<?> type, Method method, String identifier, Object[] arguments, Consumer<R> consumer) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <R> SilentCloseable call(Class<?> type, Method method, String identifier, Object[] arguments, Consumer<R> consumer,
+                                            Consumer<RuntimeException> failureConsumer) {
+                failureConsumer.accept(new IllegalStateException());
+                return () -> {
+                };
+            }
+        };
+        connector.connect("123").test(10, 20);
+    }
+
 }